@@ -0,0 +1,73 @@
+package com.google.devrel.training.conference.benchmark;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Operator;
+import com.googlecode.objectify.cmd.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of building the Objectify query of a ConferenceQueryForm, without running it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConferenceQueryFormBenchmark {
+
+    /** Objectify needs an App Engine environment on the benchmark thread. */
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        helper.setUp();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Benchmark
+    public Query<Conference> emptyQuery() {
+        return new ConferenceQueryForm().getQuery();
+    }
+
+    @Benchmark
+    public Query<Conference> equalityQuery() {
+        return new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "San Francisco"))
+                .filter(new Filter(Field.TOPIC, Operator.EQ, "Platform"))
+                .filter(new Filter(Field.MONTH, Operator.EQ, "6"))
+                .getQuery();
+    }
+
+    @Benchmark
+    public Query<Conference> inequalityQuery() {
+        return new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "San Francisco"))
+                .filter(new Filter(Field.MAX_ATTENDEES, Operator.GT, "100"))
+                .filter(new Filter(Field.MAX_ATTENDEES, Operator.LTEQ, "1000"))
+                .getQuery();
+    }
+}
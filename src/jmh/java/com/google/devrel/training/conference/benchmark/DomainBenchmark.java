@@ -0,0 +1,114 @@
+package com.google.devrel.training.conference.benchmark;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.googlecode.objectify.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the domain methods that run on every request serializing conferences,
+ * sessions and profiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainBenchmark {
+
+    /** Number of conferences the profile is registered to. */
+    @Param({"10", "100"})
+    public int conferencesToAttend;
+
+    /** Keys and websafe encoding need an App Engine environment on the benchmark thread. */
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+    private ConferenceForm conferenceForm;
+
+    private Conference conference;
+
+    private Session session;
+
+    private Profile profile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        helper.setUp();
+        Date startDate = new Date(1395705600000L);
+        Date endDate = new Date(1395792000000L);
+        conferenceForm = new ConferenceForm("GCP Live", "New announcements for Google Cloud Platform",
+                ImmutableList.of("Google", "Cloud", "Platform"), "San Francisco", startDate,
+                endDate, 500);
+        conference = new Conference(123456L, "123456789", conferenceForm);
+        SessionForm sessionForm = new SessionForm("Keynote", "Opening keynote",
+                new Speaker("Jane", "Doe"), SessionForm.SessionType.KEYNOTE, startDate, endDate);
+        session = new Session(654321L, conference.getWebsafeKey(), sessionForm);
+        profile = new Profile("123456789", "Your Name Here", "example@gmail.com", TeeShirtSize.M);
+        for (int i = 0; i < conferencesToAttend; i++) {
+            profile.addToConferenceKeysToAttend(
+                    Key.create(Conference.class, 1000L + i).getString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Benchmark
+    public Conference updateWithConferenceForm() {
+        conference.updateWithConferenceForm(conferenceForm);
+        return conference;
+    }
+
+    @Benchmark
+    public String conferenceWebsafeKey() {
+        return conference.getWebsafeKey();
+    }
+
+    @Benchmark
+    public String sessionWebsafeKey() {
+        return session.getWebsafeKey();
+    }
+
+    @Benchmark
+    public List<String> profileConferenceKeysToAttend() {
+        return profile.getConferenceKeysToAttend();
+    }
+
+    @Benchmark
+    public String conferenceToString() {
+        return conference.toString();
+    }
+
+    @Benchmark
+    public String sessionToString() {
+        return session.toString();
+    }
+}
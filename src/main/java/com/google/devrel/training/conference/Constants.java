@@ -13,5 +13,12 @@ public class Constants {
     public static final String EMAIL_SCOPE = Constant.API_EMAIL_SCOPE;
     public static final String API_EXPLORER_CLIENT_ID = Constant.API_EXPLORER_CLIENT_ID;
 
-    public static final String MEMCACHE_ANNOUNCEMENTS_KEY = "RECENT_ANNOUNCEMENTS";
+    /** Holds an AnnouncementCache.Stamped, the plain announcement was RECENT_ANNOUNCEMENTS. */
+    public static final String MEMCACHE_ANNOUNCEMENTS_KEY = "RECENT_ANNOUNCEMENTS_V2";
+    public static final String MEMCACHE_ANNOUNCEMENTS_VERSION_KEY = "RECENT_ANNOUNCEMENTS_VERSION";
+    public static final String MEMCACHE_SEATS_AVAILABLE_PREFIX = "SEATS_AVAILABLE_";
+    public static final String MEMCACHE_CONFERENCE_QUERY_PREFIX = "CONFERENCE_QUERY_";
+    public static final String MEMCACHE_CONFERENCE_QUERY_VERSION_KEY = "CONFERENCE_QUERY_VERSION";
+    public static final String MEMCACHE_CONFERENCE_SEARCH_PREFIX = "CONFERENCE_SEARCH_";
+    public static final String MEMCACHE_FEATURED_SPEAKER_PREFIX = "FEATURED_SPEAKER_";
 }
\ No newline at end of file
@@ -70,13 +70,36 @@ public class Conference {
     @Index
     private int maxAttendees;
 
-    /** Number of seats currently available. */
+    /**
+     * Number of seats currently available.
+     * The source of truth are the SeatShard entities, this value is reconciled periodically
+     * so the existing seatsAvailable queries keep working.
+     */
     @Index
     private int seatsAvailable;
 
+    /** Number of SeatShard entities holding the seats of this conference. 0 means not sharded yet. */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private int seatShardCount;
+
+    /** When this Conference was last written, stamped on every save. Null if never since. */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Date lastModified;
+
 
+    /**
+     * Ids of the sessions created before sessions were listed with an ancestor query.
+     * No longer written, only read to migrate the wishlists stored as session ids.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     private List<Long> sessionKeys = new ArrayList<>(0);
 
+    /**
+     * The organizer's display name resolved for the response, not persisted.
+     * Set in batch by ConferenceResponseAssembler to avoid a Profile get per Conference.
+     */
+    @Ignore
+    private String organizerDisplayName;
 
     /** Just making the default constructor private. */
     private Conference() {}
@@ -119,11 +142,27 @@ public class Conference {
 
     /**
      * Returns organizer's display name.
+     * Uses the name resolved by the response assembly if there is one, otherwise loads the Profile.
      * @return organizer's display name. If there is no Profile, return his/her userId.
      */
     public String getOrganizerDisplayName() {
-        // Profile organizer = ofy().load().key(Key.create(Profile.class, organizerUserId)).now();
+        if (organizerDisplayName != null) {
+            return organizerDisplayName;
+        }
         Profile organizer = ofy().load().key(getProfileKey()).now();
+        return displayNameOf(organizer);
+    }
+
+    /**
+     * Sets the organizer's display name from an already loaded Profile.
+     * @param organizer the organizer's Profile, null if there is none.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public void setOrganizer(Profile organizer) {
+        this.organizerDisplayName = displayNameOf(organizer);
+    }
+
+    private String displayNameOf(Profile organizer) {
         if (organizer == null) {
             return organizerUserId;
         } else {
@@ -171,6 +210,36 @@ public class Conference {
         return seatsAvailable;
     }
 
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public int getSeatShardCount() {
+        return seatShardCount;
+    }
+
+    public void setSeatShardCount(final int seatShardCount) {
+        this.seatShardCount = seatShardCount;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    @OnSave
+    void stampLastModified() {
+        this.lastModified = new Date();
+    }
+
+    /**
+     * Overrides the denormalized number of available seats with the sum of the SeatShards.
+     * @param seatsAvailable the number of seats available across all the shards.
+     */
+    public void reconcileSeatsAvailable(final int seatsAvailable) {
+        if (seatsAvailable < 0 || seatsAvailable > maxAttendees) {
+            throw new IllegalArgumentException("Invalid number of seats available: " + seatsAvailable);
+        }
+        this.seatsAvailable = seatsAvailable;
+    }
+
     /**
      * Updates the Conference with ConferenceForm.
      * This method is used upon object creation as well as updating existing Conferences.
@@ -206,27 +275,11 @@ public class Conference {
         this.seatsAvailable = this.maxAttendees - seatsAllocated;
     }
 
-    public void bookSeats(final int number) {
-        if (seatsAvailable < number) {
-            throw new IllegalArgumentException("There are no seats available.");
-        }
-        seatsAvailable = seatsAvailable - number;
-    }
-
-    public void giveBackSeats(final int number) {
-        if (seatsAvailable + number > maxAttendees) {
-            throw new IllegalArgumentException("The number of seats will exceeds the capacity.");
-        }
-        seatsAvailable = seatsAvailable + number;
-    }
-
 
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     public List<Long> getSessionKeys() {
         return com.google.appengine.repackaged.com.google.common.collect.ImmutableList.copyOf(this.sessionKeys);
     }
-    public void addToSessionKeys(long sessionKeys){
-        this.sessionKeys.add(sessionKeys);
-    }
 
 
     @Override
@@ -0,0 +1,174 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ConferenceStatistics holds how many conferences have each value of the queryable fields, for
+ * estimating the selectivity of the query filters.
+ *
+ * There is a single instance, rebuilt by a cron job. Only the most frequent values of a field are
+ * counted one by one, the others share a single count.
+ */
+@Entity
+@Cache
+public class ConferenceStatistics {
+
+    /** How many values of a field are counted one by one. */
+    public static final int MAX_VALUES = 200;
+
+    private static final String ID = "conference";
+
+    @Id
+    private String id = ID;
+
+    /** When the statistics were computed. */
+    private Date refreshed;
+
+    private long conferences;
+
+    private ValueCounts cities = new ValueCounts();
+
+    private ValueCounts topics = new ValueCounts();
+
+    private ValueCounts months = new ValueCounts();
+
+    private ValueCounts maxAttendees = new ValueCounts();
+
+    /** Just making the default constructor private. */
+    private ConferenceStatistics() {}
+
+    public ConferenceStatistics(final Date refreshed) {
+        this.refreshed = refreshed;
+    }
+
+    /**
+     * @return the Key of the single instance.
+     */
+    public static Key<ConferenceStatistics> createKey() {
+        return Key.create(ConferenceStatistics.class, ID);
+    }
+
+    /**
+     * Counts the values of a conference.
+     * @param conference A Conference.
+     */
+    public void add(Conference conference) {
+        conferences++;
+        cities.add(conference.getCity());
+        if (conference.getTopics() != null) {
+            for (String topic : conference.getTopics()) {
+                topics.add(topic);
+            }
+        }
+        months.add(String.valueOf(conference.getMonth()));
+        maxAttendees.add(String.valueOf(conference.getMaxAttendees()));
+    }
+
+    /**
+     * Keeps the MAX_VALUES most frequent values of each field, before saving.
+     */
+    public void trim() {
+        cities.trim(MAX_VALUES);
+        topics.trim(MAX_VALUES);
+        months.trim(MAX_VALUES);
+        maxAttendees.trim(MAX_VALUES);
+    }
+
+    public Date getRefreshed() {
+        return refreshed == null ? null : new Date(refreshed.getTime());
+    }
+
+    public long getConferences() {
+        return conferences;
+    }
+
+    public ValueCounts getCities() {
+        return cities;
+    }
+
+    public ValueCounts getTopics() {
+        return topics;
+    }
+
+    public ValueCounts getMonths() {
+        return months;
+    }
+
+    public ValueCounts getMaxAttendees() {
+        return maxAttendees;
+    }
+
+    /**
+     * The number of conferences for each value of a field. Integer values are kept as strings.
+     */
+    public static class ValueCounts {
+
+        private Map<String, Long> counts = new HashMap<>();
+
+        /** The number of conferences with the values that are not counted one by one. */
+        private long otherCount;
+
+        /** The number of values that are not counted one by one. */
+        private long otherValues;
+
+        /**
+         * Counts a value. While counting, the least frequent values are folded once there are
+         * ten times more values than kept, so the memory used stays bounded.
+         * @param value the value, ignored when null.
+         */
+        void add(String value) {
+            if (value == null) {
+                return;
+            }
+            Long count = counts.get(value);
+            counts.put(value, count == null ? 1L : count + 1);
+            if (counts.size() > 10 * MAX_VALUES) {
+                trim(MAX_VALUES);
+            }
+        }
+
+        void trim(int maxValues) {
+            if (counts.size() <= maxValues) {
+                return;
+            }
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+                @Override
+                public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                    return b.getValue().compareTo(a.getValue());
+                }
+            });
+            for (Map.Entry<String, Long> entry : entries.subList(maxValues, entries.size())) {
+                counts.remove(entry.getKey());
+                otherCount += entry.getValue();
+                otherValues++;
+            }
+        }
+
+        /**
+         * @return the counts of the most frequent values.
+         */
+        public Map<String, Long> getCounts() {
+            return Collections.unmodifiableMap(counts);
+        }
+
+        public long getOtherCount() {
+            return otherCount;
+        }
+
+        public long getOtherValues() {
+            return otherValues;
+        }
+    }
+}
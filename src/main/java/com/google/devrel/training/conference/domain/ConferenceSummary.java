@@ -0,0 +1,88 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Parent;
+
+import java.util.Date;
+
+/**
+ * ConferenceSummary holds what a conference listing card shows: the name, the city, the start
+ * date and the seats available.
+ *
+ * It shares the parent and the id of its Conference, so the summaries of a page of conference
+ * keys are a single batch get of small entities, without the description, the topics or the
+ * session keys. It is written with the Conference, in the same entity group.
+ */
+@Entity
+@Cache
+public class ConferenceSummary {
+
+    /** The id of the Conference. */
+    @Id
+    private long id;
+
+    /** Holds the organizer's Profile key as the parent, like the Conference. */
+    @Parent
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Profile> profileKey;
+
+    private String name;
+
+    private String city;
+
+    private Date startDate;
+
+    private int seatsAvailable;
+
+    /** Just making the default constructor private. */
+    private ConferenceSummary() {}
+
+    public ConferenceSummary(final Conference conference) {
+        this.id = conference.getId();
+        this.profileKey = conference.getProfileKey();
+        this.name = conference.getName();
+        this.city = conference.getCity();
+        this.startDate = conference.getStartDate();
+        this.seatsAvailable = conference.getSeatsAvailable();
+    }
+
+    /**
+     * Builds the key of the summary of a conference.
+     * @param conferenceKey The Key of the Conference.
+     * @return the Key of the ConferenceSummary.
+     */
+    public static Key<ConferenceSummary> createKey(final Key<Conference> conferenceKey) {
+        return Key.create(conferenceKey.getParent(), ConferenceSummary.class,
+                conferenceKey.getId());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * Returns a defensive copy of startDate if not null.
+     * @return a defensive copy of startDate if not null.
+     */
+    public Date getStartDate() {
+        return startDate == null ? null : new Date(startDate.getTime());
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    // Get a String version of the key of the Conference
+    public String getWebsafeKey() {
+        return Key.create(profileKey, Conference.class, id).getString();
+    }
+}
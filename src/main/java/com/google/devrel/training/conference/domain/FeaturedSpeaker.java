@@ -0,0 +1,41 @@
+package com.google.devrel.training.conference.domain;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FeaturedSpeaker is a speaker giving more than one session of a conference, with the names
+ * of those sessions. It is cached in memcache, not stored in the datastore.
+ */
+public class FeaturedSpeaker implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String firstName;
+
+    private String lastName;
+
+    private List<String> sessionNames = new ArrayList<>(0);
+
+    /** Just making the default constructor private. */
+    private FeaturedSpeaker() {}
+
+    public FeaturedSpeaker(final Speaker speaker, final List<String> sessionNames) {
+        this.firstName = speaker.getFirstName();
+        this.lastName = speaker.getLastName();
+        this.sessionNames = new ArrayList<>(sessionNames);
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public List<String> getSessionNames() {
+        return sessionNames;
+    }
+}
@@ -0,0 +1,143 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * ImportJob tracks the progress of a bulk import of conferences.
+ *
+ * The upload is split into chunks written by tasks. Each chunk is counted once, even when its
+ * task is retried, and the job is complete once every chunk of a fully read upload is done.
+ */
+@Entity
+public class ImportJob {
+
+    /** How many row errors are kept for the report. */
+    public static final int MAX_ERRORS = 100;
+
+    @Id
+    private Long id;
+
+    /** The userId of the organizer of the imported conferences. */
+    private String organizerUserId;
+
+    /** Where the summary is sent once the job is complete. */
+    private String organizerEmail;
+
+    private Date created;
+
+    private int rowsRead;
+
+    private int rowsRejected;
+
+    private int conferencesCreated;
+
+    /** The number of chunks of the upload, null while the upload is being read. */
+    private Integer chunksTotal;
+
+    private List<Integer> chunksDone = new ArrayList<>(0);
+
+    private List<String> errors = new ArrayList<>(0);
+
+    private boolean summarySent;
+
+    /** Just making the default constructor private. */
+    private ImportJob() {}
+
+    public ImportJob(final long id, final String organizerUserId, final String organizerEmail) {
+        this.id = id;
+        this.organizerUserId = organizerUserId;
+        this.organizerEmail = organizerEmail;
+        this.created = new Date();
+    }
+
+    /**
+     * Records that the upload was read in full.
+     * @param rowsRead the number of rows of the upload.
+     * @param rowsRejected the number of rows that failed the validation.
+     * @param chunksTotal the number of chunks enqueued.
+     * @param errors the first errors of the rejected rows.
+     */
+    public void finishUpload(int rowsRead, int rowsRejected, int chunksTotal,
+                             List<String> errors) {
+        this.rowsRead = rowsRead;
+        this.rowsRejected = rowsRejected;
+        this.chunksTotal = chunksTotal;
+        this.errors = new ArrayList<>(errors.subList(0, Math.min(errors.size(), MAX_ERRORS)));
+    }
+
+    /**
+     * Records that a chunk was written.
+     * @param chunk the index of the chunk.
+     * @param conferences the number of conferences in the chunk.
+     * @return false if the chunk was already counted.
+     */
+    public boolean markChunkDone(int chunk, int conferences) {
+        if (chunksDone.contains(chunk)) {
+            return false;
+        }
+        chunksDone.add(chunk);
+        conferencesCreated += conferences;
+        return true;
+    }
+
+    /**
+     * @return true once the upload was read and all its chunks were written.
+     */
+    public boolean isComplete() {
+        return chunksTotal != null && chunksDone.size() >= chunksTotal;
+    }
+
+    public void markSummarySent() {
+        this.summarySent = true;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getOrganizerUserId() {
+        return organizerUserId;
+    }
+
+    public String getOrganizerEmail() {
+        return organizerEmail;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public int getConferencesCreated() {
+        return conferencesCreated;
+    }
+
+    public Integer getChunksTotal() {
+        return chunksTotal;
+    }
+
+    public int getChunksDone() {
+        return chunksDone.size();
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public boolean isSummarySent() {
+        return summarySent;
+    }
+}
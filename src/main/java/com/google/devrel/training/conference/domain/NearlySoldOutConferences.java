@@ -0,0 +1,86 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NearlySoldOutConferences is the set of the conferences announced as nearly sold out, kept up
+ * to date by the registrations.
+ *
+ * It is a cached singleton, so checking whether a conference is in the set is a memcache get,
+ * and it is only written when a conference enters or leaves the set.
+ */
+@Entity
+@Cache
+public class NearlySoldOutConferences {
+
+    private static final String ID = "announcement";
+
+    @Id
+    private String id = ID;
+
+    /** The names of the conferences, by their websafe keys. */
+    private Map<String, String> conferenceNames = new HashMap<>();
+
+    public NearlySoldOutConferences() {}
+
+    public static Key<NearlySoldOutConferences> createKey() {
+        return Key.create(NearlySoldOutConferences.class, ID);
+    }
+
+    public boolean contains(String websafeConferenceKey) {
+        return conferenceNames.containsKey(websafeConferenceKey);
+    }
+
+    /**
+     * @return true if the conference was not in the set.
+     */
+    public boolean add(String websafeConferenceKey, String name) {
+        return conferenceNames.put(websafeConferenceKey, name) == null;
+    }
+
+    /**
+     * @return true if the conference was in the set.
+     */
+    public boolean remove(String websafeConferenceKey) {
+        return conferenceNames.remove(websafeConferenceKey) != null;
+    }
+
+    /**
+     * Replaces the whole set.
+     * @param conferenceNames the names of the conferences, by their websafe keys.
+     * @return true if the set changed.
+     */
+    public boolean replace(Map<String, String> conferenceNames) {
+        if (this.conferenceNames.equals(conferenceNames)) {
+            return false;
+        }
+        this.conferenceNames = new HashMap<>(conferenceNames);
+        return true;
+    }
+
+    public List<String> getWebsafeConferenceKeys() {
+        return new ArrayList<>(conferenceNames.keySet());
+    }
+
+    /**
+     * @return the names of the conferences, sorted.
+     */
+    public List<String> getConferenceNames() {
+        List<String> names = new ArrayList<>(conferenceNames.values());
+        Collections.sort(names);
+        return names;
+    }
+
+    public boolean isEmpty() {
+        return conferenceNames.isEmpty();
+    }
+}
@@ -1,5 +1,7 @@
 package com.google.devrel.training.conference.domain;
 
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
 import com.google.appengine.repackaged.com.google.common.collect.ImmutableList;
 import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
 import com.googlecode.objectify.Key;
@@ -8,7 +10,9 @@ import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 
 @Entity
@@ -22,7 +26,11 @@ public class Profile {
 	String mainEmail;
 	TeeShirtSize teeShirtSize;
 
+	/** Registered conferences and wishlist before they were stored as child entities, kept until migrated. */
 	private List<String> conferenceKeysToAttend = new ArrayList<>(0);
+	private List<String> sessionKeysToAttend = new ArrayList<>(0);
+
+	/** Session ids of the wishlist before it was keyed by session keys, kept until migrated. */
 	private List<Long> sessionIDsToAttend = new ArrayList<>(0);
 
     /**
@@ -58,6 +66,12 @@ public class Profile {
 		return userId;
 	}
 
+	/**
+	 * Returns the conferences registered before registrations were stored as Registration
+	 * entities. They are moved to Registrations by ProfileMigration.
+	 * @return the websafe Conference keys not migrated yet.
+	 */
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
 	public List<String> getConferenceKeysToAttend() {
 		return ImmutableList.copyOf(conferenceKeysToAttend);
 	}
@@ -66,37 +80,52 @@ public class Profile {
 	}
 
 	/**
-	 * Removes the conferenceKey from te registered conferenceKeysToAttend
-	 * @param conferenceKey A websafe String representation of the ConferenceKey
-	 * @throws IllegalArgumentException
-     */
-	public void unregisterFromConference(String conferenceKey) throws IllegalArgumentException{
-		if (conferenceKeysToAttend.contains(conferenceKey)) {
-			conferenceKeysToAttend.remove(conferenceKey);
-		}else{
-			throw new IllegalArgumentException("Key was not found.");
-		}
+	 * Returns the wishlist stored before it was stored as WishlistEntry entities.
+	 * @return the websafe Session keys not migrated yet.
+	 */
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	public List<String> getSessionKeysToAttend() {
+		return ImmutableList.copyOf(sessionKeysToAttend);
 	}
 
-
+	/**
+	 * Returns the session ids of the wishlist stored before it was keyed by session keys.
+	 * @return the ids not migrated yet.
+	 */
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
 	public List<Long> getSessionIDsToAttend() {
-		return ImmutableList.copyOf(sessionIDsToAttend );
-	}
-	public void addToSessionIDsToAttend(Long sessionKey){
-		sessionIDsToAttend .add(sessionKey);
+		return ImmutableList.copyOf(sessionIDsToAttend);
 	}
 
 	/**
-	 * Removes the sessionKey from te registered sessionKeysToAttend
-	 * @param sessionKeys A websafe String representation of the sessionKey
-	 * @throws IllegalArgumentException
+	 * Converts the legacy session ids of the wishlist into websafe session keys.
+	 * Ids that can't be resolved are kept for a later migration.
+	 * @param sessionKeysById The websafe session keys, by session id
+	 * @return true if the profile changed and needs to be saved
 	 */
-	public boolean removeSessionsFromWishList(List<Long> sessionKeys) throws IllegalArgumentException{
-		if ( sessionKeys != null ) {
-			return conferenceKeysToAttend.removeAll(sessionKeys);
-		}else{
-			throw new IllegalArgumentException("Key was not found.");
+	public boolean migrateSessionIDsToAttend(Map<Long, String> sessionKeysById) {
+		boolean changed = false;
+		Iterator<Long> iterator = sessionIDsToAttend.iterator();
+		while (iterator.hasNext()) {
+			String sessionKey = sessionKeysById.get(iterator.next());
+			if (sessionKey != null) {
+				if (!sessionKeysToAttend.contains(sessionKey)) {
+					sessionKeysToAttend.add(sessionKey);
+				}
+				iterator.remove();
+				changed = true;
+			}
 		}
+		return changed;
+	}
+
+	/**
+	 * Forgets the registered conferences and the wishlist keys once they have been moved to
+	 * Registration and WishlistEntry entities.
+	 */
+	public void clearMigratedKeys() {
+		conferenceKeysToAttend.clear();
+		sessionKeysToAttend.clear();
 	}
 
 	public void update(String dispName, TeeShirtSize teeShirtSize) {
@@ -0,0 +1,82 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.Parent;
+
+/**
+ * Registration records that a user attends a Conference.
+ *
+ * It is a child of the attendee's Profile keyed by the websafe Conference key, so
+ * "is this user registered" is a single key get and "what does this user attend" is an
+ * ancestor keys-only query. The indexed conferenceKey answers "who attends this conference".
+ */
+@Entity
+@Cache
+public class Registration {
+
+    /** The websafe key of the Conference, one registration per user and conference. */
+    @Id
+    private String websafeConferenceKey;
+
+    /** Holds the attendee's Profile key as the parent. */
+    @Parent
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Profile> profileKey;
+
+    /** The key of the Conference, indexed for listing the attendees. */
+    @Index
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Conference> conferenceKey;
+
+    /** Just making the default constructor private. */
+    private Registration() {}
+
+    public Registration(final String userId, final String websafeConferenceKey) {
+        this.profileKey = Key.create(Profile.class, userId);
+        this.conferenceKey = Key.create(websafeConferenceKey);
+        // Use the canonical form of the key as the id.
+        this.websafeConferenceKey = conferenceKey.getString();
+    }
+
+    /**
+     * Builds the key of the registration of a user to a conference.
+     * @param userId The userId of the attendee.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return the Key of the Registration.
+     */
+    public static Key<Registration> createKey(final String userId,
+                                              final String websafeConferenceKey) {
+        Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+        return Key.create(Key.create(Profile.class, userId), Registration.class,
+                conferenceKey.getString());
+    }
+
+    /**
+     * Returns the key of the Conference a Registration key refers to.
+     * @param registrationKey The Key of a Registration.
+     * @return the Key of the Conference.
+     */
+    public static Key<Conference> getConferenceKey(final Key<Registration> registrationKey) {
+        return Key.create(registrationKey.getName());
+    }
+
+    public String getWebsafeConferenceKey() {
+        return websafeConferenceKey;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Profile> getProfileKey() {
+        return profileKey;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+}
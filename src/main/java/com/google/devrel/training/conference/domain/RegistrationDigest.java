@@ -0,0 +1,78 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RegistrationDigest collects the registration changes of a Conference since its organizer
+ * was last notified.
+ *
+ * It is a root entity keyed by the websafe Conference key, so the batches of registration
+ * events append to it without contending with the Conference, and the digest cron sends and
+ * deletes it.
+ */
+@Entity
+public class RegistrationDigest {
+
+    /** How many changes are listed, the others are only counted. */
+    public static final int MAX_CHANGES = 200;
+
+    /** The websafe key of the Conference. */
+    @Id
+    private String websafeConferenceKey;
+
+    private int registered;
+
+    private int unregistered;
+
+    /** The first changes, "+ name" for a registration and "- name" for an unregistration. */
+    private List<String> changes = new ArrayList<>(0);
+
+    /** Just making the default constructor private. */
+    private RegistrationDigest() {}
+
+    public RegistrationDigest(final String websafeConferenceKey) {
+        this.websafeConferenceKey = websafeConferenceKey;
+    }
+
+    public static Key<RegistrationDigest> createKey(final String websafeConferenceKey) {
+        return Key.create(RegistrationDigest.class, websafeConferenceKey);
+    }
+
+    /**
+     * Counts a change, and lists it while there are less than MAX_CHANGES listed.
+     * @param isRegistration true for a registration, false for an unregistration.
+     * @param name the display name of the attendee.
+     */
+    public void add(boolean isRegistration, String name) {
+        if (isRegistration) {
+            registered++;
+        } else {
+            unregistered++;
+        }
+        if (changes.size() < MAX_CHANGES) {
+            changes.add((isRegistration ? "+ " : "- ") + name);
+        }
+    }
+
+    public String getWebsafeConferenceKey() {
+        return websafeConferenceKey;
+    }
+
+    public int getRegistered() {
+        return registered;
+    }
+
+    public int getUnregistered() {
+        return unregistered;
+    }
+
+    public List<String> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+}
@@ -0,0 +1,54 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+/**
+ * SearchPosting is an entry of the full-text index: a term of a Conference, or of one of its
+ * Sessions, with its weight in that text.
+ *
+ * The postings of a term are read by decreasing weight. They are root entities, so indexing
+ * the common terms of many documents doesn't contend on an entity group, and their id is made
+ * of the term and the indexed document, so indexing a document twice rewrites the same entities.
+ */
+@Entity
+public class SearchPosting {
+
+    /** The term, a space, and the websafe key of the indexed Conference or Session. */
+    @Id
+    private String id;
+
+    @Index
+    private String term;
+
+    @Index
+    private float weight;
+
+    /** The Conference returned by the searches matching this posting. */
+    private Key<Conference> conferenceKey;
+
+    /** Just making the default constructor private. */
+    private SearchPosting() {}
+
+    public SearchPosting(final String term, final Key<?> documentKey,
+                         final Key<Conference> conferenceKey, final float weight) {
+        this.id = term + " " + documentKey.getString();
+        this.term = term;
+        this.conferenceKey = conferenceKey;
+        this.weight = weight;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public float getWeight() {
+        return weight;
+    }
+
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * SeatShard holds a slice of the seats of a Conference.
+ *
+ * Shards are root entities (each one is its own entity group), so registrations that land on
+ * different shards do not contend with each other nor with the Conference entity.
+ */
+@Entity
+@Cache
+public class SeatShard {
+
+    /** The id is built from the websafe Conference key and the shard index. */
+    @Id
+    private String id;
+
+    /** The websafe key of the Conference this shard belongs to. */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private String websafeConferenceKey;
+
+    /** The number of seats this shard is responsible for. */
+    private int capacity;
+
+    /** Number of seats currently available in this shard. */
+    private int seatsAvailable;
+
+    /** Just making the default constructor private. */
+    private SeatShard() {}
+
+    public SeatShard(final String websafeConferenceKey, final int index, final int capacity,
+                     final int seatsAvailable) {
+        this.id = createId(websafeConferenceKey, index);
+        this.websafeConferenceKey = websafeConferenceKey;
+        this.capacity = capacity;
+        this.seatsAvailable = seatsAvailable;
+    }
+
+    /**
+     * Builds the key of the shard with the given index for a Conference.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @param index The index of the shard, starting from 0.
+     * @return the Key of the shard.
+     */
+    public static Key<SeatShard> createKey(final String websafeConferenceKey, final int index) {
+        return Key.create(SeatShard.class, createId(websafeConferenceKey, index));
+    }
+
+    private static String createId(final String websafeConferenceKey, final int index) {
+        return websafeConferenceKey + "#" + index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getWebsafeConferenceKey() {
+        return websafeConferenceKey;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public void bookSeats(final int number) {
+        if (seatsAvailable < number) {
+            throw new IllegalArgumentException("There are no seats available in this shard.");
+        }
+        seatsAvailable = seatsAvailable - number;
+    }
+
+    public void giveBackSeats(final int number) {
+        if (seatsAvailable + number > capacity) {
+            throw new IllegalArgumentException("The number of seats will exceeds the shard capacity.");
+        }
+        seatsAvailable = seatsAvailable + number;
+    }
+}
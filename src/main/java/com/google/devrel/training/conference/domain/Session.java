@@ -19,8 +19,10 @@ public class Session {
     @Index
     private String name;
     private String highlights;
+    /** The Speaker, whose names are known from the key. */
     @Index
-    private Speaker speaker;
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Speaker> speakerKey;
     @Index
     private SessionForm.SessionType typeOfSession;
     private Date startDateTime;
@@ -30,6 +32,10 @@ public class Session {
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     private Key<Conference> conferenceKey;
 
+    /** When this Session was last written, stamped on every save. Null if never since. */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Date lastModified;
+
 
     private Session() {}
 
@@ -40,7 +46,8 @@ public class Session {
         this.id = id;
         this.name = sessionForm.getSessionName();
         this.highlights = sessionForm.getHighlights();
-        this.speaker = sessionForm.getSpeaker();
+        Speaker speaker = sessionForm.getSpeaker();
+        this.speakerKey = speaker == null || speaker.isEmpty() ? null : speaker.getKey();
         this.typeOfSession = sessionForm.getTypeOfSession();
         this.startDateTime = sessionForm.getStartTime();
         this.duration = (sessionForm.getStartTime().getTime() - sessionForm.getEndTime().getTime());
@@ -59,7 +66,30 @@ public class Session {
         return highlights;
     }
     public Speaker getSpeaker() {
-        return speaker;
+        return speakerKey == null ? null : Speaker.fromKey(speakerKey);
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Speaker> getSpeakerKey() {
+        return speakerKey;
+    }
+
+    /**
+     * Sets the Speaker of a session stored before the speakers were entities.
+     * @param speaker The Speaker, or null.
+     */
+    public void migrateSpeaker(Speaker speaker) {
+        this.speakerKey = speaker == null || speaker.isEmpty() ? null : speaker.getKey();
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    @OnSave
+    void stampLastModified() {
+        this.lastModified = new Date();
     }
     public long getDuration() {
         return duration;
@@ -88,8 +118,8 @@ public class Session {
         if (highlights != null) {
             stringBuilder.append("Highlights: ").append(highlights).append("\n");
         }
-        if (speaker != null) {
-            stringBuilder.append("Speaker: ").append(speaker.toString()).append("\n");
+        if (speakerKey != null) {
+            stringBuilder.append("Speaker: ").append(getSpeaker().toString()).append("\n");
         }
         if (typeOfSession != null) {
             stringBuilder.append("TypeOfSession: ").append(typeOfSession.toString()).append("\n");
@@ -0,0 +1,55 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Parent;
+
+/**
+ * SessionName reserves the name of a Session within its Conference.
+ *
+ * It is a child of the Conference keyed by the session name, so checking that a name is free
+ * is a single key get, whatever the number of sessions of the conference.
+ */
+@Entity
+public class SessionName {
+
+    /** The name of the Session. */
+    @Id
+    private String name;
+
+    /** Holds the Conference key as the parent. */
+    @Parent
+    private Key<Conference> conferenceKey;
+
+    /** The id of the Session holding the name. */
+    private long sessionId;
+
+    /** Just making the default constructor private. */
+    private SessionName() {}
+
+    public SessionName(final Key<Session> sessionKey, final String name) {
+        this.conferenceKey = sessionKey.getParent();
+        this.name = name;
+        this.sessionId = sessionKey.getId();
+    }
+
+    /**
+     * Builds the key reserving a session name within a conference.
+     * @param conferenceKey The Key of the Conference.
+     * @param name The name of the Session.
+     * @return the Key of the SessionName.
+     */
+    public static Key<SessionName> createKey(final Key<Conference> conferenceKey,
+                                             final String name) {
+        return Key.create(conferenceKey, SessionName.class, name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Key<Session> getSessionKey() {
+        return Key.create(conferenceKey, Session.class, sessionId);
+    }
+}
@@ -1,33 +1,102 @@
 package com.google.devrel.training.conference.domain;
 
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+import java.util.Locale;
+
+/**
+ * Speaker is a person giving sessions, referenced by the Sessions by key.
+ *
+ * The names are normalized, trimmed with single spaces and lower cased, however the Speaker was
+ * built, and the key is made of the normalized names. So the key of a speaker is known from the
+ * names alone, and the sessions of a speaker are a keys-only query on Session.speakerKey.
+ */
+@Entity
+@Cache
 public class Speaker {
 
+    /** Separates the first name from the last name in the id, it can't appear in a name. */
+    private static final char NAME_SEPARATOR = '\t';
+
+    /** The normalized first name, the separator, and the normalized last name. */
+    @Id
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private String id;
+
     private String firstName;
+
+    @Index
     private String lastName;
 
     // Introducing the dummy constructor to avoid issues with JSON conversion
-    private Speaker() { }
+    private Speaker() {
+        this("", "");
+    }
 
     /**
      * @param firstName
      * @param lastName
      */
     public Speaker(String firstName, String lastName){
-        this.firstName = firstName.toLowerCase();
-        this.lastName = lastName.toLowerCase();
+        this.firstName = normalize(firstName);
+        this.lastName = normalize(lastName);
+        this.id = this.firstName + NAME_SEPARATOR + this.lastName;
+    }
+
+    /**
+     * Rebuilds the Speaker of a key, without loading it.
+     * @param speakerKey The Key of a Speaker.
+     * @return the Speaker.
+     */
+    public static Speaker fromKey(Key<Speaker> speakerKey) {
+        String id = speakerKey.getName();
+        int separator = id.indexOf(NAME_SEPARATOR);
+        return new Speaker(id.substring(0, separator), id.substring(separator + 1));
+    }
+
+    /**
+     * Trims a name, replaces its runs of whitespace with single spaces and lower cases it.
+     */
+    private static String normalize(String name) {
+        return name == null
+                ? "" : name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the Key of this Speaker.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Speaker> getKey() {
+        return Key.create(Speaker.class, id);
+    }
+
+    /**
+     * @return true if neither name is given.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public boolean isEmpty() {
+        return firstName.isEmpty() && lastName.isEmpty();
     }
 
     public String getFirstName() {
         return firstName;
     }
     public void setFirstName(String firstName) {
-        this.firstName = firstName;
+        this.firstName = normalize(firstName);
+        this.id = this.firstName + NAME_SEPARATOR + this.lastName;
     }
     public String getLastName() {
         return lastName;
     }
     public void setLastName(String lastName) {
-        this.lastName = lastName;
+        this.lastName = normalize(lastName);
+        this.id = this.firstName + NAME_SEPARATOR + this.lastName;
     }
 
 
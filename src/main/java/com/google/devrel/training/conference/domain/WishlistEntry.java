@@ -0,0 +1,76 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.Parent;
+
+/**
+ * WishlistEntry records a Session a user is interested in attending.
+ *
+ * It is a child of the user's Profile keyed by the websafe Session key, so adding or removing
+ * a session writes a small entity instead of rewriting the Profile.
+ */
+@Entity
+@Cache
+public class WishlistEntry {
+
+    /** The websafe key of the Session. */
+    @Id
+    private String websafeSessionKey;
+
+    /** Holds the user's Profile key as the parent. */
+    @Parent
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Profile> profileKey;
+
+    /** The key of the Conference of the session, indexed for dropping a conference's sessions. */
+    @Index
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Conference> conferenceKey;
+
+    /** Just making the default constructor private. */
+    private WishlistEntry() {}
+
+    public WishlistEntry(final String userId, final String websafeSessionKey) {
+        Key<Session> sessionKey = Key.create(websafeSessionKey);
+        this.profileKey = Key.create(Profile.class, userId);
+        this.conferenceKey = sessionKey.getParent();
+        // Use the canonical form of the key as the id.
+        this.websafeSessionKey = sessionKey.getString();
+    }
+
+    /**
+     * Builds the key of the wishlist entry of a user for a session.
+     * @param userId The userId of the user.
+     * @param websafeSessionKey The String representation of the Session Key.
+     * @return the Key of the WishlistEntry.
+     */
+    public static Key<WishlistEntry> createKey(final String userId, final String websafeSessionKey) {
+        Key<Session> sessionKey = Key.create(websafeSessionKey);
+        return Key.create(Key.create(Profile.class, userId), WishlistEntry.class,
+                sessionKey.getString());
+    }
+
+    /**
+     * Returns the key of the Session a WishlistEntry key refers to.
+     * @param entryKey The Key of a WishlistEntry.
+     * @return the Key of the Session.
+     */
+    public static Key<Session> getSessionKey(final Key<WishlistEntry> entryKey) {
+        return Key.create(entryKey.getName());
+    }
+
+    public String getWebsafeSessionKey() {
+        return websafeSessionKey;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+}
@@ -4,12 +4,16 @@ import static com.google.devrel.training.conference.service.OfyService.ofy;
 
 import com.google.api.server.spi.config.AnnotationBoolean;
 import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.common.collect.ImmutableList;
 import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceStatistics;
 
 import com.googlecode.objectify.cmd.Query;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -20,6 +24,18 @@ public class ConferenceQueryForm {
 
     private static final Logger LOG = Logger.getLogger(ConferenceQueryForm.class.getName());
 
+    /** The page size used when the client doesn't specify one. */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /** The largest page size a client can ask for. */
+    public static final int MAX_PAGE_SIZE = 50;
+
+    /** How many conferences a page reads at most when some filters are applied in memory. */
+    public static final int SCAN_BUDGET = 500;
+
+    /** Separates the plan pinned in a page token from the datastore cursor. */
+    private static final char PLAN_SEPARATOR = '.';
+
     /**
      * Enum representing a field type.
      */
@@ -48,6 +64,10 @@ public class ConferenceQueryForm {
         private String getFieldName() {
             return this.fieldName;
         }
+
+        FieldType getFieldType() {
+            return this.fieldType;
+        }
     }
 
     /**
@@ -71,7 +91,7 @@ public class ConferenceQueryForm {
             return this.queryOperator;
         }
 
-        private boolean isInequalityFilter() {
+        boolean isInequalityFilter() {
             return this.queryOperator.contains("<") || this.queryOperator.contains(">") ||
                     this.queryOperator.contains("!");
         }
@@ -112,27 +132,67 @@ public class ConferenceQueryForm {
     private List<Filter> filters = new ArrayList<>(0);
 
     /**
-     * Holds the first inequalityFilter for checking the feasibility of the whole query.
+     * How the query runs, chosen on first use, until another filter is added.
      */
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
-    private Filter inequalityFilter;
+    private ConferenceQueryPlanner.Plan plan;
+
+    /**
+     * The maximum number of conferences to return in a page.
+     */
+    private int pageSize;
+
+    /**
+     * The opaque websafe cursor returned with the previous page, null for the first page.
+     */
+    private String cursor;
 
     public ConferenceQueryForm() {}
 
     /**
-     * Checks the feasibility of the whole query.
+     * Returns how the query runs, see ConferenceQueryPlanner.
+     *
+     * The next pages keep the plan of the first page, as a cursor only resumes the query it
+     * comes from: the filters run by the datastore are pinned in the page token.
+     *
+     * @return the plan of the query.
+     * @throws IllegalArgumentException when the cursor is malformed, the API answers it with a
+     *     BadRequestException.
      */
-    private void checkFilters() {
-        for (Filter filter : this.filters) {
-            if (filter.operator.isInequalityFilter()) {
-                // Only one inequality filter is allowed.
-                if (inequalityFilter != null && !inequalityFilter.field.equals(filter.field)) {
-                    throw new IllegalArgumentException(
-                            "Inequality filter is allowed on only one field.");
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public ConferenceQueryPlanner.Plan getPlan() {
+        if (plan == null) {
+            // An unfiltered query has a single plan, no need for the statistics.
+            ConferenceQueryPlanner planner = new ConferenceQueryPlanner(canonicalFilters(),
+                    getPageSize(), filters.isEmpty()
+                            ? null : ofy().load().key(ConferenceStatistics.createKey()).now());
+            int separator = cursor == null ? -1 : cursor.indexOf(PLAN_SEPARATOR);
+            if (separator < 0) {
+                plan = planner.plan();
+            } else {
+                try {
+                    plan = planner.plan(Long.parseLong(cursor.substring(0, separator), 16));
+                } catch (NumberFormatException e) {
+                    plan = null;
+                }
+                if (plan == null) {
+                    throw new IllegalArgumentException("Invalid cursor: " + cursor);
                 }
-                inequalityFilter = filter;
             }
+            LOG.info("Query plan: " + plan);
         }
+        return plan;
+    }
+
+    /**
+     * Returns the token of the page that starts at a cursor of the query from getQuery.
+     *
+     * @param queryCursor A cursor of the query.
+     * @return the opaque token to pass as the cursor of the next page.
+     */
+    public String nextPageToken(Cursor queryCursor) {
+        return Long.toHexString(getPlan().getMask()) + PLAN_SEPARATOR
+                + queryCursor.toWebSafeString();
     }
 
     /**
@@ -151,47 +211,213 @@ public class ConferenceQueryForm {
      * @return this for method chaining.
      */
     public ConferenceQueryForm filter(Filter filter) {
-        if (filter.operator.isInequalityFilter()) {
-            // Only allows inequality filters on a single field.
-            if (inequalityFilter != null && !inequalityFilter.field.equals(filter.field)) {
-                throw new IllegalArgumentException(
-                        "Inequality filter is allowed on only one field.");
-            }
-            inequalityFilter = filter;
-        }
         filters.add(filter);
+        plan = null;
         return this;
     }
 
     /**
-     * Returns an Objectify Query object for the specified filters.
+     * Returns the page size bounded to [1, MAX_PAGE_SIZE], DEFAULT_PAGE_SIZE if not specified.
+     *
+     * @return The page size.
+     */
+    public int getPageSize() {
+        if (pageSize <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Sets the page to fetch.
+     *
+     * @param pageSize The maximum number of conferences to return.
+     * @param cursor The websafe cursor returned with the previous page, or null.
+     * @return this for method chaining.
+     */
+    public ConferenceQueryForm page(int pageSize, String cursor) {
+        this.pageSize = pageSize;
+        this.cursor = cursor;
+        plan = null;
+        return this;
+    }
+
+    /**
+     * Returns a canonical description of the query and the page, the same for forms that only
+     * differ by the order of their filters or by the formatting of their integer values.
+     *
+     * @return the canonical query, usable as a cache key.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public String getCanonicalQuery() {
+        StringBuilder canonicalQuery = new StringBuilder();
+        for (Filter filter : canonicalFilters()) {
+            canonicalQuery.append(canonicalFilter(filter)).append('\n');
+        }
+        canonicalQuery.append("pageSize ").append(getPageSize()).append('\n');
+        canonicalQuery.append("cursor ").append(cursor == null ? "" : cursor);
+        return canonicalQuery.toString();
+    }
+
+    /**
+     * Returns the filters sorted by their canonical description, so that the plans pinned in
+     * the page tokens don't depend on the order of the filters.
+     */
+    private List<Filter> canonicalFilters() {
+        List<Filter> canonicalFilters = new ArrayList<>(filters);
+        Collections.sort(canonicalFilters, new Comparator<Filter>() {
+            @Override
+            public int compare(Filter a, Filter b) {
+                return canonicalFilter(a).compareTo(canonicalFilter(b));
+            }
+        });
+        return canonicalFilters;
+    }
+
+    private static String canonicalFilter(Filter filter) {
+        Object value = normalizedValue(filter);
+        // Length-prefix the value, so that no value can be mistaken for a separator.
+        String canonicalValue = value == null ? "null" : value.toString().length() + ":" + value;
+        return filter.field.name() + " " + filter.operator.name() + " " + canonicalValue;
+    }
+
+    /**
+     * Returns the value of a filter as used in the query: trimmed strings and parsed integers.
+     */
+    private static Object normalizedValue(Filter filter) {
+        String value = filter.value == null ? null : filter.value.trim();
+        if (filter.field.fieldType == FieldType.INTEGER) {
+            return Integer.parseInt(value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns an Objectify Query object for the specified filters, limited to the requested page.
      *
      * @return an Objectify Query.
      */
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     public Query<Conference> getQuery() {
-        // First check the feasibility of inequality filters.
-        checkFilters();
+        // First pick the filters the datastore runs.
+        ConferenceQueryPlanner.Plan plan = getPlan();
         Query<Conference> query = ofy().load().type(Conference.class);
-        if (inequalityFilter == null) {
+        if (plan.getInequalityField() == null) {
             // Order by name.
             query = query.order("name");
         } else {
             // If we have any inequality filters, order by the field first.
-            query = query.order(inequalityFilter.field.getFieldName());
+            query = query.order(plan.getInequalityField().getFieldName());
             query = query.order("name");
         }
-        for (Filter filter : this.filters) {
+        for (Filter filter : plan.getPushedFilters()) {
             // Applies filters in order.
-            if (filter.field.fieldType == FieldType.STRING) {
-                query = query.filter(String.format("%s %s", filter.field.getFieldName(),
-                        filter.operator.getQueryOperator()), filter.value);
-            } else if (filter.field.fieldType == FieldType.INTEGER) {
-                query = query.filter(String.format("%s %s", filter.field.getFieldName(),
-                        filter.operator.getQueryOperator()), Integer.parseInt(filter.value));
-            }
+            query = query.filter(String.format("%s %s", filter.field.getFieldName(),
+                    filter.operator.getQueryOperator()), normalizedValue(filter));
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            query = query.startAt(Cursor.fromWebSafeString(
+                    cursor.substring(cursor.indexOf(PLAN_SEPARATOR) + 1)));
+        }
+        query = query.limit(getScanLimit());
+        if (hasPostFilters()) {
+            query = query.chunk(getPageSize());
         }
         LOG.info(query.toString());
         return query;
     }
+
+    /**
+     * Returns the limit of the query from getQuery: the page size, or the scan budget when some
+     * filters are applied in memory. A page that reads this many conferences without filling up
+     * continues from its cursor.
+     *
+     * @return the maximum number of conferences a page reads.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public int getScanLimit() {
+        return hasPostFilters() ? Math.max(SCAN_BUDGET, getPageSize()) : getPageSize();
+    }
+
+    /**
+     * Returns true if some filters are applied in memory, so the query from getQuery can return
+     * conferences that don't match, see matches.
+     *
+     * @return true if the results must be post-filtered.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public boolean hasPostFilters() {
+        return !getPlan().getPostFilters().isEmpty();
+    }
+
+    /**
+     * Applies the filters the datastore can't run to a result of the query.
+     * As in the datastore, a filter on a list matches if any of its values does.
+     *
+     * @param conference A Conference returned by the query from getQuery.
+     * @return true if the conference matches all the filters.
+     */
+    public boolean matches(Conference conference) {
+        for (Filter filter : getPlan().getPostFilters()) {
+            boolean matched = false;
+            for (Object value : valuesOf(filter.field, conference)) {
+                if (value != null && compare(filter, value)) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares a value of a conference to the value of a filter, like the datastore.
+     *
+     * @param filter A filter.
+     * @param value A value of the field of the filter, an Integer for the INTEGER fields.
+     * @return true if the value matches the filter.
+     */
+    @SuppressWarnings("unchecked")
+    static boolean compare(Filter filter, Object value) {
+        Object filterValue = normalizedValue(filter);
+        if (filterValue == null) {
+            return false;
+        }
+        int comparison = ((Comparable<Object>) value).compareTo(filterValue);
+        switch (filter.operator) {
+            case EQ:
+                return comparison == 0;
+            case LT:
+                return comparison < 0;
+            case GT:
+                return comparison > 0;
+            case LTEQ:
+                return comparison <= 0;
+            case GTEQ:
+                return comparison >= 0;
+            default:
+                return comparison != 0;
+        }
+    }
+
+    private static List<?> valuesOf(Field field, Conference conference) {
+        switch (field) {
+            case CITY:
+                return Collections.singletonList(conference.getCity());
+            case TOPIC:
+                return conference.getTopics() == null
+                        ? Collections.emptyList() : conference.getTopics();
+            case MONTH:
+                return Collections.singletonList(conference.getMonth());
+            default:
+                return Collections.singletonList(conference.getMaxAttendees());
+        }
+    }
 }
@@ -0,0 +1,385 @@
+package com.google.devrel.training.conference.form;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.ConferenceStatistics;
+import com.google.devrel.training.conference.domain.ConferenceStatistics.ValueCounts;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.FieldType;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Operator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chooses how a conference query runs, from the statistics of the conferences.
+ *
+ * The datastore runs the equality filters and the inequalities of at most one field, either with
+ * a composite index declared in datastore-indexes.xml or by a zigzag merge join of the
+ * (field, name) indexes of the equality filters. The other filters are applied in memory to its
+ * results. The planner estimates the entities and the index entries each alternative reads to
+ * fill a page and picks the cheapest one, so a filter most conferences match, like the default
+ * city, is checked in memory rather than merge joined.
+ */
+public class ConferenceQueryPlanner {
+
+    /**
+     * How the datastore part of a plan runs.
+     */
+    public static enum Strategy {
+        /** A single index covers the filters run by the datastore. */
+        COMPOSITE_INDEX,
+        /** The datastore merge joins the indexes of several equality filters. */
+        MERGE_JOIN,
+        /** Some filters are applied in memory, see the datastore part of the plan. */
+        IN_MEMORY_FILTER
+    }
+
+    /** The cost of reading an index entry, relative to the cost of reading an entity. */
+    private static final double INDEX_ENTRY_COST = 0.1;
+
+    /** The selectivities assumed without statistics. */
+    private static final double DEFAULT_EQ_SELECTIVITY = 0.1;
+
+    private static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    private static final double DEFAULT_NE_SELECTIVITY = 0.9;
+
+    /** The lowest selectivity used, so that no plan looks free. */
+    private static final double MIN_SELECTIVITY = 1e-6;
+
+    /**
+     * The fields before name of the composite Conference indexes of datastore-indexes.xml.
+     * An index serves equality filters on all its fields, or on all but the last one with
+     * inequalities on the last one. The (field, name) index of every field is declared too.
+     */
+    private static final List<List<Field>> COMPOSITE_INDEXES = ImmutableList.<List<Field>>of(
+            ImmutableList.of(Field.CITY, Field.TOPIC),
+            ImmutableList.of(Field.CITY, Field.MONTH),
+            ImmutableList.of(Field.TOPIC, Field.MONTH),
+            ImmutableList.of(Field.CITY, Field.MAX_ATTENDEES),
+            ImmutableList.of(Field.TOPIC, Field.MAX_ATTENDEES),
+            ImmutableList.of(Field.MONTH, Field.MAX_ATTENDEES));
+
+    /** The largest number of filters a plan can be pinned for. */
+    static final int MAX_FILTERS = 63;
+
+    private final List<Filter> filters;
+
+    private final int pageSize;
+
+    private final ConferenceStatistics statistics;
+
+    /**
+     * @param filters The filters of the query, in canonical order.
+     * @param pageSize The page size of the query.
+     * @param statistics The statistics of the conferences, null if not computed yet.
+     */
+    ConferenceQueryPlanner(List<Filter> filters, int pageSize, ConferenceStatistics statistics) {
+        if (filters.size() > MAX_FILTERS) {
+            throw new IllegalArgumentException("A query can have at most " + MAX_FILTERS
+                    + " filters.");
+        }
+        this.filters = filters;
+        this.pageSize = pageSize;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the cheapest plan. The candidates run the equality filters by increasing
+     * selectivity estimate, the first ones in the datastore and the others in memory, with the
+     * inequalities of one field or none in the datastore.
+     *
+     * @return the plan with the lowest estimated cost.
+     */
+    Plan plan() {
+        List<Integer> equalities = new ArrayList<>();
+        List<Field> inequalityFields = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            if (!filter.getOperator().isInequalityFilter()) {
+                equalities.add(i);
+            } else if (!inequalityFields.contains(filter.getField())) {
+                inequalityFields.add(filter.getField());
+            }
+        }
+        final double[] selectivities = new double[filters.size()];
+        for (int i : equalities) {
+            selectivities[i] = fieldSelectivity(Collections.singletonList(filters.get(i)));
+        }
+        Collections.sort(equalities, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(selectivities[a], selectivities[b]);
+            }
+        });
+        // The inequalities come first, as the datastore ran them before there were plans.
+        inequalityFields.add(null);
+
+        Plan best = null;
+        for (Field inequalityField : inequalityFields) {
+            long mask = 0;
+            if (inequalityField != null) {
+                for (int i = 0; i < filters.size(); i++) {
+                    if (filters.get(i).getField() == inequalityField
+                            && filters.get(i).getOperator().isInequalityFilter()) {
+                        mask |= 1L << i;
+                    }
+                }
+            }
+            for (int pushed = equalities.size(); pushed >= 0; pushed--) {
+                long candidateMask = mask;
+                for (int i : equalities.subList(0, pushed)) {
+                    candidateMask |= 1L << i;
+                }
+                Plan candidate = plan(candidateMask);
+                if (candidate != null && (best == null || candidate.cost < best.cost)) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the plan running a given set of filters in the datastore, e.g. to fetch the next
+     * pages of a query with the plan of its first page.
+     *
+     * @param mask The bits of the indexes of the filters run in the datastore.
+     * @return the plan, null if the datastore can't run these filters.
+     */
+    Plan plan(long mask) {
+        if (mask >>> filters.size() != 0) {
+            return null;
+        }
+        List<Filter> pushedFilters = new ArrayList<>();
+        List<Filter> postFilters = new ArrayList<>();
+        Set<Field> equalityFields = EnumSet.noneOf(Field.class);
+        boolean repeatedField = false;
+        Field inequalityField = null;
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            if ((mask & (1L << i)) == 0) {
+                postFilters.add(filter);
+            } else if (filter.getOperator().isInequalityFilter()) {
+                if (inequalityField != null && inequalityField != filter.getField()) {
+                    return null;
+                }
+                inequalityField = filter.getField();
+                pushedFilters.add(filter);
+            } else {
+                repeatedField |= !equalityFields.add(filter.getField());
+                pushedFilters.add(filter);
+            }
+        }
+
+        Strategy strategy;
+        int indexedFields = equalityFields.size() + (inequalityField == null ? 0 : 1);
+        if (indexedFields <= 1 && !repeatedField) {
+            strategy = Strategy.COMPOSITE_INDEX;
+        } else if (!repeatedField && hasCompositeIndex(equalityFields, inequalityField)) {
+            strategy = Strategy.COMPOSITE_INDEX;
+        } else if (inequalityField == null) {
+            strategy = Strategy.MERGE_JOIN;
+        } else {
+            // The inequalities of a merge join need an index per equality filter, none is declared.
+            return null;
+        }
+
+        // The entities read for a page of matches, and the index entries read to find them.
+        double entities = pageSize / Math.max(selectivity(postFilters), MIN_SELECTIVITY);
+        double indexEntries = entities;
+        if (strategy == Strategy.MERGE_JOIN) {
+            // Each index skips the entries the other filters reject.
+            double joinedSelectivity = 1;
+            double sumOfSelectivities = 0;
+            for (Filter filter : pushedFilters) {
+                double selectivity = fieldSelectivity(Collections.singletonList(filter));
+                joinedSelectivity *= selectivity;
+                sumOfSelectivities += selectivity;
+            }
+            indexEntries = entities * sumOfSelectivities
+                    / Math.max(joinedSelectivity, MIN_SELECTIVITY);
+        }
+        double cost = entities + INDEX_ENTRY_COST * indexEntries;
+        return new Plan(postFilters.isEmpty() ? strategy : Strategy.IN_MEMORY_FILTER, mask,
+                pushedFilters, postFilters, inequalityField, cost);
+    }
+
+    private static boolean hasCompositeIndex(Set<Field> equalityFields, Field inequalityField) {
+        for (List<Field> index : COMPOSITE_INDEXES) {
+            if (inequalityField == null) {
+                if (equalityFields.size() == index.size() && equalityFields.containsAll(index)) {
+                    return true;
+                }
+            } else if (index.get(index.size() - 1) == inequalityField
+                    && equalityFields.size() == index.size() - 1
+                    && equalityFields.containsAll(index.subList(0, index.size() - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the fraction of the conferences matching all the filters, assuming the fields
+     * are independent. The inequalities of a field are estimated together, as they usually
+     * bound a range.
+     */
+    double selectivity(List<Filter> someFilters) {
+        double selectivity = 1;
+        Set<Field> inequalityFields = EnumSet.noneOf(Field.class);
+        for (Filter filter : someFilters) {
+            if (!filter.getOperator().isInequalityFilter()) {
+                selectivity *= fieldSelectivity(Collections.singletonList(filter));
+            } else if (inequalityFields.add(filter.getField())) {
+                List<Filter> fieldFilters = new ArrayList<>();
+                for (Filter other : someFilters) {
+                    if (other.getField() == filter.getField()
+                            && other.getOperator().isInequalityFilter()) {
+                        fieldFilters.add(other);
+                    }
+                }
+                selectivity *= fieldSelectivity(fieldFilters);
+            }
+        }
+        return selectivity;
+    }
+
+    /**
+     * Estimates the fraction of the conferences matching all the filters of a single field.
+     */
+    private double fieldSelectivity(List<Filter> fieldFilters) {
+        Field field = fieldFilters.get(0).getField();
+        ValueCounts valueCounts = valueCounts(field);
+        if (valueCounts == null || statistics.getConferences() == 0) {
+            double selectivity = 1;
+            for (Filter filter : fieldFilters) {
+                selectivity *= filter.getOperator() == Operator.EQ ? DEFAULT_EQ_SELECTIVITY
+                        : filter.getOperator() == Operator.NE ? DEFAULT_NE_SELECTIVITY
+                        : DEFAULT_RANGE_SELECTIVITY;
+            }
+            return selectivity;
+        }
+        double matches = 0;
+        for (Map.Entry<String, Long> count : valueCounts.getCounts().entrySet()) {
+            Object value = field.getFieldType() == FieldType.INTEGER
+                    ? (Object) Integer.valueOf(count.getKey()) : count.getKey();
+            boolean matched = true;
+            for (Filter filter : fieldFilters) {
+                matched &= ConferenceQueryForm.compare(filter, value);
+            }
+            if (matched) {
+                matches += count.getValue();
+            }
+        }
+        if (valueCounts.getOtherValues() > 0) {
+            // The values not counted one by one are assumed to match like a typical value.
+            boolean equality = fieldFilters.size() == 1
+                    && fieldFilters.get(0).getOperator() == Operator.EQ;
+            matches += equality
+                    ? (double) valueCounts.getOtherCount() / valueCounts.getOtherValues()
+                    : valueCounts.getOtherCount() * DEFAULT_RANGE_SELECTIVITY;
+        }
+        return Math.max(MIN_SELECTIVITY, Math.min(1, matches / statistics.getConferences()));
+    }
+
+    private ValueCounts valueCounts(Field field) {
+        if (statistics == null) {
+            return null;
+        }
+        switch (field) {
+            case CITY:
+                return statistics.getCities();
+            case TOPIC:
+                return statistics.getTopics();
+            case MONTH:
+                return statistics.getMonths();
+            default:
+                return statistics.getMaxAttendees();
+        }
+    }
+
+    /**
+     * A plan: the filters the datastore runs, the filters applied in memory and the estimated
+     * cost of a page.
+     */
+    public static class Plan {
+
+        private final Strategy strategy;
+
+        private final long mask;
+
+        private final List<Filter> pushedFilters;
+
+        private final List<Filter> postFilters;
+
+        private final Field inequalityField;
+
+        private final double cost;
+
+        Plan(Strategy strategy, long mask, List<Filter> pushedFilters, List<Filter> postFilters,
+             Field inequalityField, double cost) {
+            this.strategy = strategy;
+            this.mask = mask;
+            this.pushedFilters = pushedFilters;
+            this.postFilters = postFilters;
+            this.inequalityField = inequalityField;
+            this.cost = cost;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * @return the bits of the indexes of the filters run in the datastore.
+         */
+        public long getMask() {
+            return mask;
+        }
+
+        public List<Filter> getPushedFilters() {
+            return Collections.unmodifiableList(pushedFilters);
+        }
+
+        public List<Filter> getPostFilters() {
+            return Collections.unmodifiableList(postFilters);
+        }
+
+        /**
+         * @return the field of the inequalities run in the datastore, null if there are none.
+         */
+        public Field getInequalityField() {
+            return inequalityField;
+        }
+
+        /**
+         * @return the estimated reads of a page, in entities.
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%s datastore=%s memory=%s cost=%.1f",
+                    strategy, describe(pushedFilters), describe(postFilters), cost);
+        }
+
+        private static String describe(List<Filter> filters) {
+            List<String> descriptions = new ArrayList<>(filters.size());
+            for (Filter filter : filters) {
+                descriptions.add(filter.getField() + " " + filter.getOperator() + " "
+                        + filter.getValue());
+            }
+            return descriptions.toString();
+        }
+    }
+}
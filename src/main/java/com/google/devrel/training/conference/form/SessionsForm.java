@@ -0,0 +1,23 @@
+package com.google.devrel.training.conference.form;
+
+import java.util.List;
+
+/**
+ * A simple Java object (POJO) representing the sessions of an agenda sent from the client.
+ */
+public class SessionsForm {
+    private List<SessionForm> sessions;
+
+    private SessionsForm() {} // default constructor is disabled
+
+    /**
+     * @param sessions The sessions to create, in the order of the agenda
+     */
+    public SessionsForm(List<SessionForm> sessions) {
+        this.sessions = sessions;
+    }
+
+    public List<SessionForm> getSessions() {
+        return sessions;
+    }
+}
@@ -0,0 +1,190 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.devrel.training.conference.Constants;
+
+import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The announcement, cached in the instance in front of memcache.
+ *
+ * The announcement seen last is served without any RPC for FRESH_MILLIS. Until STALE_MILLIS it
+ * is still served, while an asynchronous memcache get refreshes it for the next requests. Only
+ * an older one is read synchronously. Every published announcement is stamped with a version
+ * from a memcache counter, so neither memcache nor the instance replaces an announcement with
+ * an older one, whatever the order the writes and the refreshes complete in.
+ */
+public class AnnouncementCache {
+
+    private static final Logger LOG = Logger.getLogger(AnnouncementCache.class.getName());
+
+    /** Milliseconds the announcement is served from the instance without checking memcache. */
+    static final long FRESH_MILLIS = 2000;
+
+    /** Milliseconds the announcement is served from the instance while it is refreshed. */
+    static final long STALE_MILLIS = 10000;
+
+    /** How many times a write retries when memcache was updated meanwhile. */
+    private static final int MAX_PUT_ATTEMPTS = 3;
+
+    private static final Object LOCK = new Object();
+
+    /** The announcement seen last, null until the first request. Guarded by LOCK. */
+    private static Stamped stamped;
+
+    /** When the announcement seen last was read from memcache. Guarded by LOCK. */
+    private static long fetchedAt;
+
+    /** The memcache get refreshing the announcement, null when none runs. Guarded by LOCK. */
+    private static Future<Object> refresh;
+
+    /** When the running refresh was started. Guarded by LOCK. */
+    private static long refreshStartedAt;
+
+    private AnnouncementCache() {}
+
+    /**
+     * @return the current announcement, null when there is none.
+     */
+    public static String get() {
+        long now = System.currentTimeMillis();
+        synchronized (LOCK) {
+            collectRefresh();
+            if (stamped != null && now - fetchedAt < FRESH_MILLIS) {
+                return stamped.getAnnouncement();
+            }
+            if (stamped != null && now - fetchedAt < STALE_MILLIS) {
+                if (refresh == null) {
+                    refresh = MemcacheServiceFactory.getAsyncMemcacheService()
+                            .get(Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+                    refreshStartedAt = now;
+                }
+                return stamped.getAnnouncement();
+            }
+        }
+        // Nothing recent enough in the instance.
+        Stamped current = stamped(MemcacheServiceFactory.getMemcacheService()
+                .get(Constants.MEMCACHE_ANNOUNCEMENTS_KEY));
+        if (current == null) {
+            // Evicted, it is built again from the datastore.
+            current = AnnouncementService.republish();
+        }
+        offer(current, now);
+        return current.getAnnouncement();
+    }
+
+    /**
+     * Publishes a new announcement, to memcache and to the instance.
+     * @param announcement the announcement, null when there is none.
+     * @return the announcement with its version.
+     */
+    static Stamped publish(String announcement) {
+        MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+        // Start from the clock when the counter was evicted, so the versions keep growing.
+        long version = memcacheService.increment(Constants.MEMCACHE_ANNOUNCEMENTS_VERSION_KEY,
+                1L, System.currentTimeMillis());
+        Stamped published = new Stamped(announcement, version);
+        for (int attempt = 0; attempt < MAX_PUT_ATTEMPTS; attempt++) {
+            IdentifiableValue current =
+                    memcacheService.getIdentifiable(Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+            Stamped stored = current == null ? null : stamped(current.getValue());
+            if (current == null) {
+                if (memcacheService.put(Constants.MEMCACHE_ANNOUNCEMENTS_KEY, published, null,
+                        SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+                    break;
+                }
+            } else if (stored != null && stored.getVersion() > version) {
+                // A newer announcement is there already.
+                break;
+            } else if (memcacheService.putIfUntouched(
+                    Constants.MEMCACHE_ANNOUNCEMENTS_KEY, current, published)) {
+                break;
+            }
+        }
+        offer(published, System.currentTimeMillis());
+        return published;
+    }
+
+    /**
+     * Keeps an announcement read at the given time, unless a newer one was seen.
+     */
+    private static void offer(Stamped candidate, long readAt) {
+        synchronized (LOCK) {
+            if (stamped == null || candidate.getVersion() >= stamped.getVersion()) {
+                stamped = candidate;
+            }
+            fetchedAt = Math.max(fetchedAt, readAt);
+        }
+    }
+
+    /**
+     * Keeps the result of the refresh once it completed. Called with LOCK held.
+     */
+    private static void collectRefresh() {
+        if (refresh == null || !refresh.isDone()) {
+            return;
+        }
+        try {
+            Stamped refreshed = stamped(refresh.get());
+            if (refreshed != null) {
+                offer(refreshed, refreshStartedAt);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.log(Level.WARNING, "Could not refresh the announcement", e);
+        } finally {
+            refresh = null;
+        }
+    }
+
+    /**
+     * @return the value read from memcache if it is a Stamped, null otherwise. Any other value
+     * is treated as a miss, and replaced by the next publish.
+     */
+    private static Stamped stamped(Object value) {
+        return value instanceof Stamped ? (Stamped) value : null;
+    }
+
+    /**
+     * Forgets the announcement seen last, for the tests.
+     */
+    static void clear() {
+        synchronized (LOCK) {
+            stamped = null;
+            fetchedAt = 0;
+            refresh = null;
+        }
+    }
+
+    /**
+     * An announcement with its version, as stored in memcache.
+     */
+    public static class Stamped implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The announcement, null when there is none. */
+        private final String announcement;
+
+        private final long version;
+
+        Stamped(String announcement, long version) {
+            this.announcement = announcement;
+            this.version = version;
+        }
+
+        public String getAnnouncement() {
+            return announcement;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.common.base.Joiner;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.NearlySoldOutConferences;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * The announcement of the nearly sold out conferences, those with 1 - 4 seats left.
+ *
+ * The batches of registration events report the new number of seats of their conferences.
+ * Only a conference crossing the threshold changes the NearlySoldOutConferences set, and then
+ * the announcement is published at once, or cleared when no conference is left. The cron
+ * reconciles the set with the seats, in case a change was lost.
+ */
+public class AnnouncementService {
+
+    /** A conference with fewer seats left than this, and not sold out, is announced. */
+    public static final int NEARLY_SOLD_OUT_SEATS = 5;
+
+    private static final Logger LOG = Logger.getLogger(AnnouncementService.class.getName());
+
+    private AnnouncementService() {}
+
+    /**
+     * @param seatsAvailable the seats left in a conference.
+     * @return true if the conference is to be announced.
+     */
+    public static boolean isNearlySoldOut(int seatsAvailable) {
+        return seatsAvailable > 0 && seatsAvailable < NEARLY_SOLD_OUT_SEATS;
+    }
+
+    /**
+     * Updates the announcement once seats of a Conference were booked or given back.
+     * A failure is only logged, the change is committed and the cron will catch up.
+     * @param conference the Conference.
+     * @param seatsAvailable the seats left after the changes.
+     */
+    public static void seatsChanged(final Conference conference, int seatsAvailable) {
+        final boolean nearlySoldOut = isNearlySoldOut(seatsAvailable);
+        NearlySoldOutConferences current =
+                ofy().load().key(NearlySoldOutConferences.createKey()).now();
+        boolean announced = current != null && current.contains(conference.getWebsafeKey());
+        if (announced == nearlySoldOut) {
+            return;
+        }
+        try {
+            publish(ofy().transact(new Work<NearlySoldOutConferences>() {
+                @Override
+                public NearlySoldOutConferences run() {
+                    NearlySoldOutConferences fresh = load();
+                    boolean changed = nearlySoldOut
+                            ? fresh.add(conference.getWebsafeKey(), conference.getName())
+                            : fresh.remove(conference.getWebsafeKey());
+                    if (changed) {
+                        ofy().save().entity(fresh).now();
+                    }
+                    return fresh;
+                }
+            }));
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not update the announcement for "
+                    + conference.getWebsafeKey(), e);
+        }
+    }
+
+    /**
+     * Checks the seats of the announced conferences, and of those the seatsAvailable queries
+     * find nearly sold out, then rewrites the set and the announcement.
+     * @return the number of conferences announced.
+     */
+    public static int reconcile() {
+        NearlySoldOutConferences current =
+                ofy().load().key(NearlySoldOutConferences.createKey()).now();
+        Set<Key<Conference>> candidates = new LinkedHashSet<>();
+        if (current != null) {
+            for (String websafeConferenceKey : current.getWebsafeConferenceKeys()) {
+                candidates.add(Key.<Conference>create(websafeConferenceKey));
+            }
+        }
+        // Keys only, the Conferences are then read with one batch get served by the caches.
+        candidates.addAll(ofy().load().type(Conference.class)
+                .filter("seatsAvailable <", NEARLY_SOLD_OUT_SEATS)
+                .filter("seatsAvailable >", 0)
+                .keys().list());
+
+        final Map<String, String> conferenceNames = new HashMap<>();
+        for (Conference conference : ofy().load().keys(candidates).values()) {
+            if (isNearlySoldOut(SeatCounterService.getSeatsAvailable(conference))) {
+                conferenceNames.put(conference.getWebsafeKey(), conference.getName());
+            }
+        }
+        NearlySoldOutConferences reconciled = ofy().transact(
+                new Work<NearlySoldOutConferences>() {
+            @Override
+            public NearlySoldOutConferences run() {
+                NearlySoldOutConferences fresh = load();
+                if (fresh.replace(conferenceNames)) {
+                    ofy().save().entity(fresh).now();
+                }
+                return fresh;
+            }
+        });
+        publish(reconciled);
+        return conferenceNames.size();
+    }
+
+    private static NearlySoldOutConferences load() {
+        NearlySoldOutConferences set =
+                ofy().load().key(NearlySoldOutConferences.createKey()).now();
+        return set != null ? set : new NearlySoldOutConferences();
+    }
+
+    /**
+     * Publishes the announcement of the stored set again, once it was evicted from memcache.
+     * @return the announcement with its version.
+     */
+    static AnnouncementCache.Stamped republish() {
+        return publish(load());
+    }
+
+    /**
+     * Publishes the announcement of the set, or no announcement when the set is empty.
+     */
+    private static AnnouncementCache.Stamped publish(NearlySoldOutConferences set) {
+        if (set.isEmpty()) {
+            return AnnouncementCache.publish(null);
+        }
+        // Build a String that announces the nearly sold-out conferences
+        return AnnouncementCache.publish(
+                "Last chance to attend! The following conferences are nearly sold out: "
+                        + Joiner.on(", ").skipNulls().join(set.getConferenceNames()));
+    }
+}
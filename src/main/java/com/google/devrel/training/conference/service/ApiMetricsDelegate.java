@@ -0,0 +1,232 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.memcache.MemcacheServicePb.MemcacheGetRequest;
+import com.google.appengine.api.memcache.MemcacheServicePb.MemcacheGetResponse;
+import com.google.apphosting.api.ApiProxy;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An ApiProxy delegate that adds the datastore RPCs, the transaction retries and the memcache
+ * hits of each API call to the endpoint running on the current thread, see EndpointMetrics.
+ *
+ * A commit that lost against a concurrent transaction is counted as a retry, as Objectify
+ * runs the transaction again.
+ */
+public class ApiMetricsDelegate implements ApiProxy.Delegate<ApiProxy.Environment> {
+
+    private static final Logger LOG = Logger.getLogger(ApiMetricsDelegate.class.getName());
+
+    private static final String DATASTORE_PACKAGE = "datastore_v3";
+
+    private static final String COMMIT_METHOD = "Commit";
+
+    private static final String MEMCACHE_PACKAGE = "memcache";
+
+    private static final String MEMCACHE_GET_METHOD = "Get";
+
+    /** The datastore_v3 error code of a commit that lost against a concurrent transaction. */
+    private static final int CONCURRENT_TRANSACTION = 2;
+
+    private final ApiProxy.Delegate<ApiProxy.Environment> delegate;
+
+    private ApiMetricsDelegate(ApiProxy.Delegate<ApiProxy.Environment> delegate) {
+        this.delegate = delegate;
+    }
+
+    /** Wraps the current ApiProxy delegate, once. */
+    @SuppressWarnings("unchecked")
+    public static synchronized void install() {
+        ApiProxy.Delegate<ApiProxy.Environment> current = ApiProxy.getDelegate();
+        if (current != null && !(current instanceof ApiMetricsDelegate)) {
+            ApiProxy.setDelegate(new ApiMetricsDelegate(current));
+        }
+    }
+
+    @Override
+    public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+                               String methodName, byte[] request) {
+        Call call = Call.start(packageName, methodName, request);
+        try {
+            byte[] response = delegate.makeSyncCall(environment, packageName, methodName, request);
+            if (call != null) {
+                call.onSuccess(response);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            if (call != null) {
+                call.onFailure(e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName,
+                                        String methodName, byte[] request,
+                                        ApiProxy.ApiConfig apiConfig) {
+        Call call = Call.start(packageName, methodName, request);
+        Future<byte[]> future = delegate.makeAsyncCall(
+                environment, packageName, methodName, request, apiConfig);
+        return call == null ? future : new ObservedFuture(future, call);
+    }
+
+    @Override
+    public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+        delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(ApiProxy.Environment environment) {
+        delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+        return delegate.getRequestThreads(environment);
+    }
+
+    /** A datastore or memcache call made while an endpoint is recorded. */
+    private static class Call {
+
+        private final EndpointMetrics.Endpoint endpoint;
+
+        private final String methodName;
+
+        /** The number of keys looked up, for memcache gets. */
+        private final int memcacheKeys;
+
+        private Call(EndpointMetrics.Endpoint endpoint, String methodName, int memcacheKeys) {
+            this.endpoint = endpoint;
+            this.methodName = methodName;
+            this.memcacheKeys = memcacheKeys;
+        }
+
+        /** Returns the call to observe, or null when there is nothing to record. */
+        static Call start(String packageName, String methodName, byte[] request) {
+            EndpointMetrics.Endpoint endpoint = EndpointMetrics.current();
+            if (endpoint == null) {
+                return null;
+            }
+            if (DATASTORE_PACKAGE.equals(packageName)) {
+                endpoint.recordDatastoreRpc();
+                return COMMIT_METHOD.equals(methodName) ? new Call(endpoint, methodName, 0) : null;
+            }
+            if (MEMCACHE_PACKAGE.equals(packageName) && MEMCACHE_GET_METHOD.equals(methodName)) {
+                try {
+                    int keys = MemcacheGetRequest.parseFrom(request).getKeyCount();
+                    return new Call(endpoint, methodName, keys);
+                } catch (Exception e) {
+                    LOG.log(Level.FINE, "Could not read the memcache get request", e);
+                }
+            }
+            return null;
+        }
+
+        void onSuccess(byte[] response) {
+            if (!MEMCACHE_GET_METHOD.equals(methodName)) {
+                return;
+            }
+            try {
+                int hits = MemcacheGetResponse.parseFrom(response).getItemCount();
+                endpoint.recordMemcacheGet(hits, Math.max(0, memcacheKeys - hits));
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "Could not read the memcache get response", e);
+            }
+        }
+
+        void onFailure(Throwable t) {
+            if (COMMIT_METHOD.equals(methodName) && isContention(t)) {
+                endpoint.recordTransactionRetry();
+            }
+        }
+
+        private static boolean isContention(Throwable t) {
+            if (t instanceof ConcurrentModificationException) {
+                return true;
+            }
+            return t instanceof ApiProxy.ApplicationException
+                    && ((ApiProxy.ApplicationException) t).getApplicationError()
+                    == CONCURRENT_TRANSACTION;
+        }
+    }
+
+    /** Reports the outcome of an asynchronous call when its result is read, at most once. */
+    private static class ObservedFuture implements Future<byte[]> {
+
+        private final Future<byte[]> future;
+
+        private final Call call;
+
+        private boolean reported;
+
+        ObservedFuture(Future<byte[]> future, Call call) {
+            this.future = future;
+            this.call = call;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public byte[] get() throws InterruptedException, ExecutionException {
+            try {
+                return onSuccess(future.get());
+            } catch (ExecutionException e) {
+                onFailure(e.getCause());
+                throw e;
+            } catch (RuntimeException e) {
+                onFailure(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return onSuccess(future.get(timeout, unit));
+            } catch (ExecutionException e) {
+                onFailure(e.getCause());
+                throw e;
+            } catch (RuntimeException e) {
+                onFailure(e);
+                throw e;
+            }
+        }
+
+        private synchronized byte[] onSuccess(byte[] response) {
+            if (!reported) {
+                reported = true;
+                call.onSuccess(response);
+            }
+            return response;
+        }
+
+        private synchronized void onFailure(Throwable t) {
+            if (!reported) {
+                reported = true;
+                call.onFailure(t);
+            }
+        }
+    }
+}
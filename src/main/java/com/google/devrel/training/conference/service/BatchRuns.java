@@ -0,0 +1,34 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+/**
+ * Schedules the runs draining a pull queue, at most one per interval.
+ */
+final class BatchRuns {
+
+    private BatchRuns() {}
+
+    /**
+     * Enqueues the run of the current interval at its end, unless it is enqueued already.
+     * Outside of any transaction, since a transactional task can't be named; a spurious run
+     * costs one lease.
+     * @param queueName the push queue running the task.
+     * @param url the url of the run.
+     * @param intervalMillis the length of the intervals.
+     */
+    static void kick(String queueName, String url, long intervalMillis) {
+        long interval = System.currentTimeMillis() / intervalMillis;
+        try {
+            QueueFactory.getQueue(queueName).add((Transaction) null,
+                    TaskOptions.Builder.withUrl(url)
+                            .taskName(url.substring(url.lastIndexOf('/') + 1) + "-" + interval)
+                            .etaMillis((interval + 1) * intervalMillis));
+        } catch (TaskAlreadyExistsException e) {
+            // The run of this interval will take the new work.
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+
+import javax.servlet.http.HttpServletRequest;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Conditional GET for the API methods: If-None-Match against an ETag, else If-Modified-Since
+ * against a Last-Modified date, as in RFC 7232.
+ *
+ * A method checks its request once it knows the validators of its response, before building
+ * it. A match throws a NotModifiedException, answered with a 304 and no body. Otherwise the
+ * validators are left in a request attribute, and ConditionalResponseFilter adds them to the
+ * response, since the API methods can't set headers themselves.
+ */
+public class ConditionalRequests {
+
+    /** The request attribute holding the validator headers of the response. */
+    public static final String HEADERS_ATTRIBUTE = ConditionalRequests.class.getName() + ".headers";
+
+    private ConditionalRequests() {}
+
+    /**
+     * Checks the conditional headers of a request against the validators of its response.
+     * @param request the request, null when not called through the SPI.
+     * @param etag the ETag of the response.
+     * @param lastModified when the response last changed, null when unknown.
+     * @throws NotModifiedException when the client has the response already.
+     */
+    public static void check(HttpServletRequest request, String etag, Date lastModified)
+            throws NotModifiedException {
+        if (request == null) {
+            return;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("ETag", etag);
+        if (lastModified != null) {
+            headers.put("Last-Modified", httpDateFormat().format(lastModified));
+        }
+        // The clients may keep the response, but have to revalidate it before each use.
+        headers.put("Cache-Control", "private, no-cache");
+        if (isNotModified(request.getHeader("If-None-Match"),
+                request.getHeader("If-Modified-Since"), etag, lastModified)) {
+            throw new NotModifiedException(headers);
+        }
+        request.setAttribute(HEADERS_ATTRIBUTE, headers);
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header, may be null.
+     * @param ifModifiedSince the If-Modified-Since header, may be null.
+     * @param etag the ETag of the response.
+     * @param lastModified when the response last changed, may be null.
+     * @return true if the client has the response already.
+     */
+    static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag,
+                                 Date lastModified) {
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is given.
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*") || opaqueTag(candidate).equals(opaqueTag(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        try {
+            // The HTTP dates have no milliseconds.
+            return lastModified.getTime() / 1000
+                    <= httpDateFormat().parse(ifModifiedSince).getTime() / 1000;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds a weak ETag from the values a response depends on.
+     * @param parts the values, nulls allowed.
+     * @return the ETag.
+     */
+    public static String etag(Iterable<?> parts) {
+        return "W/\"" + Hashing.sha1().hashString(
+                Joiner.on('|').useForNull("").join(parts), Charsets.UTF_8) + "\"";
+    }
+
+    /**
+     * @return the latest of some dates, null if all are null.
+     */
+    public static Date latest(Date... dates) {
+        Date latest = null;
+        for (Date date : dates) {
+            if (date != null && (latest == null || date.after(latest))) {
+                latest = date;
+            }
+        }
+        return latest;
+    }
+
+    /** The ETags are compared weakly, as a GET allows. */
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static DateFormat httpDateFormat() {
+        DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+}
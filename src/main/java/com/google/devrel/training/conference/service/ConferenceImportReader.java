@@ -0,0 +1,492 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.devrel.training.conference.form.ConferenceForm;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Streams the rows of a conference import, in CSV or NDJSON, as ConferenceForms.
+ *
+ * A CSV upload starts with a header naming its columns among name, description, topics (separated
+ * by ';'), city, startDate, endDate and maxAttendees. An NDJSON upload has one JSON object per
+ * line with the same fields, topics being an array. Dates are either yyyy-MM-dd or
+ * yyyy-MM-dd'T'HH:mm:ss.SSS'Z', in UTC.
+ *
+ * Only the current row is held in memory. A row that can't be read or validated is reported
+ * through getError and the reader moves on to the next one.
+ */
+public class ConferenceImportReader {
+
+    /** The formats of an upload. */
+    public static enum Format {
+        CSV, NDJSON;
+
+        /**
+         * Picks the format from the content type of the upload.
+         * @param contentType the content type, may be null.
+         * @return NDJSON for JSON content types, CSV otherwise.
+         */
+        public static Format fromContentType(String contentType) {
+            return contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("json")
+                    ? NDJSON : CSV;
+        }
+    }
+
+    private static final String NAME = "name";
+    private static final String DESCRIPTION = "description";
+    private static final String TOPICS = "topics";
+    private static final String CITY = "city";
+    private static final String START_DATE = "startDate";
+    private static final String END_DATE = "endDate";
+    private static final String MAX_ATTENDEES = "maxAttendees";
+
+    private static final String[] FIELDS =
+            {NAME, DESCRIPTION, TOPICS, CITY, START_DATE, END_DATE, MAX_ATTENDEES};
+
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    private final Reader reader;
+
+    private final Format format;
+
+    private final DateFormat dateTimeFormat = utcFormat(JsonObjectBuilder.DATE_TIME_PATTERN);
+
+    private final DateFormat dateFormat = utcFormat(DATE_PATTERN);
+
+    /** The CSV columns, read from the header. */
+    private String[] columns;
+
+    /** The next character, -2 when it has not been read yet. */
+    private int peeked = -2;
+
+    private int row;
+
+    private ConferenceForm form;
+
+    private String error;
+
+    /**
+     * @param reader the upload, read sequentially and never closed.
+     * @param format the format of the upload.
+     */
+    public ConferenceImportReader(Reader reader, Format format) {
+        this.reader = reader;
+        this.format = format;
+    }
+
+    /**
+     * Reads the next row. Blank lines are skipped.
+     * @return false at the end of the upload.
+     * @throws IOException when the upload can't be read.
+     */
+    public boolean next() throws IOException {
+        form = null;
+        error = null;
+        if (format == Format.CSV && columns == null) {
+            List<String> header;
+            try {
+                header = readCsvRecord();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid header: " + e.getMessage());
+            }
+            if (header == null) {
+                return false;
+            }
+            columns = header.toArray(new String[header.size()]);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = columns[i].trim();
+                if (!isField(columns[i])) {
+                    throw new IOException("Unknown column: " + columns[i]);
+                }
+            }
+        }
+        Map<String, Object> fields;
+        try {
+            if (format == Format.CSV) {
+                List<String> record = readCsvRecord();
+                if (record == null) {
+                    return false;
+                }
+                row++;
+                fields = toFields(record);
+            } else {
+                String line = readLine();
+                while (line != null && line.trim().isEmpty()) {
+                    line = readLine();
+                }
+                if (line == null) {
+                    return false;
+                }
+                row++;
+                fields = new JsonParser(line).parseObject();
+            }
+            form = toForm(fields);
+        } catch (IllegalArgumentException e) {
+            error = "Row " + row + ": " + e.getMessage();
+        }
+        return true;
+    }
+
+    /**
+     * @return the 1-based number of the current row, the CSV header not counted.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return the form of the current row, null when the row is invalid.
+     */
+    public ConferenceForm getForm() {
+        return form;
+    }
+
+    /**
+     * @return why the current row is invalid, null when it is valid.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Writes a form as one NDJSON line, without the line separator. Reading it back gives an
+     * equal form.
+     * @param conferenceForm the form.
+     * @return the JSON object.
+     */
+    public static String toJson(ConferenceForm conferenceForm) {
+        return new JsonObjectBuilder()
+                .add(NAME, conferenceForm.getName())
+                .add(DESCRIPTION, conferenceForm.getDescription())
+                .add(TOPICS, conferenceForm.getTopics())
+                .add(CITY, conferenceForm.getCity())
+                .add(START_DATE, conferenceForm.getStartDate())
+                .add(END_DATE, conferenceForm.getEndDate())
+                .add(MAX_ATTENDEES, conferenceForm.getMaxAttendees())
+                .build();
+    }
+
+    private static DateFormat utcFormat(String pattern) {
+        DateFormat format = new SimpleDateFormat(pattern, Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+        return format;
+    }
+
+    private static boolean isField(String name) {
+        for (String field : FIELDS) {
+            if (field.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, Object> toFields(List<String> record) {
+        if (record.size() > columns.length) {
+            throw new IllegalArgumentException(
+                    "Expected " + columns.length + " columns, found " + record.size());
+        }
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < record.size(); i++) {
+            String value = record.get(i);
+            if (value.isEmpty()) {
+                continue;
+            }
+            if (TOPICS.equals(columns[i])) {
+                List<String> topics = new ArrayList<>();
+                for (String topic : value.split(";")) {
+                    if (!topic.trim().isEmpty()) {
+                        topics.add(topic.trim());
+                    }
+                }
+                fields.put(TOPICS, topics);
+            } else {
+                fields.put(columns[i], value);
+            }
+        }
+        return fields;
+    }
+
+    private ConferenceForm toForm(Map<String, Object> fields) {
+        for (String field : fields.keySet()) {
+            if (!isField(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+        String name = string(fields, NAME);
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("The name is required");
+        }
+        Date startDate = date(fields, START_DATE);
+        Date endDate = date(fields, END_DATE);
+        if (startDate != null && endDate != null && endDate.before(startDate)) {
+            throw new IllegalArgumentException("The endDate is before the startDate");
+        }
+        int maxAttendees = 0;
+        Object value = fields.get(MAX_ATTENDEES);
+        if (value != null) {
+            try {
+                maxAttendees = Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid maxAttendees: " + value);
+            }
+            if (maxAttendees < 0) {
+                throw new IllegalArgumentException("Negative maxAttendees: " + value);
+            }
+        }
+        Object topics = fields.get(TOPICS);
+        if (topics != null && !(topics instanceof List)) {
+            throw new IllegalArgumentException("The topics must be a list");
+        }
+        List<String> topicList = null;
+        if (topics != null) {
+            topicList = new ArrayList<>();
+            for (Object topic : (List<?>) topics) {
+                if (!(topic instanceof String)) {
+                    throw new IllegalArgumentException("Invalid topic: " + topic);
+                }
+                topicList.add((String) topic);
+            }
+        }
+        return new ConferenceForm(name.trim(), string(fields, DESCRIPTION), topicList,
+                string(fields, CITY), startDate, endDate, maxAttendees);
+    }
+
+    private static String string(Map<String, Object> fields, String field) {
+        Object value = fields.get(field);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("The " + field + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private Date date(Map<String, Object> fields, String field) {
+        String value = string(fields, field);
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        try {
+            return value.length() == DATE_PATTERN.length()
+                    ? dateFormat.parse(value) : dateTimeFormat.parse(value);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+
+    /** Reads a line of an NDJSON upload, null at the end. */
+    private String readLine() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder();
+        while (c != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+            c = read();
+        }
+        return line.toString();
+    }
+
+    /**
+     * Reads a CSV record, following RFC 4180: quoted fields may hold separators, line breaks
+     * and doubled quotes. Blank lines are skipped.
+     * @return the fields, null at the end.
+     */
+    private List<String> readCsvRecord() throws IOException {
+        while (peek() == '\r' || peek() == '\n') {
+            read();
+        }
+        if (peek() == -1) {
+            return null;
+        }
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                } else if (c == '"' && peek() == '"') {
+                    field.append((char) read());
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                record.add(field.toString());
+                return record;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Parses a flat JSON object whose values are strings, numbers, booleans, null or arrays of
+     * those, which is all a conference row holds.
+     */
+    private static class JsonParser {
+
+        private final String json;
+
+        private int position;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Map<String, Object> parseObject() {
+            Map<String, Object> object = new HashMap<>();
+            expect('{');
+            if (peekToken() == '}') {
+                position++;
+            } else {
+                do {
+                    skipWhitespace();
+                    String field = parseString();
+                    expect(':');
+                    Object value = parseValue();
+                    if (value != null) {
+                        object.put(field, value);
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            if (peekToken() != -1) {
+                throw new IllegalArgumentException("Unexpected content after the object");
+            }
+            return object;
+        }
+
+        private Object parseValue() {
+            int c = peekToken();
+            if (c == '"') {
+                return parseString();
+            } else if (c == '[') {
+                position++;
+                List<Object> array = new ArrayList<>();
+                if (peekToken() == ']') {
+                    position++;
+                    return array;
+                }
+                do {
+                    array.add(parseValue());
+                } while (consume(','));
+                expect(']');
+                return array;
+            }
+            int start = position;
+            while (position < json.length() && ",}] \t".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = json.substring(start, position);
+            if ("null".equals(literal)) {
+                return null;
+            } else if ("true".equals(literal) || "false".equals(literal)) {
+                return Boolean.valueOf(literal);
+            } else if (literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw new IllegalArgumentException("Invalid JSON value at " + start);
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                } else if (c != '\\') {
+                    value.append(c);
+                } else if (position < json.length()) {
+                    char escaped = json.charAt(position++);
+                    switch (escaped) {
+                        case 'b': value.append('\b'); break;
+                        case 'f': value.append('\f'); break;
+                        case 'n': value.append('\n'); break;
+                        case 'r': value.append('\r'); break;
+                        case 't': value.append('\t'); break;
+                        case 'u':
+                            if (position + 4 > json.length()) {
+                                throw new IllegalArgumentException("Invalid JSON escape");
+                            }
+                            try {
+                                value.append((char) Integer.parseInt(
+                                        json.substring(position, position + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw new IllegalArgumentException("Invalid JSON escape");
+                            }
+                            position += 4;
+                            break;
+                        default: value.append(escaped);
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Unterminated JSON string");
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+
+        private int peekToken() {
+            skipWhitespace();
+            return position < json.length() ? json.charAt(position) : -1;
+        }
+
+        private boolean consume(char c) {
+            if (peekToken() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + position);
+            }
+        }
+    }
+}
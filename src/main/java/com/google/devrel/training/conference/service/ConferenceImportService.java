@@ -0,0 +1,289 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceSummary;
+import com.google.devrel.training.conference.domain.ImportJob;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.Work;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.factory;
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Bulk import of conferences, for onboarding whole event catalogs.
+ *
+ * The upload is streamed through ConferenceImportReader and split into chunks of valid rows.
+ * Each chunk gets its ids from a range allocated up front and is written by a task of the
+ * import-queue with batched puts, so a retried task rewrites the same entities. No confirmation
+ * email is sent per conference, the organizer gets one summary once the job is complete.
+ */
+public class ConferenceImportService {
+
+    private static final Logger LOG = Logger.getLogger(ConferenceImportService.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String IMPORT_QUEUE = "import-queue";
+
+    private static final String IMPORT_CHUNK_URL = "/tasks/import_conferences";
+
+    /** Maximum rows of a chunk, each one is written as a Conference, its summary and SeatShards. */
+    private static final int CHUNK_ROWS = 250;
+
+    /** Maximum payload of a chunk task, below the 100KB limit of the task queue. */
+    private static final int CHUNK_PAYLOAD_BYTES = 90 * 1024;
+
+    /** How many ids are allocated at once, split over the chunks. */
+    private static final int ID_RANGE_SIZE = 1000;
+
+    /** Maximum tasks added by a single task queue call. */
+    private static final int TASK_BATCH_SIZE = 100;
+
+    /** Maximum entities written by a single put. */
+    private static final int PUT_BATCH_SIZE = 500;
+
+    private ConferenceImportService() {}
+
+    /**
+     * Reads an upload and enqueues its chunks. Invalid rows are counted and reported on the job.
+     * @param organizer the Profile of the organizer of the imported conferences.
+     * @param reader the upload.
+     * @param format the format of the upload.
+     * @return the job, with the upload read.
+     * @throws IOException when the upload can't be read.
+     */
+    public static ImportJob startImport(Profile organizer, Reader reader,
+                                        ConferenceImportReader.Format format) throws IOException {
+        long jobId = factory().allocateId(ImportJob.class).getId();
+        ImportJob job = new ImportJob(jobId, organizer.getUserId(), organizer.getMainEmail());
+        ofy().save().entity(job).now();
+
+        ConferenceImportReader rows = new ConferenceImportReader(reader, format);
+        ChunkWriter chunks = new ChunkWriter(jobId, Key.create(Profile.class, organizer.getUserId()));
+        List<String> errors = new ArrayList<>();
+        int rejected = 0;
+        while (rows.next()) {
+            if (rows.getError() != null) {
+                rejected++;
+                if (errors.size() < ImportJob.MAX_ERRORS) {
+                    errors.add(rows.getError());
+                }
+            } else {
+                chunks.add(ConferenceImportReader.toJson(rows.getForm()));
+            }
+        }
+        int chunksTotal = chunks.finish();
+        LOG.info("Import " + jobId + ": " + rows.getRow() + " rows, " + rejected + " rejected, "
+                + chunksTotal + " chunks.");
+
+        return finishUpload(jobId, rows.getRow(), rejected, chunksTotal, errors);
+    }
+
+    /**
+     * Writes the conferences of a chunk, then counts it on the job. Safe to run several times,
+     * the conferences that already exist are left as they are.
+     * @param jobId the id of the ImportJob.
+     * @param chunk the index of the chunk.
+     * @param firstConferenceId the id of the first conference, the others follow.
+     * @param payload the rows of the chunk, one JSON object per line.
+     * @throws IOException when the payload can't be read.
+     */
+    public static void importChunk(long jobId, int chunk, long firstConferenceId, String payload)
+            throws IOException {
+        ImportJob job = ofy().load().key(Key.create(ImportJob.class, jobId)).now();
+        if (job == null) {
+            LOG.warning("Dropping chunk " + chunk + " of the unknown import " + jobId);
+            return;
+        }
+        ConferenceImportReader rows = new ConferenceImportReader(
+                new StringReader(payload), ConferenceImportReader.Format.NDJSON);
+        List<Conference> conferences = new ArrayList<>();
+        List<Key<Conference>> conferenceKeys = new ArrayList<>();
+        while (rows.next()) {
+            ConferenceForm conferenceForm = rows.getForm();
+            if (conferenceForm == null) {
+                throw new IOException("Invalid chunk " + chunk + ": " + rows.getError());
+            }
+            Conference conference = new Conference(firstConferenceId + conferences.size(),
+                    job.getOrganizerUserId(), conferenceForm);
+            conferences.add(conference);
+            conferenceKeys.add(Key.<Conference>create(conference.getWebsafeKey()));
+        }
+        // A retried chunk skips the conferences written by the first attempt, rewriting their
+        // shards at full capacity would give back the seats booked since. A conference is put
+        // after its shards, so an existing one has its shards.
+        Map<Key<Conference>, Conference> existing = ofy().load().keys(conferenceKeys);
+        List<Object> batch = new ArrayList<>();
+        for (Conference conference : conferences) {
+            if (existing.containsKey(Key.<Conference>create(conference.getWebsafeKey()))) {
+                continue;
+            }
+            batch.addAll(SeatCounterService.createShards(conference));
+            batch.add(new ConferenceSummary(conference));
+            batch.add(conference);
+            if (batch.size() >= PUT_BATCH_SIZE) {
+                ofy().save().entities(batch.subList(0, PUT_BATCH_SIZE)).now();
+                batch = new ArrayList<>(batch.subList(PUT_BATCH_SIZE, batch.size()));
+            }
+        }
+        if (!batch.isEmpty()) {
+            ofy().save().entities(batch).now();
+        }
+        // The new conferences may show up in any of the cached query pages.
+        ConferenceQueryCache.invalidate();
+        // A retried chunk indexes its conferences again, which rewrites the same postings.
+        SearchIndexService.enqueue(conferenceKeys);
+
+        final Key<ImportJob> jobKey = Key.create(ImportJob.class, jobId);
+        final int chunkIndex = chunk;
+        final int created = conferences.size();
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                ImportJob job = ofy().load().key(jobKey).now();
+                if (job.markChunkDone(chunkIndex, created)) {
+                    sendSummaryIfComplete(job);
+                    ofy().save().entity(job).now();
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads a job, for reporting its progress.
+     * @param jobId the id of the ImportJob.
+     * @return the job, null if there is none.
+     */
+    public static ImportJob getJob(long jobId) {
+        return ofy().load().key(Key.create(ImportJob.class, jobId)).now();
+    }
+
+    private static ImportJob finishUpload(final long jobId, final int rowsRead,
+                                          final int rowsRejected, final int chunksTotal,
+                                          final List<String> errors) {
+        return ofy().transact(new Work<ImportJob>() {
+            @Override
+            public ImportJob run() {
+                ImportJob job = ofy().load().key(Key.create(ImportJob.class, jobId)).now();
+                job.finishUpload(rowsRead, rowsRejected, chunksTotal, errors);
+                sendSummaryIfComplete(job);
+                ofy().save().entity(job).now();
+                return job;
+            }
+        });
+    }
+
+    /** Enqueues the summary email with the transaction, once. */
+    private static void sendSummaryIfComplete(ImportJob job) {
+        if (!job.isComplete() || job.isSummarySent() || job.getOrganizerEmail() == null) {
+            return;
+        }
+        job.markSummarySent();
+        StringBuilder summary = new StringBuilder()
+                .append("Import: ").append(job.getId()).append("\n")
+                .append("Rows read: ").append(job.getRowsRead()).append("\n")
+                .append("Rows rejected: ").append(job.getRowsRejected()).append("\n")
+                .append("Conferences created: ").append(job.getConferencesCreated()).append("\n");
+        for (String error : job.getErrors()) {
+            summary.append(error).append("\n");
+        }
+        EmailService.enqueue(job.getOrganizerEmail(), "Your conference import is complete",
+                "Hi, your conferences were imported.\n" + summary);
+    }
+
+    /**
+     * Groups the valid rows into chunks, gives each chunk its ids and enqueues the chunk tasks
+     * in batches.
+     */
+    private static class ChunkWriter {
+
+        private final long jobId;
+
+        private final Key<Profile> organizerKey;
+
+        private final Queue queue = QueueFactory.getQueue(IMPORT_QUEUE);
+
+        private final List<TaskOptions> tasks = new ArrayList<>(TASK_BATCH_SIZE);
+
+        private final StringBuilder payload = new StringBuilder();
+
+        private int payloadBytes;
+
+        private int rows;
+
+        private int chunks;
+
+        /** The next unused id of the allocated range, and how many remain. */
+        private long nextId;
+
+        private long idsLeft;
+
+        ChunkWriter(long jobId, Key<Profile> organizerKey) {
+            this.jobId = jobId;
+            this.organizerKey = organizerKey;
+        }
+
+        void add(String row) {
+            int rowBytes = row.getBytes(UTF_8).length + 1;
+            if (rows > 0 && (rows >= CHUNK_ROWS || payloadBytes + rowBytes > CHUNK_PAYLOAD_BYTES)) {
+                flushChunk();
+            }
+            payload.append(row).append('\n');
+            payloadBytes += rowBytes;
+            rows++;
+        }
+
+        /** Enqueues the pending chunks, and returns the number of chunks. */
+        int finish() {
+            if (rows > 0) {
+                flushChunk();
+            }
+            flushTasks();
+            return chunks;
+        }
+
+        private void flushChunk() {
+            // A chunk takes contiguous ids, the end of a range too short for it is skipped.
+            if (idsLeft < rows) {
+                nextId = factory().allocateIds(organizerKey, Conference.class,
+                        Math.max(ID_RANGE_SIZE, rows)).getRaw().getStart().getId();
+                idsLeft = Math.max(ID_RANGE_SIZE, rows);
+            }
+            // The rows are the body of the task, so the parameters go in the query string.
+            tasks.add(TaskOptions.Builder.withUrl(IMPORT_CHUNK_URL
+                    + "?jobId=" + jobId + "&chunk=" + chunks + "&firstConferenceId=" + nextId)
+                    .payload(payload.toString(), UTF_8.name()));
+            nextId += rows;
+            idsLeft -= rows;
+            chunks++;
+            payload.setLength(0);
+            payloadBytes = 0;
+            rows = 0;
+            if (tasks.size() >= TASK_BATCH_SIZE) {
+                flushTasks();
+            }
+        }
+
+        private void flushTasks() {
+            if (!tasks.isEmpty()) {
+                queue.add(tasks);
+                tasks.clear();
+            }
+        }
+    }
+}
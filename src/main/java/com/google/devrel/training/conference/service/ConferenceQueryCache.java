@@ -0,0 +1,186 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.googlecode.objectify.Key;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Memcache of the conference query pages, keyed by the canonical query of the form.
+ *
+ * Only the keys of the conferences are cached, so a hit costs a single memcache get plus a
+ * batch get of the Conferences, which are served by the Objectify caches. Every cached page
+ * records the version of the cache it was computed at; bumping the version invalidates them all.
+ */
+public class ConferenceQueryCache {
+
+    /** Seconds a page stays in memcache, bounding the staleness of missed invalidations. */
+    private static final int CACHE_EXPIRATION_SECONDS = 60;
+
+    private ConferenceQueryCache() {}
+
+    /**
+     * Looks the page of the form up in memcache, together with the current version.
+     * @param conferenceQueryForm the query and the page to fetch.
+     * @return the lookup, holding the page when it was cached.
+     */
+    public static Lookup lookup(ConferenceQueryForm conferenceQueryForm) {
+        MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+        String cacheKey = Constants.MEMCACHE_CONFERENCE_QUERY_PREFIX + Hashing.sha1()
+                .hashString(conferenceQueryForm.getCanonicalQuery(), Charsets.UTF_8);
+        Map<String, Object> cached = memcacheService.getAll(
+                Arrays.asList(Constants.MEMCACHE_CONFERENCE_QUERY_VERSION_KEY, cacheKey));
+        Long version = (Long) cached.get(Constants.MEMCACHE_CONFERENCE_QUERY_VERSION_KEY);
+        if (version == null) {
+            // The version was evicted, so none of the cached pages can be trusted.
+            // Start from the clock, so the new versions don't collide with the old ones.
+            long initialVersion = System.currentTimeMillis();
+            boolean added = memcacheService.put(Constants.MEMCACHE_CONFERENCE_QUERY_VERSION_KEY,
+                    initialVersion, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+            return new Lookup(cacheKey, added ? initialVersion : null, null);
+        }
+        Page page = (Page) cached.get(cacheKey);
+        if (page != null && page.version != version) {
+            page = null;
+        }
+        return new Lookup(cacheKey, version, page);
+    }
+
+    /**
+     * Invalidates all the cached pages. To be called once a change affecting the query
+     * results is committed.
+     */
+    public static void invalidate() {
+        MemcacheServiceFactory.getMemcacheService().increment(
+                Constants.MEMCACHE_CONFERENCE_QUERY_VERSION_KEY, 1L, System.currentTimeMillis());
+    }
+
+    /**
+     * The result of a lookup, which can store the page when it was not cached.
+     */
+    public static class Lookup {
+
+        private final String cacheKey;
+
+        /** The version seen before running the query, null when unknown. */
+        private final Long version;
+
+        private final Page page;
+
+        private Lookup(String cacheKey, Long version, Page page) {
+            this.cacheKey = cacheKey;
+            this.version = version;
+            this.page = page;
+        }
+
+        /**
+         * @return the cached page, or null on a miss.
+         */
+        public Page getPage() {
+            return page;
+        }
+
+        /**
+         * Caches the page computed after a miss. The page is tagged with the version seen by the
+         * lookup, so it is ignored if an invalidation happened while the query was running.
+         * @param conferences the Conferences of the page.
+         * @param nextPageToken the cursor of the next page, or null.
+         */
+        public void store(List<Conference> conferences, String nextPageToken) {
+            ArrayList<String> websafeConferenceKeys = new ArrayList<>(conferences.size());
+            for (Conference conference : conferences) {
+                websafeConferenceKeys.add(conference.getWebsafeKey());
+            }
+            store(websafeConferenceKeys, nextPageToken);
+        }
+
+        /**
+         * Caches the page computed after a miss by a keys-only query, see store.
+         * @param conferenceKeys the keys of the Conferences of the page.
+         * @param nextPageToken the cursor of the next page, or null.
+         */
+        public void storeKeys(List<Key<Conference>> conferenceKeys, String nextPageToken) {
+            ArrayList<String> websafeConferenceKeys = new ArrayList<>(conferenceKeys.size());
+            for (Key<Conference> conferenceKey : conferenceKeys) {
+                websafeConferenceKeys.add(conferenceKey.getString());
+            }
+            store(websafeConferenceKeys, nextPageToken);
+        }
+
+        private void store(ArrayList<String> websafeConferenceKeys, String nextPageToken) {
+            if (version == null) {
+                return;
+            }
+            MemcacheServiceFactory.getMemcacheService().put(cacheKey,
+                    new Page(version, websafeConferenceKeys, nextPageToken),
+                    Expiration.byDeltaSeconds(CACHE_EXPIRATION_SECONDS));
+        }
+    }
+
+    /**
+     * A cached page of a conference query.
+     */
+    public static class Page implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long version;
+
+        private final ArrayList<String> websafeConferenceKeys;
+
+        private final String nextPageToken;
+
+        private Page(long version, ArrayList<String> websafeConferenceKeys, String nextPageToken) {
+            this.version = version;
+            this.websafeConferenceKeys = websafeConferenceKeys;
+            this.nextPageToken = nextPageToken;
+        }
+
+        public String getNextPageToken() {
+            return nextPageToken;
+        }
+
+        /**
+         * @return the keys of the Conferences of the page, in the order of the query.
+         */
+        public List<Key<Conference>> getConferenceKeys() {
+            List<Key<Conference>> keys = new ArrayList<>(websafeConferenceKeys.size());
+            for (String websafeConferenceKey : websafeConferenceKeys) {
+                keys.add(Key.<Conference>create(websafeConferenceKey));
+            }
+            return keys;
+        }
+
+        /**
+         * Loads the Conferences of the page with a single batch get, in the order of the query.
+         * Conferences deleted since the page was cached are skipped.
+         * @return the Conferences of the page.
+         */
+        public List<Conference> loadConferences() {
+            List<Key<Conference>> keys = getConferenceKeys();
+            Map<Key<Conference>, Conference> loaded = ofy().load().keys(keys);
+            List<Conference> conferences = new ArrayList<>(keys.size());
+            for (Key<Conference> key : keys) {
+                Conference conference = loaded.get(key);
+                if (conference != null) {
+                    conferences.add(conference);
+                }
+            }
+            return conferences;
+        }
+    }
+}
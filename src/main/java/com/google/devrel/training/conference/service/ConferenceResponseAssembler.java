@@ -0,0 +1,87 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceSummary;
+import com.google.devrel.training.conference.domain.Profile;
+import com.googlecode.objectify.Key;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Prepares Conferences and their summaries before they are serialized in an API response.
+ */
+public class ConferenceResponseAssembler {
+
+    private ConferenceResponseAssembler() {}
+
+    /**
+     * Resolves the organizer display names of a page of Conferences with a single batch get,
+     * so serializing N conferences doesn't cost N Profile gets.
+     *
+     * @param conferences The Conferences of the response.
+     * @return the same Conferences, for method chaining.
+     */
+    public static <C extends Collection<Conference>> C withOrganizerDisplayNames(C conferences) {
+        // Conferences of the same organizer share the Profile, so the keys are deduplicated.
+        Set<Key<Profile>> organizerKeys = new LinkedHashSet<>();
+        for (Conference conference : conferences) {
+            organizerKeys.add(conference.getProfileKey());
+        }
+        if (organizerKeys.isEmpty()) {
+            return conferences;
+        }
+        Map<Key<Profile>, Profile> organizers = ofy().load().keys(organizerKeys);
+        for (Conference conference : conferences) {
+            conference.setOrganizer(organizers.get(conference.getProfileKey()));
+        }
+        return conferences;
+    }
+
+    /**
+     * Loads the listing summaries of a page of conferences with a single batch get, in the order
+     * of the keys. Conferences stored before ConferenceSummary existed get their summary now.
+     * Conferences deleted since the keys were read are skipped.
+     *
+     * @param conferenceKeys The keys of the Conferences of the response.
+     * @return the ConferenceSummaries.
+     */
+    public static List<ConferenceSummary> loadSummaries(List<Key<Conference>> conferenceKeys) {
+        List<Key<ConferenceSummary>> summaryKeys = new ArrayList<>(conferenceKeys.size());
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            summaryKeys.add(ConferenceSummary.createKey(conferenceKey));
+        }
+        Map<Key<ConferenceSummary>, ConferenceSummary> summaries = ofy().load().keys(summaryKeys);
+        List<Key<Conference>> missingKeys = new ArrayList<>();
+        for (int i = 0; i < conferenceKeys.size(); i++) {
+            if (!summaries.containsKey(summaryKeys.get(i))) {
+                missingKeys.add(conferenceKeys.get(i));
+            }
+        }
+        Map<Key<ConferenceSummary>, ConferenceSummary> created = new HashMap<>();
+        if (!missingKeys.isEmpty()) {
+            for (Conference conference : ofy().load().keys(missingKeys).values()) {
+                ConferenceSummary summary = new ConferenceSummary(conference);
+                created.put(ConferenceSummary.createKey(
+                        Key.<Conference>create(conference.getWebsafeKey())), summary);
+            }
+            ofy().save().entities(created.values()).now();
+        }
+        List<ConferenceSummary> result = new ArrayList<>(conferenceKeys.size());
+        for (Key<ConferenceSummary> summaryKey : summaryKeys) {
+            ConferenceSummary summary = summaries.containsKey(summaryKey)
+                    ? summaries.get(summaryKey) : created.get(summaryKey);
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceStatistics;
+import com.googlecode.objectify.cmd.Query;
+
+import java.util.Date;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Rebuilds the ConferenceStatistics used by the query planner.
+ */
+public class ConferenceStatisticsService {
+
+    private static final Logger LOG =
+            Logger.getLogger(ConferenceStatisticsService.class.getName());
+
+    /** How many conferences are loaded at a time. */
+    private static final int CHUNK_SIZE = 500;
+
+    private ConferenceStatisticsService() {}
+
+    /**
+     * Counts the values of all the conferences, a chunk at a time, and saves the statistics.
+     * @return the saved statistics.
+     */
+    public static ConferenceStatistics refresh() {
+        ConferenceStatistics statistics = new ConferenceStatistics(new Date());
+        Cursor cursor = null;
+        while (true) {
+            Query<Conference> query = ofy().load().type(Conference.class)
+                    .limit(CHUNK_SIZE).chunk(CHUNK_SIZE);
+            if (cursor != null) {
+                query = query.startAt(cursor);
+            }
+            QueryResultIterator<Conference> iterator = query.iterator();
+            int count = 0;
+            while (iterator.hasNext()) {
+                statistics.add(iterator.next());
+                count++;
+            }
+            cursor = iterator.getCursor();
+            // The counted conferences are not needed anymore, keep the memory bounded.
+            ofy().clear();
+            if (count < CHUNK_SIZE) {
+                break;
+            }
+        }
+        statistics.trim();
+        ofy().save().entity(statistics).now();
+        LOG.info("Refreshed the statistics of " + statistics.getConferences() + " conferences.");
+        return statistics;
+    }
+}
@@ -0,0 +1,252 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.cmd.Query;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Exports the conferences, sessions, profiles and registrations as NDJSON, one entity per line
+ * with its kind, for analytics.
+ *
+ * The kinds are walked in key order with query cursors, a chunk of entities at a time, and the
+ * session cache is cleared after each chunk, so the memory used doesn't depend on the size of the
+ * dataset. An export stops at a deadline, or once it wrote a number of bytes, and returns a
+ * checkpoint to resume from.
+ */
+public class DataExporter {
+
+    /** The kinds that can be exported, in the order of a full export. */
+    public static enum Kind {
+        CONFERENCE, SESSION, PROFILE, REGISTRATION;
+
+        /**
+         * @return the lower case name used in the export and the checkpoints.
+         */
+        public String getName() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+
+        /**
+         * @param name a lower case name, as returned by getName.
+         * @return the kind.
+         * @throws IllegalArgumentException for an unknown name.
+         */
+        public static Kind fromName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    /** How many entities are loaded and written at a time. */
+    private static final int CHUNK_SIZE = 500;
+
+    private DataExporter() {}
+
+    /**
+     * Writes the entities of the kinds, from the checkpoint on, until all are written, the
+     * deadline has passed or maxBytes were written. Both are checked between chunks, so a
+     * chunk may go past maxBytes.
+     * @param kinds the kinds to export, in order.
+     * @param checkpoint where to resume, null to start from the first kind.
+     * @param out where the lines are written.
+     * @param deadlineMillis the time after which no new chunk is started.
+     * @param maxBytes the UTF-8 bytes after which no new chunk is started.
+     * @return the checkpoint to resume from, null when the export is complete.
+     * @throws IOException when the export can't be written.
+     * @throws IllegalArgumentException for a checkpoint that doesn't belong to the kinds.
+     */
+    public static String export(List<Kind> kinds, String checkpoint, Writer out,
+                                long deadlineMillis, long maxBytes) throws IOException {
+        int kindIndex = 0;
+        String cursor = null;
+        if (checkpoint != null) {
+            int separator = checkpoint.indexOf(':');
+            Kind kind = Kind.fromName(
+                    separator < 0 ? checkpoint : checkpoint.substring(0, separator));
+            kindIndex = kinds.indexOf(kind);
+            if (kindIndex < 0) {
+                throw new IllegalArgumentException("The checkpoint is not in the exported kinds");
+            }
+            cursor = separator < 0 ? null : checkpoint.substring(separator + 1);
+            if (cursor != null) {
+                // Fails before anything is written.
+                Cursor.fromWebSafeString(cursor);
+            }
+        }
+        CountingWriter counter = new CountingWriter(out);
+        for (; kindIndex < kinds.size(); kindIndex++) {
+            Kind kind = kinds.get(kindIndex);
+            if (System.currentTimeMillis() > deadlineMillis || counter.bytes >= maxBytes) {
+                return kind.getName() + (cursor == null ? "" : ":" + cursor);
+            }
+            while (true) {
+                cursor = exportChunk(kind, cursor, counter);
+                if (cursor == null) {
+                    break;
+                }
+                if (System.currentTimeMillis() > deadlineMillis || counter.bytes >= maxBytes) {
+                    return kind.getName() + ":" + cursor;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a chunk of entities of a kind.
+     * @return the cursor after the chunk, null when the kind is complete.
+     */
+    private static String exportChunk(Kind kind, String cursor, Writer out) throws IOException {
+        Query<?> query = query(kind).limit(CHUNK_SIZE).chunk(CHUNK_SIZE);
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<?> iterator = query.iterator();
+        int count = 0;
+        while (iterator.hasNext()) {
+            out.write(toJson(kind, iterator.next()));
+            out.write('\n');
+            count++;
+        }
+        out.flush();
+        String next = count < CHUNK_SIZE ? null : iterator.getCursor().toWebSafeString();
+        // The exported entities are not needed anymore, keep the memory bounded.
+        ofy().clear();
+        return next;
+    }
+
+    /**
+     * Counts the UTF-8 bytes of the characters written through it.
+     */
+    private static class CountingWriter extends FilterWriter {
+
+        long bytes;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            out.write(chars, offset, length);
+            for (int i = offset; i < offset + length; i++) {
+                count(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            out.write(string, offset, length);
+            for (int i = offset; i < offset + length; i++) {
+                count(string.charAt(i));
+            }
+        }
+
+        private void count(char c) {
+            // A surrogate is half of a 4 bytes character.
+            bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+        }
+    }
+
+    private static Query<?> query(Kind kind) {
+        switch (kind) {
+            case CONFERENCE:
+                return ofy().load().type(Conference.class);
+            case SESSION:
+                return ofy().load().type(Session.class);
+            case PROFILE:
+                return ofy().load().type(Profile.class);
+            default:
+                return ofy().load().type(Registration.class);
+        }
+    }
+
+    private static String toJson(Kind kind, Object entity) {
+        JsonObjectBuilder json = new JsonObjectBuilder().add("kind", kind.getName());
+        switch (kind) {
+            case CONFERENCE:
+                Conference conference = (Conference) entity;
+                return json.add("websafeKey", conference.getWebsafeKey())
+                        .add("name", conference.getName())
+                        .add("description", conference.getDescription())
+                        .add("organizerUserId", conference.getOrganizerUserId())
+                        .add("topics", conference.getTopics())
+                        .add("city", conference.getCity())
+                        .add("startDate", conference.getStartDate())
+                        .add("endDate", conference.getEndDate())
+                        .add("maxAttendees", conference.getMaxAttendees())
+                        .add("seatsAvailable", conference.getSeatsAvailable())
+                        .build();
+            case SESSION:
+                Session session = (Session) entity;
+                return json.add("websafeKey", session.getWebsafeKey())
+                        .add("websafeConferenceKey", session.getConferenceKey().getString())
+                        .add("name", session.getName())
+                        .add("highlights", session.getHighlights())
+                        .addRaw("speaker", session.getSpeaker() == null ? null
+                                : new JsonObjectBuilder()
+                                        .add("firstName", session.getSpeaker().getFirstName())
+                                        .add("lastName", session.getSpeaker().getLastName())
+                                        .build())
+                        .add("typeOfSession", session.getTypeOfSession() == null ? null
+                                : session.getTypeOfSession().name())
+                        .add("startDateTime", session.getStartDateTime())
+                        .add("duration", session.getDuration())
+                        .build();
+            case PROFILE:
+                Profile profile = (Profile) entity;
+                return json.add("userId", profile.getUserId())
+                        .add("displayName", profile.getDisplayName())
+                        .add("mainEmail", profile.getMainEmail())
+                        .add("teeShirtSize", profile.getTeeShirtSize() == null ? null
+                                : profile.getTeeShirtSize().name())
+                        .build();
+            default:
+                Registration registration = (Registration) entity;
+                return json.add("userId", registration.getProfileKey().getName())
+                        .add("websafeConferenceKey", registration.getWebsafeConferenceKey())
+                        .build();
+        }
+    }
+
+    /**
+     * Parses a comma separated list of kind names.
+     * @param names the names, null or empty for all the kinds.
+     * @return the kinds, in the order given.
+     * @throws IllegalArgumentException for an unknown name.
+     */
+    public static List<Kind> parseKinds(String names) {
+        List<Kind> kinds = new ArrayList<>();
+        if (names == null || names.trim().isEmpty()) {
+            for (Kind kind : Kind.values()) {
+                kinds.add(kind);
+            }
+            return kinds;
+        }
+        for (String name : names.split(",")) {
+            Kind kind = Kind.fromName(name);
+            if (!kinds.contains(kind)) {
+                kinds.add(kind);
+            }
+        }
+        return kinds;
+    }
+}
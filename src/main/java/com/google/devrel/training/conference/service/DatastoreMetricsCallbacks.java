@@ -0,0 +1,42 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.DeleteContext;
+import com.google.appengine.api.datastore.PostDelete;
+import com.google.appengine.api.datastore.PostLoad;
+import com.google.appengine.api.datastore.PostLoadContext;
+import com.google.appengine.api.datastore.PostPut;
+import com.google.appengine.api.datastore.PutContext;
+
+/**
+ * Datastore callbacks counting the entities read and written by the endpoint running on the
+ * current thread, see EndpointMetrics. Each callback is invoked once per entity.
+ *
+ * Entities served from the Objectify memcache don't reach the datastore and are not counted.
+ */
+public class DatastoreMetricsCallbacks {
+
+    @PostLoad
+    public void countRead(PostLoadContext context) {
+        EndpointMetrics.Endpoint endpoint = EndpointMetrics.current();
+        if (endpoint != null) {
+            endpoint.recordEntitiesRead(1);
+        }
+    }
+
+    @PostPut
+    public void countPut(PutContext context) {
+        countWrite();
+    }
+
+    @PostDelete
+    public void countDelete(DeleteContext context) {
+        countWrite();
+    }
+
+    private static void countWrite() {
+        EndpointMetrics.Endpoint endpoint = EndpointMetrics.current();
+        if (endpoint != null) {
+            endpoint.recordEntitiesWritten(1);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+import javax.mail.MessagingException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * The e-mail notifications, sent in batches.
+ *
+ * A notification is a task of the email-pull-queue, added with the transaction that causes it.
+ * A named task of the email-queue, one per KICK_INTERVAL_MILLIS, then runs sendPending, which
+ * leases the pending notifications by the thousand, sends one e-mail per recipient with all
+ * of their notifications, and deletes the tasks sent. The cron runs it too, in case a kick
+ * was lost. A notification that could not be sent is leased again once its lease expires.
+ */
+public class EmailService {
+
+    private static final Logger LOG = Logger.getLogger(EmailService.class.getName());
+
+    private static final String PULL_QUEUE = "email-pull-queue";
+
+    private static final String KICK_QUEUE = "email-queue";
+
+    private static final String SEND_URL = "/tasks/send_emails";
+
+    /** The notifications enqueued within this interval are sent by the same run. */
+    private static final long KICK_INTERVAL_MILLIS = 10000;
+
+    /** How many tasks are added at once, the most an add allows. */
+    private static final int ADD_BATCH_SIZE = 100;
+
+    /** How many notifications are leased at once, the most a lease allows. */
+    private static final int LEASE_BATCH_SIZE = 1000;
+
+    /** Seconds the leased notifications are kept from the other runs. */
+    private static final int LEASE_SECONDS = 300;
+
+    /** Milliseconds a run keeps leasing, well within the lease and the request deadline. */
+    private static final long RUN_MILLIS = 120000;
+
+    /** A notification failing this many times is dropped. */
+    private static final int MAX_RETRIES = 5;
+
+    private static MailTransport transport = new JavaMailTransport();
+
+    private EmailService() {}
+
+    /**
+     * Replaces the transport, for the tests.
+     */
+    static void setTransport(MailTransport mailTransport) {
+        transport = mailTransport;
+    }
+
+    /**
+     * Sends an e-mail right away, for the push tasks enqueued before the notifications were
+     * batched.
+     * @throws MessagingException when the e-mail could not be sent.
+     */
+    public static void send(String recipient, String subject, String body)
+            throws MessagingException {
+        transport.send(recipient, subject, body);
+    }
+
+    /**
+     * Enqueues a notification, with the current transaction if there is one, and makes sure
+     * a run will send it.
+     * @param recipient the address of the recipient.
+     * @param subject the subject, used when it is the only notification of the recipient.
+     * @param body the plain text body.
+     */
+    public static void enqueue(String recipient, String subject, String body) {
+        QueueFactory.getQueue(PULL_QUEUE).add(ofy().getTransaction(),
+                TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+                        .param("email", recipient)
+                        .param("subject", subject)
+                        .param("body", body));
+        kick();
+    }
+
+    /**
+     * Enqueues some notifications, outside of any transaction, and makes sure a run will
+     * send them.
+     * @param notifications the notifications.
+     */
+    static void enqueue(List<Notification> notifications) {
+        Queue queue = QueueFactory.getQueue(PULL_QUEUE);
+        List<TaskOptions> tasks = new ArrayList<>(ADD_BATCH_SIZE);
+        for (Notification notification : notifications) {
+            tasks.add(TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+                    .param("email", notification.recipient)
+                    .param("subject", notification.subject)
+                    .param("body", notification.body));
+            if (tasks.size() == ADD_BATCH_SIZE) {
+                queue.add((Transaction) null, tasks);
+                tasks.clear();
+            }
+        }
+        if (!tasks.isEmpty()) {
+            queue.add((Transaction) null, tasks);
+        }
+        kick();
+    }
+
+    /**
+     * Enqueues the run of the current interval, unless it is enqueued already.
+     */
+    public static void kick() {
+        BatchRuns.kick(KICK_QUEUE, SEND_URL, KICK_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Sends the pending notifications, grouped by recipient.
+     * @return the number of notifications sent.
+     */
+    public static int sendPending() {
+        Queue queue = QueueFactory.getQueue(PULL_QUEUE);
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        int sent = 0;
+        List<TaskHandle> tasks;
+        do {
+            tasks = queue.leaseTasks(LEASE_SECONDS, TimeUnit.SECONDS, LEASE_BATCH_SIZE);
+            sent += send(queue, tasks);
+        } while (tasks.size() == LEASE_BATCH_SIZE && System.currentTimeMillis() < deadline);
+        if (tasks.size() == LEASE_BATCH_SIZE) {
+            // Out of time with notifications left, another run takes over.
+            kick();
+        }
+        LOG.info("Sent " + sent + " notifications.");
+        return sent;
+    }
+
+    private static int send(Queue queue, List<TaskHandle> tasks) {
+        Map<String, List<Notification>> byRecipient = new LinkedHashMap<>();
+        Map<String, List<TaskHandle>> tasksByRecipient = new LinkedHashMap<>();
+        List<TaskHandle> done = new ArrayList<>(tasks.size());
+        for (TaskHandle task : tasks) {
+            Notification notification = Notification.of(task);
+            if (notification == null || (task.getRetryCount() != null
+                    && task.getRetryCount() >= MAX_RETRIES)) {
+                LOG.warning("Dropping the notification " + task.getName());
+                done.add(task);
+                continue;
+            }
+            if (!byRecipient.containsKey(notification.recipient)) {
+                byRecipient.put(notification.recipient, new ArrayList<Notification>());
+                tasksByRecipient.put(notification.recipient, new ArrayList<TaskHandle>());
+            }
+            byRecipient.get(notification.recipient).add(notification);
+            tasksByRecipient.get(notification.recipient).add(task);
+        }
+        int sent = 0;
+        for (Map.Entry<String, List<Notification>> notifications : byRecipient.entrySet()) {
+            try {
+                List<Notification> batch = notifications.getValue();
+                transport.send(notifications.getKey(), subject(batch), body(batch));
+                done.addAll(tasksByRecipient.get(notifications.getKey()));
+                sent += batch.size();
+            } catch (MessagingException | RuntimeException e) {
+                // Left leased, so it is retried once the lease expires.
+                LOG.log(Level.WARNING,
+                        String.format("Failed to send an mail to %s", notifications.getKey()), e);
+            }
+        }
+        if (!done.isEmpty()) {
+            queue.deleteTask(done);
+        }
+        return sent;
+    }
+
+    /**
+     * @return the subject of the e-mail holding some notifications.
+     */
+    static String subject(List<Notification> notifications) {
+        return notifications.size() == 1 ? notifications.get(0).subject
+                : "You have " + notifications.size() + " notifications from Conference Central";
+    }
+
+    /**
+     * @return the body of the e-mail holding some notifications.
+     */
+    static String body(List<Notification> notifications) {
+        if (notifications.size() == 1) {
+            return notifications.get(0).body;
+        }
+        StringBuilder body = new StringBuilder();
+        for (Notification notification : notifications) {
+            body.append(notification.subject).append("\n\n")
+                    .append(notification.body).append("\n\n");
+        }
+        return body.toString();
+    }
+
+    /**
+     * A notification read back from its task.
+     */
+    static class Notification {
+
+        final String recipient;
+
+        final String subject;
+
+        final String body;
+
+        Notification(String recipient, String subject, String body) {
+            this.recipient = recipient;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        /**
+         * @return the notification of a task, null when the task is malformed.
+         */
+        static Notification of(TaskHandle task) {
+            Map<String, String> params = new LinkedHashMap<>();
+            try {
+                for (Map.Entry<String, String> param : task.extractParams()) {
+                    params.put(param.getKey(), param.getValue());
+                }
+            } catch (UnsupportedEncodingException | UnsupportedOperationException e) {
+                return null;
+            }
+            if (params.get("email") == null || params.get("subject") == null) {
+                return null;
+            }
+            return new Notification(params.get("email"), params.get("subject"),
+                    params.get("body") == null ? "" : params.get("body"));
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Per-endpoint metrics of the ConferenceApi calls: call counts, a latency histogram, datastore
+ * RPCs, transaction retries, entities read and written, and memcache hits.
+ *
+ * EndpointMetricsFilter starts and ends the recording of each request. ApiMetricsDelegate and
+ * DatastoreMetricsCallbacks add to the endpoint of the request running on the current thread.
+ *
+ * Each instance counts in memory, and adds what it counted since its last flush to totals
+ * kept in memcache about once a minute, so the totals cover all the instances. They are lost
+ * if memcache evicts them.
+ */
+public class EndpointMetrics {
+
+    private static final Logger LOG = Logger.getLogger(EndpointMetrics.class.getName());
+
+    /** Upper bounds of the latency histogram buckets in milliseconds, the last bucket is open. */
+    private static final long[] LATENCY_BUCKETS_MILLIS =
+            {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    /** The names of the counters of an endpoint, followed by the latency histogram buckets. */
+    private static final String[] COUNTER_NAMES = {"calls", "failures", "totalLatencyMillis",
+            "datastoreRpcs", "transactionRetries", "entitiesRead", "entitiesWritten",
+            "memcacheHits", "memcacheMisses"};
+
+    private static final int COUNTER_COUNT =
+            COUNTER_NAMES.length + LATENCY_BUCKETS_MILLIS.length + 1;
+
+    private static final long FLUSH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String TOTALS_KEY_PREFIX = "EndpointMetrics.";
+
+    private static final ConcurrentMap<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Endpoint> CURRENT = new ThreadLocal<>();
+
+    private static final AtomicLong LAST_FLUSH_MILLIS = new AtomicLong(System.currentTimeMillis());
+
+    private EndpointMetrics() {}
+
+    /**
+     * Starts recording a call of the given endpoint on the current thread.
+     * @param name the name of the endpoint, e.g. getConference.
+     */
+    public static void begin(String name) {
+        Endpoint endpoint = ENDPOINTS.get(name);
+        if (endpoint == null) {
+            ENDPOINTS.putIfAbsent(name, new Endpoint(name));
+            endpoint = ENDPOINTS.get(name);
+        }
+        CURRENT.set(endpoint);
+    }
+
+    /**
+     * Ends the call recorded on the current thread.
+     * @param latencyNanos the duration of the call.
+     * @param failed true if the call ended with an error.
+     */
+    public static void end(long latencyNanos, boolean failed) {
+        Endpoint endpoint = CURRENT.get();
+        CURRENT.remove();
+        if (endpoint != null) {
+            endpoint.recordCall(TimeUnit.NANOSECONDS.toMillis(latencyNanos), failed);
+        }
+        // A single request flushes per interval, after the current endpoint is removed so the
+        // memcache call is not counted.
+        long now = System.currentTimeMillis();
+        long lastFlush = LAST_FLUSH_MILLIS.get();
+        if (now - lastFlush >= FLUSH_INTERVAL_MILLIS
+                && LAST_FLUSH_MILLIS.compareAndSet(lastFlush, now)) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds what this instance counted since its last flush to the totals in memcache.
+     * The counts are kept for the next flush when memcache fails.
+     */
+    public static synchronized void flush() {
+        Map<String, Long> deltas = new HashMap<>();
+        Map<Endpoint, long[]> flushed = new HashMap<>();
+        for (Endpoint endpoint : ENDPOINTS.values()) {
+            long[] counters = endpoint.getCounters();
+            for (int i = 0; i < counters.length; i++) {
+                long delta = counters[i] - endpoint.flushedCounters[i];
+                if (delta != 0) {
+                    deltas.put(getTotalKey(endpoint.getName(), i), delta);
+                }
+            }
+            flushed.put(endpoint, counters);
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            MemcacheServiceFactory.getMemcacheService().incrementAll(deltas, 0L);
+        } catch (RuntimeException e) {
+            LOG.warning("Failed to flush the endpoint metrics: " + e);
+            return;
+        }
+        for (Map.Entry<Endpoint, long[]> entry : flushed.entrySet()) {
+            entry.getKey().flushedCounters = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns the totals of all the instances, as of their last flush, sorted by name.
+     * @param names the names of the endpoints to look up.
+     * @return the endpoints that have totals.
+     */
+    public static List<Endpoint> getTotals(Collection<String> names) {
+        List<String> keys = getTotalKeys(names);
+        Map<String, Object> totals = MemcacheServiceFactory.getMemcacheService().getAll(keys);
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String name : names) {
+            long[] counters = new long[COUNTER_COUNT];
+            boolean found = false;
+            for (int i = 0; i < counters.length; i++) {
+                Object total = totals.get(getTotalKey(name, i));
+                if (total != null) {
+                    counters[i] = (Long) total;
+                    found = true;
+                }
+            }
+            if (found) {
+                endpoints.add(new Endpoint(name, counters));
+            }
+        }
+        sortByName(endpoints);
+        return endpoints;
+    }
+
+    /**
+     * Forgets the totals of all the instances. The counts not flushed yet are added later.
+     * @param names the names of the endpoints to forget.
+     */
+    public static void resetTotals(Collection<String> names) {
+        MemcacheServiceFactory.getMemcacheService().deleteAll(getTotalKeys(names));
+    }
+
+    private static List<String> getTotalKeys(Collection<String> names) {
+        List<String> keys = new ArrayList<>();
+        for (String name : names) {
+            for (int i = 0; i < COUNTER_COUNT; i++) {
+                keys.add(getTotalKey(name, i));
+            }
+        }
+        return keys;
+    }
+
+    private static String getTotalKey(String name, int counter) {
+        return TOTALS_KEY_PREFIX + name + "."
+                + (counter < COUNTER_NAMES.length
+                        ? COUNTER_NAMES[counter] : "latency" + (counter - COUNTER_NAMES.length));
+    }
+
+    /**
+     * Returns the endpoint recorded on the current thread.
+     * @return the Endpoint, or null outside of an instrumented call.
+     */
+    public static Endpoint current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the metrics of all the endpoints called so far on this instance, sorted by name.
+     * @return the endpoints.
+     */
+    public static List<Endpoint> getEndpoints() {
+        List<Endpoint> endpoints = new ArrayList<>(ENDPOINTS.values());
+        sortByName(endpoints);
+        return endpoints;
+    }
+
+    private static void sortByName(List<Endpoint> endpoints) {
+        Collections.sort(endpoints, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint a, Endpoint b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+    }
+
+    /** Forgets all the metrics recorded so far. */
+    public static void reset() {
+        ENDPOINTS.clear();
+    }
+
+    public static long[] getLatencyBucketsMillis() {
+        return LATENCY_BUCKETS_MILLIS.clone();
+    }
+
+    /**
+     * The counters of a single endpoint. All the counters can be updated concurrently.
+     */
+    public static class Endpoint {
+
+        private final String name;
+
+        private final AtomicLong calls = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+        private final AtomicLongArray latencyHistogram =
+                new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+
+        private final AtomicLong datastoreRpcs = new AtomicLong();
+
+        private final AtomicLong transactionRetries = new AtomicLong();
+
+        private final AtomicLong entitiesRead = new AtomicLong();
+
+        private final AtomicLong entitiesWritten = new AtomicLong();
+
+        private final AtomicLong memcacheHits = new AtomicLong();
+
+        private final AtomicLong memcacheMisses = new AtomicLong();
+
+        /** The counters as of the last flush, see getCounters. */
+        private long[] flushedCounters = new long[COUNTER_COUNT];
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        private Endpoint(String name, long[] counters) {
+            this.name = name;
+            AtomicLong[] fields = getCounterFields();
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].set(counters[i]);
+            }
+            for (int i = 0; i < latencyHistogram.length(); i++) {
+                latencyHistogram.set(i, counters[fields.length + i]);
+            }
+        }
+
+        /** Returns the counter fields in the order of COUNTER_NAMES. */
+        private AtomicLong[] getCounterFields() {
+            return new AtomicLong[] {calls, failures, totalLatencyMillis, datastoreRpcs,
+                    transactionRetries, entitiesRead, entitiesWritten, memcacheHits,
+                    memcacheMisses};
+        }
+
+        /** Returns the counters in the order of COUNTER_NAMES, followed by the histogram. */
+        private long[] getCounters() {
+            AtomicLong[] fields = getCounterFields();
+            long[] counters = new long[fields.length + latencyHistogram.length()];
+            for (int i = 0; i < fields.length; i++) {
+                counters[i] = fields[i].get();
+            }
+            for (int i = 0; i < latencyHistogram.length(); i++) {
+                counters[fields.length + i] = latencyHistogram.get(i);
+            }
+            return counters;
+        }
+
+        void recordCall(long latencyMillis, boolean failed) {
+            calls.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            totalLatencyMillis.addAndGet(latencyMillis);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MILLIS.length
+                    && latencyMillis > LATENCY_BUCKETS_MILLIS[bucket]) {
+                bucket++;
+            }
+            latencyHistogram.incrementAndGet(bucket);
+        }
+
+        void recordDatastoreRpc() {
+            datastoreRpcs.incrementAndGet();
+        }
+
+        void recordTransactionRetry() {
+            transactionRetries.incrementAndGet();
+        }
+
+        void recordEntitiesRead(int count) {
+            entitiesRead.addAndGet(count);
+        }
+
+        void recordEntitiesWritten(int count) {
+            entitiesWritten.addAndGet(count);
+        }
+
+        void recordMemcacheGet(int hits, int misses) {
+            memcacheHits.addAndGet(hits);
+            memcacheMisses.addAndGet(misses);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getTotalLatencyMillis() {
+            return totalLatencyMillis.get();
+        }
+
+        /**
+         * Returns the number of calls in each latency bucket, see getLatencyBucketsMillis.
+         * @return one count per bucket, plus the count of the calls slower than the last bucket.
+         */
+        public long[] getLatencyHistogram() {
+            long[] histogram = new long[latencyHistogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = latencyHistogram.get(i);
+            }
+            return histogram;
+        }
+
+        public long getDatastoreRpcs() {
+            return datastoreRpcs.get();
+        }
+
+        public long getTransactionRetries() {
+            return transactionRetries.get();
+        }
+
+        public long getEntitiesRead() {
+            return entitiesRead.get();
+        }
+
+        public long getEntitiesWritten() {
+            return entitiesWritten.get();
+        }
+
+        public long getMemcacheHits() {
+            return memcacheHits.get();
+        }
+
+        public long getMemcacheMisses() {
+            return memcacheMisses.get();
+        }
+
+        /**
+         * Returns the fraction of the memcache lookups that were hits.
+         * @return the hit ratio, 0 when memcache was not used.
+         */
+        public double getMemcacheHitRatio() {
+            long hits = memcacheHits.get();
+            long lookups = hits + memcacheMisses.get();
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.FeaturedSpeaker;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.googlecode.objectify.Key;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * The featured speakers of the conferences: the speakers giving more than one session.
+ *
+ * They are computed from the sessions of the conference by a task enqueued with the
+ * transaction that creates the sessions, and kept in memcache, so that showing them costs a
+ * single memcache get. Only a conference whose entry was evicted is computed on the request.
+ */
+public class FeaturedSpeakerService {
+
+    private static final String FEATURED_SPEAKER_URL = "/tasks/set_featured_speaker";
+
+    private FeaturedSpeakerService() {}
+
+    /**
+     * Enqueues the computation of the featured speakers of a Conference, with the current
+     * transaction if there is one.
+     * @param conferenceKey the key of the Conference.
+     */
+    public static void enqueue(Key<Conference> conferenceKey) {
+        Queue queue = QueueFactory.getDefaultQueue();
+        queue.add(ofy().getTransaction(), TaskOptions.Builder.withUrl(FEATURED_SPEAKER_URL)
+                .param("websafeConferenceKey", conferenceKey.getString()));
+    }
+
+    /**
+     * Returns the cached featured speakers of a Conference, computing them on a miss.
+     * @param conferenceKey the key of the Conference.
+     * @return the featured speakers, the one with the most sessions first.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<FeaturedSpeaker> get(Key<Conference> conferenceKey) {
+        List<FeaturedSpeaker> featuredSpeakers = (List<FeaturedSpeaker>)
+                MemcacheServiceFactory.getMemcacheService().get(cacheKey(conferenceKey));
+        return featuredSpeakers != null ? featuredSpeakers : refresh(conferenceKey);
+    }
+
+    /**
+     * Computes the featured speakers of a Conference from its sessions and caches them.
+     * @param conferenceKey the key of the Conference.
+     * @return the featured speakers, the one with the most sessions first.
+     */
+    public static List<FeaturedSpeaker> refresh(Key<Conference> conferenceKey) {
+        // An ancestor query, so the sessions just committed are all seen.
+        Map<Key<Speaker>, List<String>> sessionNames = new LinkedHashMap<>();
+        for (Session session : ofy().load().type(Session.class).ancestor(conferenceKey)) {
+            if (session.getSpeakerKey() == null) {
+                continue;
+            }
+            List<String> names = sessionNames.get(session.getSpeakerKey());
+            if (names == null) {
+                names = new ArrayList<>();
+                sessionNames.put(session.getSpeakerKey(), names);
+            }
+            names.add(session.getName());
+        }
+        ArrayList<FeaturedSpeaker> featuredSpeakers = new ArrayList<>();
+        for (Map.Entry<Key<Speaker>, List<String>> names : sessionNames.entrySet()) {
+            if (names.getValue().size() > 1) {
+                Collections.sort(names.getValue());
+                featuredSpeakers.add(
+                        new FeaturedSpeaker(Speaker.fromKey(names.getKey()), names.getValue()));
+            }
+        }
+        Collections.sort(featuredSpeakers, new Comparator<FeaturedSpeaker>() {
+            @Override
+            public int compare(FeaturedSpeaker a, FeaturedSpeaker b) {
+                return b.getSessionNames().size() - a.getSessionNames().size();
+            }
+        });
+        // The empty list is cached too, so a conference without featured speakers is not
+        // computed on every request.
+        MemcacheServiceFactory.getMemcacheService().put(cacheKey(conferenceKey), featuredSpeakers);
+        return featuredSpeakers;
+    }
+
+    private static String cacheKey(Key<Conference> conferenceKey) {
+        return Constants.MEMCACHE_FEATURED_SPEAKER_PREFIX + conferenceKey.getString();
+    }
+}
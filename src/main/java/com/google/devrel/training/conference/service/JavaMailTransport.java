@@ -0,0 +1,47 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.utils.SystemProperty;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
+import java.util.Properties;
+
+/**
+ * Sends the e-mails through the App Engine Mail API, from the noreply address of the
+ * application. The mail Session and the sender address are built once and reused for every
+ * e-mail.
+ */
+public class JavaMailTransport implements MailTransport {
+
+    private final Session session = Session.getDefaultInstance(new Properties(), null);
+
+    private final InternetAddress from;
+
+    public JavaMailTransport() {
+        try {
+            from = new InternetAddress(String.format("noreply@%s.appspotmail.com",
+                    SystemProperty.applicationId.get()), "Conference Central");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void send(String recipient, String subject, String body) throws MessagingException {
+        Message message = new MimeMessage(session);
+        message.setFrom(from);
+        try {
+            message.addRecipient(Message.RecipientType.TO, new InternetAddress(recipient, ""));
+        } catch (UnsupportedEncodingException e) {
+            throw new MessagingException("Invalid recipient " + recipient, e);
+        }
+        message.setSubject(subject);
+        message.setText(body);
+        Transport.send(message);
+    }
+}
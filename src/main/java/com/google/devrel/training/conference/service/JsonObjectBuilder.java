@@ -0,0 +1,118 @@
+package com.google.devrel.training.conference.service;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds a single-line JSON object, for the NDJSON imports and exports and the admin reports.
+ * Null values are left out, dates are written as yyyy-MM-dd'T'HH:mm:ss.SSS'Z' in UTC.
+ */
+public class JsonObjectBuilder {
+
+    /** The pattern of the dates written, also read back by ConferenceImportReader. */
+    public static final String DATE_TIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private final StringBuilder json = new StringBuilder("{");
+
+    private DateFormat dateFormat;
+
+    public JsonObjectBuilder add(String name, String value) {
+        if (value != null) {
+            appendString(appendName(name), value);
+        }
+        return this;
+    }
+
+    public JsonObjectBuilder add(String name, Number value) {
+        if (value != null) {
+            appendName(name).append(value);
+        }
+        return this;
+    }
+
+    public JsonObjectBuilder add(String name, boolean value) {
+        appendName(name).append(value);
+        return this;
+    }
+
+    public JsonObjectBuilder add(String name, Date value) {
+        if (value != null) {
+            if (dateFormat == null) {
+                dateFormat = new SimpleDateFormat(DATE_TIME_PATTERN, Locale.ENGLISH);
+                dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            }
+            add(name, dateFormat.format(value));
+        }
+        return this;
+    }
+
+    /**
+     * Adds an array of strings or numbers.
+     */
+    public JsonObjectBuilder add(String name, Collection<?> values) {
+        if (values != null) {
+            appendName(name).append('[');
+            String separator = "";
+            for (Object value : values) {
+                json.append(separator);
+                if (value == null || value instanceof Number) {
+                    json.append(value);
+                } else {
+                    appendString(json, value.toString());
+                }
+                separator = ",";
+            }
+            json.append(']');
+        }
+        return this;
+    }
+
+    /**
+     * Adds a value already written as JSON, e.g. a nested object.
+     */
+    public JsonObjectBuilder addRaw(String name, String json) {
+        if (json != null) {
+            appendName(name).append(json);
+        }
+        return this;
+    }
+
+    /**
+     * @return the JSON object, without a line separator.
+     */
+    public String build() {
+        return json.toString() + '}';
+    }
+
+    private StringBuilder appendName(String name) {
+        if (json.length() > 1) {
+            json.append(',');
+        }
+        return appendString(json, name).append(':');
+    }
+
+    /**
+     * Appends a string as a quoted and escaped JSON string.
+     * @param json where to append.
+     * @param value the string.
+     * @return json.
+     */
+    public static StringBuilder appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+}
@@ -0,0 +1,19 @@
+package com.google.devrel.training.conference.service;
+
+import javax.mail.MessagingException;
+
+/**
+ * Sends the e-mails of the application. JavaMailTransport sends them for real, the tests use
+ * a stand-in keeping them in memory.
+ */
+public interface MailTransport {
+
+    /**
+     * Sends one e-mail.
+     * @param recipient the address of the recipient.
+     * @param subject the subject.
+     * @param body the plain text body.
+     * @throws MessagingException when the e-mail could not be sent.
+     */
+    void send(String recipient, String subject, String body) throws MessagingException;
+}
@@ -0,0 +1,24 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.api.server.spi.ServiceException;
+
+import java.util.Map;
+
+/**
+ * Answers a conditional request with a 304, repeating the validators of the response.
+ */
+@SuppressWarnings("serial")
+public class NotModifiedException extends ServiceException {
+
+    private final Map<String, String> headers;
+
+    public NotModifiedException(Map<String, String> headers) {
+        super(304, "Not Modified");
+        this.headers = headers;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+}
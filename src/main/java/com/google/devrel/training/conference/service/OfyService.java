@@ -1,11 +1,31 @@
 package com.google.devrel.training.conference.service;
 
 import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceStatistics;
+import com.google.devrel.training.conference.domain.ConferenceSummary;
+import com.google.devrel.training.conference.domain.ImportJob;
+import com.google.devrel.training.conference.domain.NearlySoldOutConferences;
 import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.RegistrationDigest;
+import com.google.devrel.training.conference.domain.SearchPosting;
+import com.google.devrel.training.conference.domain.SeatShard;
 import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionName;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Result;
+import com.googlecode.objectify.cmd.QueryKeys;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Custom Objectify Service that this application should use.
@@ -17,7 +37,18 @@ public class OfyService {
     static {
         factory().register(Profile.class);
         factory().register(Conference.class);
+        factory().register(ConferenceSummary.class);
         factory().register(Session.class);
+        factory().register(SessionName.class);
+        factory().register(SeatShard.class);
+        factory().register(Registration.class);
+        factory().register(WishlistEntry.class);
+        factory().register(ImportJob.class);
+        factory().register(ConferenceStatistics.class);
+        factory().register(SearchPosting.class);
+        factory().register(Speaker.class);
+        factory().register(NearlySoldOutConferences.class);
+        factory().register(RegistrationDigest.class);
     }
 
     /**
@@ -36,4 +67,43 @@ public class OfyService {
     public static ObjectifyFactory factory() {
         return ObjectifyService.factory();
     }
+
+    /**
+     * Starts loading an entity in the background. Unlike load().key(), which only fetches the
+     * entity once now() is called, the get is issued right away, so independent reads overlap.
+     * @param key the key of the entity.
+     * @return the pending entity, null if it doesn't exist.
+     */
+    public static <T> Result<T> loadAsync(final Key<T> key) {
+        final Map<Key<T>, T> pending = ofy().load().keys(Collections.singletonList(key));
+        return new Result<T>() {
+            @Override
+            public T now() {
+                return pending.get(key);
+            }
+        };
+    }
+
+    /**
+     * Starts running a keys-only query in the background.
+     * @param queryKeys the keys-only query.
+     * @return the pending keys, collected the first time now() is called.
+     */
+    public static <T> Result<List<Key<T>>> keysAsync(QueryKeys<T> queryKeys) {
+        final QueryResultIterator<Key<T>> iterator = queryKeys.iterator();
+        return new Result<List<Key<T>>>() {
+            private List<Key<T>> keys;
+
+            @Override
+            public List<Key<T>> now() {
+                if (keys == null) {
+                    keys = new ArrayList<>();
+                    while (iterator.hasNext()) {
+                        keys.add(iterator.next());
+                    }
+                }
+                return keys;
+            }
+        };
+    }
 }
@@ -0,0 +1,164 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Moves the registrations and the wishlist stored as lists on the Profile to Registration and
+ * WishlistEntry entities.
+ *
+ * Wishlists stored as session ids are first converted into session keys, using
+ * Conference.sessionKeys to find the parent Conference of each session.
+ */
+public class ProfileMigration {
+
+    private ProfileMigration() {}
+
+    /**
+     * Builds the websafe session keys of the given conferences, by session id.
+     * @param conferences The Conferences holding the sessions.
+     * @return the websafe session keys, by session id.
+     */
+    public static Map<Long, String> sessionKeysById(Iterable<Conference> conferences) {
+        Map<Long, String> sessionKeysById = new HashMap<>();
+        for (Conference conference : conferences) {
+            Key<Conference> conferenceKey = Key.create(conference.getWebsafeKey());
+            for (Long sessionId : conference.getSessionKeys()) {
+                sessionKeysById.put(sessionId,
+                        Key.create(conferenceKey, Session.class, sessionId).getString());
+            }
+        }
+        return sessionKeysById;
+    }
+
+    /**
+     * Migrates a single profile, saving it with the new entities in the Profile's entity group.
+     * Session ids are looked up in the conferences the user is registered to, the ids of
+     * sessions of other conferences can't be resolved and are kept.
+     * @param profile The Profile to migrate.
+     * @return true if the profile was migrated.
+     */
+    public static boolean migrate(Profile profile) {
+        return migrate(Collections.singletonList(profile)) > 0;
+    }
+
+    /**
+     * Migrates some profiles, with one batch get of the conferences holding their sessions.
+     * @param profiles The Profiles to migrate.
+     * @return the number of profiles migrated.
+     */
+    public static int migrate(Collection<Profile> profiles) {
+        Set<Key<Conference>> conferenceKeys = new LinkedHashSet<>();
+        for (Profile profile : profiles) {
+            if (!profile.getSessionIDsToAttend().isEmpty()) {
+                conferenceKeys.addAll(conferenceKeysToAttend(profile));
+            }
+        }
+        Map<Key<Conference>, Conference> conferences = conferenceKeys.isEmpty()
+                ? Collections.<Key<Conference>, Conference>emptyMap()
+                : ofy().load().keys(conferenceKeys);
+        int migrated = 0;
+        for (Profile profile : profiles) {
+            Map<Long, String> sessionKeysById = null;
+            if (!profile.getSessionIDsToAttend().isEmpty()) {
+                // Session ids are only unique within their Conference, so each profile only
+                // resolves them in its own conferences.
+                List<Conference> attended = new ArrayList<>();
+                for (Key<Conference> conferenceKey : conferenceKeysToAttend(profile)) {
+                    if (conferences.containsKey(conferenceKey)) {
+                        attended.add(conferences.get(conferenceKey));
+                    }
+                }
+                sessionKeysById = sessionKeysById(attended);
+            }
+            if (migrate(profile, sessionKeysById)) {
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    private static List<Key<Conference>> conferenceKeysToAttend(Profile profile) {
+        List<Key<Conference>> conferenceKeys = new ArrayList<>();
+        for (String keyString : profile.getConferenceKeysToAttend()) {
+            conferenceKeys.add(Key.<Conference>create(keyString));
+        }
+        return conferenceKeys;
+    }
+
+    /**
+     * Migrates a single profile with the given session id lookup, saving it with the new
+     * entities when anything changed.
+     *
+     * The Profile is read again in a transaction over its entity group, so a Profile read
+     * before a concurrent migration and unregistration doesn't bring back the deleted
+     * Registration.
+     * @param profile The Profile to migrate.
+     * @param sessionKeysById The websafe session keys by session id, or null.
+     * @return true if the profile was migrated.
+     */
+    public static boolean migrate(Profile profile, final Map<Long, String> sessionKeysById) {
+        if (!needsMigration(profile, sessionKeysById)) {
+            return false;
+        }
+        final Key<Profile> profileKey = Key.create(Profile.class, profile.getUserId());
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                Profile fresh = ofy().load().key(profileKey).now();
+                if (fresh == null || !needsMigration(fresh, sessionKeysById)) {
+                    return false;
+                }
+                if (sessionKeysById != null) {
+                    fresh.migrateSessionIDsToAttend(sessionKeysById);
+                }
+                List<Object> entities = new ArrayList<>();
+                for (String websafeConferenceKey : fresh.getConferenceKeysToAttend()) {
+                    entities.add(new Registration(fresh.getUserId(), websafeConferenceKey));
+                }
+                for (String websafeSessionKey : fresh.getSessionKeysToAttend()) {
+                    entities.add(new WishlistEntry(fresh.getUserId(), websafeSessionKey));
+                }
+                fresh.clearMigratedKeys();
+                entities.add(fresh);
+                ofy().save().entities(entities).now();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return true if the Profile still holds registrations or a wishlist in its lists, not
+     * counting the session ids that can't be resolved yet.
+     */
+    private static boolean needsMigration(Profile profile, Map<Long, String> sessionKeysById) {
+        if (!profile.getConferenceKeysToAttend().isEmpty()
+                || !profile.getSessionKeysToAttend().isEmpty()) {
+            return true;
+        }
+        if (sessionKeysById != null) {
+            for (Long sessionId : profile.getSessionIDsToAttend()) {
+                if (sessionKeysById.containsKey(sessionId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
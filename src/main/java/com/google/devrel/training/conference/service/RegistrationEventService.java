@@ -0,0 +1,319 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.RegistrationDigest;
+import com.google.devrel.training.conference.service.EmailService.Notification;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.Work;
+import com.googlecode.objectify.cmd.Query;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * The work following the registrations, done in batches off the registration requests.
+ *
+ * A registration or an unregistration only adds an event to the registration-queue, a pull
+ * queue, with its transaction. The cron runs processPending every minute, which leases the
+ * pending events by the thousand and, with one batch get of their Conferences and Profiles:
+ * - enqueues a confirmation to each attendee,
+ * - adds the changes of each conference to its RegistrationDigest,
+ * - updates the announcement once per conference.
+ * The e-mails are then sent in batches by EmailService. A run out of time with events left
+ * enqueues the next run itself, a named task of the default queue.
+ *
+ * The hourly digest cron runs sendDigests, which e-mails each organizer the changes collected
+ * for their conference since the last digest.
+ */
+public class RegistrationEventService {
+
+    private static final Logger LOG = Logger.getLogger(RegistrationEventService.class.getName());
+
+    private static final String EVENT_QUEUE = "registration-queue";
+
+    private static final String KICK_QUEUE = "default";
+
+    private static final String PROCESS_URL = "/tasks/process_registrations";
+
+    private static final String DIGEST_URL = "/tasks/send_registration_digests";
+
+    /** How many digests are sent by a request. */
+    private static final int DIGEST_CHUNK_SIZE = 100;
+
+    /** At most one run is enqueued by the runs themselves within this interval. */
+    private static final long KICK_INTERVAL_MILLIS = 10000;
+
+    /** How many events are leased at once, the most a lease allows. */
+    private static final int LEASE_BATCH_SIZE = 1000;
+
+    /** Seconds the leased events are kept from the other runs. */
+    private static final int LEASE_SECONDS = 300;
+
+    /** Milliseconds a run keeps leasing, well within the lease and the request deadline. */
+    private static final long RUN_MILLIS = 120000;
+
+    private static final String REGISTERED = "registered";
+
+    private static final String UNREGISTERED = "unregistered";
+
+    private RegistrationEventService() {}
+
+    /**
+     * Enqueues a registration, with the current transaction.
+     * @param userId the userId of the attendee.
+     * @param websafeConferenceKey the websafe key of the Conference.
+     */
+    public static void registered(String userId, String websafeConferenceKey) {
+        enqueue(REGISTERED, userId, websafeConferenceKey);
+    }
+
+    /**
+     * Enqueues an unregistration, with the current transaction.
+     * @param userId the userId of the attendee.
+     * @param websafeConferenceKey the websafe key of the Conference.
+     */
+    public static void unregistered(String userId, String websafeConferenceKey) {
+        enqueue(UNREGISTERED, userId, websafeConferenceKey);
+    }
+
+    private static void enqueue(String type, String userId, String websafeConferenceKey) {
+        QueueFactory.getQueue(EVENT_QUEUE).add(ofy().getTransaction(),
+                TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+                        .param("type", type)
+                        .param("userId", userId)
+                        .param("websafeConferenceKey", websafeConferenceKey));
+    }
+
+    /**
+     * Processes the pending events.
+     * @return the number of events processed.
+     */
+    public static int processPending() {
+        Queue queue = QueueFactory.getQueue(EVENT_QUEUE);
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        int processed = 0;
+        List<TaskHandle> tasks;
+        do {
+            tasks = queue.leaseTasks(LEASE_SECONDS, TimeUnit.SECONDS, LEASE_BATCH_SIZE);
+            if (!tasks.isEmpty()) {
+                processed += process(tasks);
+                // Only once the e-mails are enqueued, a failed run is leased again.
+                queue.deleteTask(tasks);
+            }
+        } while (tasks.size() == LEASE_BATCH_SIZE && System.currentTimeMillis() < deadline);
+        if (tasks.size() == LEASE_BATCH_SIZE) {
+            // Out of time with events left, another run takes over.
+            BatchRuns.kick(KICK_QUEUE, PROCESS_URL, KICK_INTERVAL_MILLIS);
+        }
+        LOG.info("Processed " + processed + " registration events.");
+        return processed;
+    }
+
+    private static int process(List<TaskHandle> tasks) {
+        List<Event> events = new ArrayList<>(tasks.size());
+        Set<Key<?>> keys = new LinkedHashSet<>();
+        for (TaskHandle task : tasks) {
+            Event event = Event.of(task);
+            if (event == null) {
+                LOG.warning("Dropping the registration event " + task.getName());
+                continue;
+            }
+            events.add(event);
+            keys.add(event.conferenceKey);
+            keys.add(event.attendeeKey);
+        }
+
+        // The Conferences and the attendees.
+        Map<Key<Object>, Object> loaded = ofy().load().values(keys);
+
+        List<Notification> notifications = new ArrayList<>();
+        Map<Key<Conference>, List<Event>> changes = new LinkedHashMap<>();
+        Map<Key<Conference>, List<String>> names = new LinkedHashMap<>();
+        for (Event event : events) {
+            Conference conference = (Conference) loaded.get(event.conferenceKey);
+            Profile attendee = (Profile) loaded.get(event.attendeeKey);
+            if (conference == null) {
+                continue;
+            }
+            String name = attendee == null ? event.attendeeKey.getName()
+                    : attendee.getDisplayName();
+            if (attendee != null && attendee.getMainEmail() != null) {
+                notifications.add(confirmation(event.registered, attendee, conference));
+            }
+            if (!changes.containsKey(event.conferenceKey)) {
+                changes.put(event.conferenceKey, new ArrayList<Event>());
+                names.put(event.conferenceKey, new ArrayList<String>());
+            }
+            changes.get(event.conferenceKey).add(event);
+            names.get(event.conferenceKey).add(name);
+        }
+        for (Key<Conference> conferenceKey : changes.keySet()) {
+            Conference conference = (Conference) loaded.get(conferenceKey);
+            addToDigest(conferenceKey, changes.get(conferenceKey), names.get(conferenceKey));
+            // The seats of the conference changed, maybe crossing the announcement threshold.
+            AnnouncementService.seatsChanged(conference,
+                    SeatCounterService.getSeatsAvailable(conference));
+        }
+        if (!notifications.isEmpty()) {
+            EmailService.enqueue(notifications);
+        }
+        return events.size();
+    }
+
+    /**
+     * Adds the changes of a batch to the digest of their conference, in a transaction since
+     * concurrent runs may add to the same digest.
+     */
+    private static void addToDigest(final Key<Conference> conferenceKey,
+                                    final List<Event> events, final List<String> names) {
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                Key<RegistrationDigest> digestKey =
+                        RegistrationDigest.createKey(conferenceKey.getString());
+                RegistrationDigest digest = ofy().load().key(digestKey).now();
+                if (digest == null) {
+                    digest = new RegistrationDigest(conferenceKey.getString());
+                }
+                for (int i = 0; i < events.size(); i++) {
+                    digest.add(events.get(i).registered, names.get(i));
+                }
+                ofy().save().entity(digest).now();
+            }
+        });
+    }
+
+    /**
+     * Sends a chunk of the collected digests to the organizers, and enqueues the next chunk.
+     * Each digest is e-mailed and deleted in one transaction, so the changes added meanwhile
+     * wait for the next digest.
+     * @param cursor where the chunk starts, null for the first one.
+     * @return the number of digests sent.
+     */
+    public static int sendDigests(String cursor) {
+        Query<RegistrationDigest> query = ofy().load().type(RegistrationDigest.class)
+                .limit(DIGEST_CHUNK_SIZE);
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Key<RegistrationDigest>> iterator = query.keys().iterator();
+        List<Key<RegistrationDigest>> digestKeys = new ArrayList<>(DIGEST_CHUNK_SIZE);
+        while (iterator.hasNext()) {
+            digestKeys.add(iterator.next());
+        }
+        if (digestKeys.size() == DIGEST_CHUNK_SIZE) {
+            QueueFactory.getQueue(KICK_QUEUE).add(TaskOptions.Builder.withUrl(DIGEST_URL)
+                    .param("cursor", iterator.getCursor().toWebSafeString()));
+        }
+        int sent = 0;
+        for (Key<RegistrationDigest> digestKey : digestKeys) {
+            if (sendDigest(digestKey)) {
+                sent++;
+            }
+        }
+        ofy().clear();
+        LOG.info("Sent " + sent + " registration digests.");
+        return sent;
+    }
+
+    private static boolean sendDigest(final Key<RegistrationDigest> digestKey) {
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                RegistrationDigest digest = ofy().load().key(digestKey).now();
+                if (digest == null) {
+                    return false;
+                }
+                ofy().delete().entity(digest).now();
+                // Outside of the entity group of the transaction, read as is.
+                Conference conference = ofy().transactionless().load()
+                        .key(Key.<Conference>create(digest.getWebsafeConferenceKey())).now();
+                Profile organizer = conference == null ? null
+                        : ofy().transactionless().load().key(conference.getProfileKey()).now();
+                if (organizer == null || organizer.getMainEmail() == null) {
+                    return false;
+                }
+                StringBuilder body = new StringBuilder()
+                        .append("Hi, the attendees of ").append(conference.getName())
+                        .append(" changed.\n")
+                        .append("Registered: ").append(digest.getRegistered()).append("\n")
+                        .append("Unregistered: ").append(digest.getUnregistered()).append("\n");
+                for (String change : digest.getChanges()) {
+                    body.append(change).append("\n");
+                }
+                int unlisted = digest.getRegistered() + digest.getUnregistered()
+                        - digest.getChanges().size();
+                if (unlisted > 0) {
+                    body.append("and ").append(unlisted).append(" more.\n");
+                }
+                EmailService.enqueue(organizer.getMainEmail(),
+                        "Registration changes for " + conference.getName(), body.toString());
+                return true;
+            }
+        });
+    }
+
+    private static Notification confirmation(boolean registered, Profile attendee,
+                                             Conference conference) {
+        return registered
+                ? new Notification(attendee.getMainEmail(),
+                        "You are registered for " + conference.getName(),
+                        "Hi, you have registered for the following conference.\n" + conference)
+                : new Notification(attendee.getMainEmail(),
+                        "You are no longer registered for " + conference.getName(),
+                        "Hi, you have unregistered from the following conference.\n"
+                                + conference);
+    }
+
+    /**
+     * A registration event read back from its task.
+     */
+    private static class Event {
+
+        final boolean registered;
+
+        final Key<Profile> attendeeKey;
+
+        final Key<Conference> conferenceKey;
+
+        Event(boolean registered, Key<Profile> attendeeKey, Key<Conference> conferenceKey) {
+            this.registered = registered;
+            this.attendeeKey = attendeeKey;
+            this.conferenceKey = conferenceKey;
+        }
+
+        /**
+         * @return the event of a task, null when the task is malformed.
+         */
+        static Event of(TaskHandle task) {
+            Map<String, String> params = new LinkedHashMap<>();
+            try {
+                for (Map.Entry<String, String> param : task.extractParams()) {
+                    params.put(param.getKey(), param.getValue());
+                }
+                return new Event(REGISTERED.equals(params.get("type")),
+                        Key.create(Profile.class, params.get("userId")),
+                        Key.<Conference>create(params.get("websafeConferenceKey")));
+            } catch (UnsupportedEncodingException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
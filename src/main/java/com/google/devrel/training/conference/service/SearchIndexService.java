@@ -0,0 +1,225 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SearchPosting;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.Key;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Full-text search of the conferences, over their names, descriptions and topics and the names
+ * and highlights of their sessions.
+ *
+ * Each indexed text is written as one SearchPosting per term, weighted like BM25 by the
+ * frequency of the term and the length of the text. A search reads the best weighted postings
+ * of each query term in parallel, scores each conference with the sum of the weights of its
+ * postings times the rarity of their terms, and caches the ranking so that the next pages are
+ * a memcache get. The postings are written by tasks of the index-queue, enqueued with the
+ * transaction that creates the conference or the session.
+ */
+public class SearchIndexService {
+
+    private static final Logger LOG = Logger.getLogger(SearchIndexService.class.getName());
+
+    private static final String INDEX_QUEUE = "index-queue";
+
+    private static final String INDEX_URL = "/tasks/index_search";
+
+    /** How many postings of a term a search reads, the best weighted first. */
+    private static final int MAX_POSTINGS_PER_TERM = 500;
+
+    /** How many terms of a query are looked up. */
+    private static final int MAX_QUERY_TERMS = 8;
+
+    /** How many conferences a search ranks, which bounds how deep its pages go. */
+    private static final int MAX_RESULTS = 1000;
+
+    /** The weight of the sessions relative to the conference itself. */
+    private static final float SESSION_BOOST = 0.5f;
+
+    /** The BM25 parameters, and the length of a typical text in terms. */
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private static final double AVERAGE_LENGTH = 50;
+
+    /** Maximum entities written by a single put. */
+    private static final int PUT_BATCH_SIZE = 500;
+
+    /** Maximum documents indexed by a single task. */
+    private static final int KEYS_PER_TASK = 100;
+
+    /** Seconds a ranking stays in memcache, bounding the delay before new documents show up. */
+    private static final int CACHE_EXPIRATION_SECONDS = 60;
+
+    private SearchIndexService() {}
+
+    /**
+     * Enqueues the indexing of some Conferences and Sessions, with the current transaction
+     * if there is one.
+     * @param documentKeys the keys of the Conferences and Sessions.
+     */
+    public static void enqueue(List<? extends Key<?>> documentKeys) {
+        Queue queue = QueueFactory.getQueue(INDEX_QUEUE);
+        for (int start = 0; start < documentKeys.size(); start += KEYS_PER_TASK) {
+            TaskOptions task = TaskOptions.Builder.withUrl(INDEX_URL);
+            for (Key<?> documentKey : documentKeys.subList(
+                    start, Math.min(start + KEYS_PER_TASK, documentKeys.size()))) {
+                task.param("key", documentKey.getString());
+            }
+            queue.add(ofy().getTransaction(), task);
+        }
+    }
+
+    /**
+     * Writes the postings of some Conferences and Sessions. Safe to run several times.
+     * @param documentKeys the keys of the Conferences and Sessions, missing ones are skipped.
+     */
+    public static void index(List<Key<Object>> documentKeys) {
+        List<SearchPosting> postings = new ArrayList<>();
+        for (Object document : ofy().load().keys(documentKeys).values()) {
+            if (document instanceof Conference) {
+                postings.addAll(postings((Conference) document));
+            } else if (document instanceof Session) {
+                postings.addAll(postings((Session) document));
+            }
+        }
+        for (int start = 0; start < postings.size(); start += PUT_BATCH_SIZE) {
+            ofy().save().entities(postings.subList(
+                    start, Math.min(start + PUT_BATCH_SIZE, postings.size()))).now();
+        }
+        LOG.info("Indexed " + documentKeys.size() + " documents, " + postings.size()
+                + " postings.");
+    }
+
+    /**
+     * @param conference A Conference.
+     * @return the postings of its name, description and topics.
+     */
+    public static List<SearchPosting> postings(Conference conference) {
+        Key<Conference> conferenceKey = Key.create(conference.getWebsafeKey());
+        String topics = conference.getTopics() == null
+                ? null : Joiner.on(' ').skipNulls().join(conference.getTopics());
+        return postings(conferenceKey, conferenceKey, 1f,
+                conference.getName(), conference.getDescription(), topics);
+    }
+
+    /**
+     * @param session A Session.
+     * @return the postings of its name and highlights, which find its Conference.
+     */
+    public static List<SearchPosting> postings(Session session) {
+        return postings(Key.create(session.getWebsafeKey()), session.getConferenceKey(),
+                SESSION_BOOST, session.getName(), session.getHighlights());
+    }
+
+    private static List<SearchPosting> postings(Key<?> documentKey,
+                                                Key<Conference> conferenceKey, float boost,
+                                                String... texts) {
+        Map<String, Integer> frequencies = TextAnalyzer.termFrequencies(texts);
+        int length = 0;
+        for (int frequency : frequencies.values()) {
+            length += frequency;
+        }
+        double lengthNorm = K1 * (1 - B + B * length / AVERAGE_LENGTH);
+        List<SearchPosting> postings = new ArrayList<>(frequencies.size());
+        for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+            int tf = frequency.getValue();
+            float weight = (float) (boost * tf * (K1 + 1) / (tf + lengthNorm));
+            postings.add(new SearchPosting(frequency.getKey(), documentKey, conferenceKey,
+                    weight));
+        }
+        return postings;
+    }
+
+    /**
+     * Ranks the conferences matching any term of a query, the best first.
+     * @param query the text of the query.
+     * @return the keys of at most MAX_RESULTS conferences.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Key<Conference>> rank(String query) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.terms(query));
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> queryTerms = new ArrayList<>(terms).subList(
+                0, Math.min(terms.size(), MAX_QUERY_TERMS));
+        List<String> sortedTerms = new ArrayList<>(queryTerms);
+        Collections.sort(sortedTerms);
+        String cacheKey = Constants.MEMCACHE_CONFERENCE_SEARCH_PREFIX + Hashing.sha1()
+                .hashString(Joiner.on(' ').join(sortedTerms), Charsets.UTF_8);
+        ArrayList<String> cached = (ArrayList<String>)
+                MemcacheServiceFactory.getMemcacheService().get(cacheKey);
+        if (cached != null) {
+            List<Key<Conference>> ranking = new ArrayList<>(cached.size());
+            for (String websafeKey : cached) {
+                ranking.add(Key.<Conference>create(websafeKey));
+            }
+            return ranking;
+        }
+
+        // The queries of all the terms run in parallel.
+        List<QueryResultIterator<SearchPosting>> iterators = new ArrayList<>(queryTerms.size());
+        for (String term : queryTerms) {
+            iterators.add(ofy().load().type(SearchPosting.class).filter("term", term)
+                    .order("-weight").limit(MAX_POSTINGS_PER_TERM).chunk(MAX_POSTINGS_PER_TERM)
+                    .iterator());
+        }
+        final Map<Key<Conference>, Double> scores = new HashMap<>();
+        for (QueryResultIterator<SearchPosting> iterator : iterators) {
+            List<SearchPosting> postings = new ArrayList<>();
+            while (iterator.hasNext()) {
+                postings.add(iterator.next());
+            }
+            // A term with fewer postings is rarer, so it weighs more. The postings beyond
+            // MAX_POSTINGS_PER_TERM are not read, so all the common terms weigh the same.
+            double idf = Math.log(
+                    1 + (double) MAX_POSTINGS_PER_TERM / Math.max(1, postings.size()));
+            for (SearchPosting posting : postings) {
+                Double score = scores.get(posting.getConferenceKey());
+                scores.put(posting.getConferenceKey(),
+                        (score == null ? 0 : score) + idf * posting.getWeight());
+            }
+        }
+        List<Key<Conference>> ranking = new ArrayList<>(scores.keySet());
+        Collections.sort(ranking, new Comparator<Key<Conference>>() {
+            @Override
+            public int compare(Key<Conference> a, Key<Conference> b) {
+                int byScore = Double.compare(scores.get(b), scores.get(a));
+                return byScore != 0 ? byScore : a.compareTo(b);
+            }
+        });
+        ranking = ranking.subList(0, Math.min(ranking.size(), MAX_RESULTS));
+
+        ArrayList<String> websafeKeys = new ArrayList<>(ranking.size());
+        for (Key<Conference> conferenceKey : ranking) {
+            websafeKeys.add(conferenceKey.getString());
+        }
+        MemcacheServiceFactory.getMemcacheService().put(cacheKey, websafeKeys,
+                Expiration.byDeltaSeconds(CACHE_EXPIRATION_SECONDS));
+        return ranking;
+    }
+}
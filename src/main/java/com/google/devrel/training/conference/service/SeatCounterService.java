@@ -0,0 +1,208 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * Sharded seat counter for Conferences.
+ *
+ * The seats of a conference are split over a number of SeatShard entities. A registration
+ * picks a random shard with seats left and only writes that shard, so the registration
+ * throughput grows with the number of shards instead of being capped by the Conference
+ * entity group. The summed value is cached in memcache.
+ */
+public class SeatCounterService {
+
+    /** Number of shards created for a new conference. */
+    public static final int DEFAULT_SHARD_COUNT = 10;
+
+    /** Seconds the summed number of seats stays in memcache. */
+    private static final int CACHE_EXPIRATION_SECONDS = 60;
+
+    private static final Random RANDOM = new Random();
+
+    private SeatCounterService() {}
+
+    /**
+     * Builds the shards for a new conference and records the shard count on it.
+     * The caller is responsible for saving both the conference and the returned shards.
+     * @param conference the Conference to shard.
+     * @return the new SeatShard entities.
+     */
+    public static List<SeatShard> createShards(Conference conference) {
+        int capacity = conference.getMaxAttendees();
+        int seatsAvailable = conference.getSeatsAvailable();
+        int shardCount = Math.max(1, Math.min(DEFAULT_SHARD_COUNT, capacity));
+        List<SeatShard> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new SeatShard(conference.getWebsafeKey(), i,
+                    slice(capacity, shardCount, i), slice(seatsAvailable, shardCount, i)));
+        }
+        conference.setSeatShardCount(shardCount);
+        return shards;
+    }
+
+    /** Splits total into shardCount parts, the remainder goes to the first shards. */
+    private static int slice(int total, int shardCount, int index) {
+        return total / shardCount + (index < total % shardCount ? 1 : 0);
+    }
+
+    /**
+     * Creates the shards of a conference stored before seats were sharded, using its current
+     * seatsAvailable as the starting point.
+     * @param conference the Conference to migrate.
+     */
+    public static void ensureShards(final Conference conference) {
+        if (conference.getSeatShardCount() > 0) {
+            return;
+        }
+        final Key<Conference> conferenceKey = Key.create(conference.getWebsafeKey());
+        int shardCount = ofy().transact(new Work<Integer>() {
+            @Override
+            public Integer run() {
+                Conference fresh = ofy().load().key(conferenceKey).now();
+                if (fresh == null) {
+                    return 0;
+                } else if (fresh.getSeatShardCount() > 0) {
+                    return fresh.getSeatShardCount();
+                }
+                List<SeatShard> shards = createShards(fresh);
+                ofy().save().entity(fresh).now();
+                ofy().save().entities(shards).now();
+                return fresh.getSeatShardCount();
+            }
+        });
+        conference.setSeatShardCount(shardCount);
+    }
+
+    /**
+     * Returns the keys of all the shards of a conference.
+     * @param conference the Conference.
+     * @return the shard keys.
+     */
+    public static List<Key<SeatShard>> getShardKeys(Conference conference) {
+        int shardCount = conference.getSeatShardCount();
+        List<Key<SeatShard>> keys = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            keys.add(SeatShard.createKey(conference.getWebsafeKey(), i));
+        }
+        return keys;
+    }
+
+    /**
+     * Loads all the shards of a conference with a single batch get.
+     * @param conference the Conference.
+     * @return the shards found.
+     */
+    public static Collection<SeatShard> loadShards(Conference conference) {
+        return ofy().load().keys(getShardKeys(conference)).values();
+    }
+
+    /**
+     * Sums the seats available over the given shards.
+     * @param shards the shards of a conference.
+     * @return the total number of seats available.
+     */
+    public static int sumSeatsAvailable(Collection<SeatShard> shards) {
+        int total = 0;
+        for (SeatShard shard : shards) {
+            total += shard.getSeatsAvailable();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of seats available for a conference, served from memcache when possible.
+     * @param conference the Conference.
+     * @return the number of seats available across all shards.
+     */
+    public static int getSeatsAvailable(Conference conference) {
+        if (conference.getSeatShardCount() == 0) {
+            return conference.getSeatsAvailable();
+        }
+        MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+        String cacheKey = getCacheKey(conference);
+        Object cached = memcacheService.get(cacheKey);
+        if (cached != null) {
+            long seatsAvailable = (Long) cached;
+            // The sum put on a miss can race with the increments of the registrations, so a
+            // cached value out of range is summed again from the shards.
+            if (seatsAvailable >= 0 && seatsAvailable <= conference.getMaxAttendees()) {
+                return (int) seatsAvailable;
+            }
+        }
+        int seatsAvailable = sumSeatsAvailable(loadShards(conference));
+        memcacheService.put(cacheKey, (long) seatsAvailable,
+                Expiration.byDeltaSeconds(CACHE_EXPIRATION_SECONDS));
+        return seatsAvailable;
+    }
+
+    /**
+     * Applies a committed seat change to the cached sum, if there is one.
+     * @param conference the Conference.
+     * @param delta the number of seats added (positive) or booked (negative).
+     */
+    public static void adjustCachedSeatsAvailable(Conference conference, long delta) {
+        MemcacheServiceFactory.getMemcacheService().increment(getCacheKey(conference), delta);
+    }
+
+    /**
+     * Picks a random shard that still has seats available.
+     * @param conference the Conference.
+     * @param excluded shards already known to be exhausted.
+     * @return the key of the picked shard, or null when the conference is sold out.
+     */
+    public static Key<SeatShard> pickShardWithSeats(Conference conference,
+                                                    Set<Key<SeatShard>> excluded) {
+        return pickShard(conference, excluded, true);
+    }
+
+    /**
+     * Picks a random shard that has room for a seat given back.
+     * @param conference the Conference.
+     * @param excluded shards already known to be full.
+     * @return the key of the picked shard, or null when all the shards are full.
+     */
+    public static Key<SeatShard> pickShardWithRoom(Conference conference,
+                                                   Set<Key<SeatShard>> excluded) {
+        return pickShard(conference, excluded, false);
+    }
+
+    private static Key<SeatShard> pickShard(Conference conference, Set<Key<SeatShard>> excluded,
+                                            boolean needsSeats) {
+        Map<Key<SeatShard>, SeatShard> shards = ofy().load().keys(getShardKeys(conference));
+        List<Key<SeatShard>> candidates = new ArrayList<>(shards.size());
+        for (Map.Entry<Key<SeatShard>, SeatShard> entry : shards.entrySet()) {
+            SeatShard shard = entry.getValue();
+            boolean usable = needsSeats
+                    ? shard.getSeatsAvailable() > 0
+                    : shard.getSeatsAvailable() < shard.getCapacity();
+            if (usable && !excluded.contains(entry.getKey())) {
+                candidates.add(entry.getKey());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(RANDOM.nextInt(candidates.size()));
+    }
+
+    private static String getCacheKey(Conference conference) {
+        return Constants.MEMCACHE_SEATS_AVAILABLE_PREFIX + conference.getWebsafeKey();
+    }
+}
@@ -0,0 +1,131 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a text into the terms of the search index: the words, lower cased, without the stop
+ * words, and stemmed so that "conferences" and "conference" are the same term.
+ *
+ * The stemmer only strips the plural and the -ed/-ing endings of English words, like the first
+ * step of the Porter stemmer, which is enough to match the usual inflections of a query.
+ */
+public class TextAnalyzer {
+
+    /** Terms are cut to this many characters, below the limit of an indexed property. */
+    static final int MAX_TERM_LENGTH = 64;
+
+    private static final Set<String> STOP_WORDS = ImmutableSet.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "into", "is",
+            "it", "of", "on", "or", "that", "the", "this", "to", "with");
+
+    private TextAnalyzer() {}
+
+    /**
+     * Returns the terms of some texts, in order of first occurrence, with their frequencies.
+     * @param texts the texts, null ones are skipped.
+     * @return the frequency of each term.
+     */
+    public static Map<String, Integer> termFrequencies(String... texts) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String text : texts) {
+            for (String term : terms(text)) {
+                Integer frequency = frequencies.get(term);
+                frequencies.put(term, frequency == null ? 1 : frequency + 1);
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Returns the terms of a text, in order.
+     * @param text the text, may be null.
+     * @return the terms.
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = text.substring(start, i).toLowerCase(Locale.ENGLISH);
+                start = -1;
+                if (STOP_WORDS.contains(word)) {
+                    continue;
+                }
+                String term = stem(word);
+                terms.add(term.length() > MAX_TERM_LENGTH
+                        ? term.substring(0, MAX_TERM_LENGTH) : term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Strips the plural and the -ed/-ing endings of a lower case word.
+     */
+    static String stem(String word) {
+        if (word.length() <= 3 || !isAsciiLetters(word)) {
+            return word;
+        }
+        if (word.endsWith("sses")) {
+            word = word.substring(0, word.length() - 2);
+        } else if (word.endsWith("ies")) {
+            word = word.substring(0, word.length() - 2);
+        } else if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us")) {
+            word = word.substring(0, word.length() - 1);
+        }
+        if (word.endsWith("eed")) {
+            return word;
+        }
+        for (String suffix : new String[] {"ing", "ed"}) {
+            String base = word.substring(0, Math.max(0, word.length() - suffix.length()));
+            if (word.endsWith(suffix) && base.length() >= 3 && hasVowel(base)) {
+                // "running" gives "run", "created" gives "create".
+                if (base.endsWith("at") || base.endsWith("bl") || base.endsWith("iz")) {
+                    return base + "e";
+                }
+                int last = base.length() - 1;
+                if (base.charAt(last) == base.charAt(last - 1)
+                        && "lsz".indexOf(base.charAt(last)) < 0) {
+                    return base.substring(0, last);
+                }
+                return base;
+            }
+        }
+        if (word.endsWith("y") && hasVowel(word.substring(0, word.length() - 1))) {
+            // So that "technology" and "technologies" meet.
+            return word.substring(0, word.length() - 1) + "i";
+        }
+        return word;
+    }
+
+    private static boolean hasVowel(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if ("aeiouy".indexOf(word.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAsciiLetters(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) < 'a' || word.charAt(i) > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
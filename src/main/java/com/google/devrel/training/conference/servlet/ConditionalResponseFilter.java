@@ -0,0 +1,114 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.devrel.training.conference.service.ConditionalRequests;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * A filter adding the validators left by ConditionalRequests to the successful responses of
+ * the API methods, and dropping the body of their 304 responses.
+ *
+ * The SPI servlet sets the status and the headers before it writes the body, so the
+ * validators are added when the body is about to be written.
+ */
+public class ConditionalResponseFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {}
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        chain.doFilter(request, new ValidatorResponse(
+                (HttpServletRequest) request, (HttpServletResponse) response));
+    }
+
+    @Override
+    public void destroy() {}
+
+    private static class ValidatorResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        private int status = SC_OK;
+
+        ValidatorResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+            super.setStatus(sc);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int sc, String sm) {
+            status = sc;
+            super.setStatus(sc, sm);
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            if (status != SC_NOT_MODIFIED) {
+                super.setContentLength(len);
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (status == SC_NOT_MODIFIED) {
+                return new PrintWriter(new Writer() {
+                    @Override
+                    public void write(char[] buffer, int offset, int length) {}
+
+                    @Override
+                    public void flush() {}
+
+                    @Override
+                    public void close() {}
+                });
+            }
+            addValidators();
+            return super.getWriter();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (status == SC_NOT_MODIFIED) {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {}
+                };
+            }
+            addValidators();
+            return super.getOutputStream();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addValidators() {
+            Map<String, String> headers = (Map<String, String>)
+                    request.getAttribute(ConditionalRequests.HEADERS_ATTRIBUTE);
+            if (headers != null && status < 300) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    setHeader(header.getKey(), header.getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.api.server.spi.config.ApiMethod;
+import com.google.devrel.training.conference.service.ApiMetricsDelegate;
+import com.google.devrel.training.conference.service.EndpointMetrics;
+import com.google.devrel.training.conference.spi.ConferenceApi;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A filter recording the metrics of each ConferenceApi call, see EndpointMetrics.
+ *
+ * It is mapped to the Endpoints SPI path, where the last part of the path names the
+ * API method, e.g. /_ah/spi/com.google.devrel.training.conference.spi.ConferenceApi.getProfile.
+ * Only the methods annotated with @ApiMethod are recorded.
+ */
+public class EndpointMetricsFilter implements Filter {
+
+    private final Set<String> apiMethodNames = new HashSet<>();
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        for (Method method : ConferenceApi.class.getMethods()) {
+            if (method.isAnnotationPresent(ApiMethod.class)) {
+                apiMethodNames.add(method.getName());
+            }
+        }
+        ApiMetricsDelegate.install();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        String endpoint = getEndpoint((HttpServletRequest) request);
+        if (endpoint == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        StatusResponse statusResponse = new StatusResponse((HttpServletResponse) response);
+        boolean failed = true;
+        EndpointMetrics.begin(endpoint);
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, statusResponse);
+            // The SPI servlet turns the exceptions of the API methods into error statuses.
+            failed = statusResponse.status >= 400;
+        } finally {
+            EndpointMetrics.end(System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public void destroy() {}
+
+    private String getEndpoint(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        if (pathInfo == null) {
+            return null;
+        }
+        String name = pathInfo.substring(pathInfo.lastIndexOf('.') + 1);
+        return apiMethodNames.contains(name) ? name : null;
+    }
+
+    /** Keeps the status of the response, which servlet 2.5 doesn't expose. */
+    private static class StatusResponse extends HttpServletResponseWrapper {
+
+        private int status = SC_OK;
+
+        StatusResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+            super.setStatus(status);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int status, String message) {
+            this.status = status;
+            super.setStatus(status, message);
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            this.status = status;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            this.status = status;
+            super.sendError(status, message);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.devrel.training.conference.service.DataExporter;
+import com.google.devrel.training.conference.service.JsonObjectBuilder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An admin servlet streaming an NDJSON export of the data, see DataExporter.
+ *
+ * The kinds parameter lists the kinds to export (conference, session, profile, registration),
+ * all of them by default, and gzip=true compresses the response. A response stops before the
+ * request deadline, and well under the 32MB limit of a response, which App Engine buffers
+ * whole: its last line is {"checkpoint":...}, to pass as the checkpoint parameter of
+ * the next request, or {"done":true} once the export is complete.
+ */
+@SuppressWarnings("serial")
+public class ExportServlet extends HttpServlet {
+
+    /** How long a response streams, below the 60 seconds limit of a request. */
+    private static final long EXPORT_BUDGET_MILLIS = 45 * 1000;
+
+    /** How many bytes a response holds before compression, below the 32MB limit. */
+    private static final long EXPORT_BUDGET_BYTES = 24L * 1024 * 1024;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        long deadlineMillis = System.currentTimeMillis() + EXPORT_BUDGET_MILLIS;
+        List<DataExporter.Kind> kinds;
+        try {
+            kinds = DataExporter.parseKinds(request.getParameter("kinds"));
+        } catch (IllegalArgumentException e) {
+            response.sendError(400, "Unknown kinds: " + request.getParameter("kinds"));
+            return;
+        }
+        boolean gzip = Boolean.parseBoolean(request.getParameter("gzip"));
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        OutputStream stream = gzip
+                ? new GZIPOutputStream(response.getOutputStream()) : response.getOutputStream();
+        Writer out = new OutputStreamWriter(stream, "UTF-8");
+        String checkpoint;
+        try {
+            checkpoint = DataExporter.export(
+                    kinds, request.getParameter("checkpoint"), out, deadlineMillis,
+                    EXPORT_BUDGET_BYTES);
+        } catch (IllegalArgumentException e) {
+            // Nothing was written yet, the checkpoint is checked first.
+            response.reset();
+            response.sendError(400, "Invalid checkpoint: " + e.getMessage());
+            return;
+        }
+        JsonObjectBuilder trailer = new JsonObjectBuilder();
+        out.write((checkpoint == null
+                ? trailer.add("done", true) : trailer.add("checkpoint", checkpoint)).build());
+        out.write('\n');
+        out.close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.devrel.training.conference.service.ConferenceImportService;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A servlet for writing a chunk of a bulk import of conferences, run by the import-queue.
+ * The rows are the body of the task, one JSON object per line.
+ */
+@SuppressWarnings("serial")
+public class ImportConferencesChunkServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        long jobId = Long.parseLong(request.getParameter("jobId"));
+        int chunk = Integer.parseInt(request.getParameter("chunk"));
+        long firstConferenceId = Long.parseLong(request.getParameter("firstConferenceId"));
+        request.setCharacterEncoding("UTF-8");
+        StringBuilder payload = new StringBuilder();
+        Reader reader = request.getReader();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            payload.append(buffer, 0, read);
+        }
+        ConferenceImportService.importChunk(jobId, chunk, firstConferenceId, payload.toString());
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+}
@@ -0,0 +1,90 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.devrel.training.conference.domain.ImportJob;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.service.ConferenceImportReader;
+import com.google.devrel.training.conference.service.ConferenceImportService;
+import com.google.devrel.training.conference.service.JsonObjectBuilder;
+import com.googlecode.objectify.Key;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * An admin servlet for bulk importing conferences, see ConferenceImportService.
+ *
+ * A POST streams a CSV or NDJSON upload, picked from its content type, for the organizer given
+ * by the organizerUserId parameter, and answers 202 with the job. A GET with the jobId parameter
+ * reports the progress of a job. Both answer JSON.
+ */
+@SuppressWarnings("serial")
+public class ImportConferencesServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        String organizerUserId = request.getParameter("organizerUserId");
+        if (organizerUserId == null) {
+            response.sendError(400, "The organizerUserId parameter is required");
+            return;
+        }
+        Profile organizer = ofy().load().key(Key.create(Profile.class, organizerUserId)).now();
+        if (organizer == null) {
+            response.sendError(400, "No Profile found for the organizer " + organizerUserId);
+            return;
+        }
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding("UTF-8");
+        }
+        ImportJob job;
+        try {
+            job = ConferenceImportService.startImport(organizer, request.getReader(),
+                    ConferenceImportReader.Format.fromContentType(request.getContentType()));
+        } catch (IOException e) {
+            response.sendError(400, e.getMessage());
+            return;
+        }
+        response.setStatus(202);
+        writeJob(response, job);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        ImportJob job = null;
+        try {
+            job = ConferenceImportService.getJob(Long.parseLong(request.getParameter("jobId")));
+        } catch (NumberFormatException e) {
+            // Reported as not found below.
+        }
+        if (job == null) {
+            response.sendError(404, "No import found");
+            return;
+        }
+        writeJob(response, job);
+    }
+
+    private static void writeJob(HttpServletResponse response, ImportJob job) throws IOException {
+        String status = job.getChunksTotal() == null ? "uploading"
+                : job.isComplete() ? "done" : "importing";
+        String json = new JsonObjectBuilder()
+                .add("jobId", job.getId())
+                .add("status", status)
+                .add("rowsRead", job.getRowsRead())
+                .add("rowsRejected", job.getRowsRejected())
+                .add("conferencesCreated", job.getConferencesCreated())
+                .add("chunksTotal", job.getChunksTotal())
+                .add("chunksDone", job.getChunksDone())
+                .add("errors", job.getErrors())
+                .build();
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(json);
+    }
+}
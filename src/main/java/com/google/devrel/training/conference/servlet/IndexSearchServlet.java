@@ -0,0 +1,37 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.devrel.training.conference.service.SearchIndexService;
+import com.googlecode.objectify.Key;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A servlet for writing the search postings of some Conferences and Sessions, run by the
+ * index-queue. The documents are the websafe keys of the key parameters.
+ */
+@SuppressWarnings("serial")
+public class IndexSearchServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        List<Key<Object>> documentKeys = new ArrayList<>();
+        String[] websafeKeys = request.getParameterValues("key");
+        if (websafeKeys != null) {
+            for (String websafeKey : websafeKeys) {
+                documentKeys.add(Key.create(websafeKey));
+            }
+        }
+        SearchIndexService.index(documentKeys);
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+}
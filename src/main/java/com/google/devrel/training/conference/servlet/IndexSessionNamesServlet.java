@@ -0,0 +1,104 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionName;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * A servlet for reserving the names of the Sessions created before SessionName existed, so
+ * createSession rejects duplicates of them. It is safe to run it several times, names already
+ * reserved are kept.
+ *
+ * Each request reserves the names of a chunk of conferences and enqueues the next chunk with
+ * its cursor.
+ */
+@SuppressWarnings("serial")
+public class IndexSessionNamesServlet extends HttpServlet {
+
+    private static final Logger LOG = Logger.getLogger(IndexSessionNamesServlet.class.getName());
+
+    private static final String INDEX_URL = "/admin/index_session_names";
+
+    /** How many conferences are indexed by a request. */
+    private static final int CHUNK_SIZE = 50;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Query<Conference> query = ofy().load().type(Conference.class)
+                .limit(CHUNK_SIZE).chunk(CHUNK_SIZE);
+        String cursor = request.getParameter("cursor");
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Key<Conference>> iterator = query.keys().iterator();
+        List<Key<Conference>> conferenceKeys = new ArrayList<>(CHUNK_SIZE);
+        while (iterator.hasNext()) {
+            conferenceKeys.add(iterator.next());
+        }
+        if (conferenceKeys.size() == CHUNK_SIZE) {
+            QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(INDEX_URL)
+                    .param("cursor", iterator.getCursor().toWebSafeString()));
+        }
+
+        int total = 0;
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            // The first session of each name keeps it.
+            Map<Key<SessionName>, SessionName> names = new LinkedHashMap<>();
+            for (Session session : ofy().load().type(Session.class).ancestor(conferenceKey)) {
+                Key<SessionName> nameKey =
+                        SessionName.createKey(conferenceKey, session.getName());
+                if (!names.containsKey(nameKey)) {
+                    names.put(nameKey, new SessionName(
+                            Key.create(conferenceKey, Session.class, session.getId()),
+                            session.getName()));
+                }
+            }
+            if (names.isEmpty()) {
+                continue;
+            }
+            Map<Key<SessionName>, SessionName> reserved = ofy().load().keys(names.keySet());
+            List<SessionName> missing = new ArrayList<>();
+            for (Map.Entry<Key<SessionName>, SessionName> entry : names.entrySet()) {
+                if (!reserved.containsKey(entry.getKey())) {
+                    missing.add(entry.getValue());
+                }
+            }
+            ofy().save().entities(missing).now();
+            total += missing.size();
+        }
+        // The sessions and names of the chunk are not needed anymore.
+        ofy().clear();
+        LOG.info("Reserved " + total + " session names of " + conferenceKeys.size()
+                + " conferences.");
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        doGet(request, response);
+    }
+}
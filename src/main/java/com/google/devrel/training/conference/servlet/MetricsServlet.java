@@ -0,0 +1,96 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.api.server.spi.config.ApiMethod;
+import com.google.devrel.training.conference.service.EndpointMetrics;
+import com.google.devrel.training.conference.spi.ConferenceApi;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An admin servlet serving the EndpointMetrics totals of all the instances as JSON, or the
+ * metrics of this instance alone with ?instance=true.
+ * A POST resets the metrics.
+ */
+@SuppressWarnings("serial")
+public class MetricsServlet extends HttpServlet {
+
+    private final List<String> apiMethodNames = new ArrayList<>();
+
+    @Override
+    public void init() throws ServletException {
+        for (Method method : ConferenceApi.class.getMethods()) {
+            if (method.isAnnotationPresent(ApiMethod.class)) {
+                apiMethodNames.add(method.getName());
+            }
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        List<EndpointMetrics.Endpoint> endpoints;
+        if (Boolean.parseBoolean(request.getParameter("instance"))) {
+            endpoints = EndpointMetrics.getEndpoints();
+        } else {
+            // Includes the calls of this instance since its last flush.
+            EndpointMetrics.flush();
+            endpoints = EndpointMetrics.getTotals(apiMethodNames);
+        }
+        long[] bucketsMillis = EndpointMetrics.getLatencyBucketsMillis();
+        StringBuilder json = new StringBuilder("{\"endpoints\":[");
+        String separator = "";
+        for (EndpointMetrics.Endpoint endpoint : endpoints) {
+            json.append(separator).append('{');
+            // The names are ConferenceApi method names, they need no escaping.
+            appendField(json, "name", "\"" + endpoint.getName() + "\"").append(',');
+            appendField(json, "calls", endpoint.getCalls()).append(',');
+            appendField(json, "failures", endpoint.getFailures()).append(',');
+            appendField(json, "totalLatencyMillis", endpoint.getTotalLatencyMillis()).append(',');
+            json.append("\"latencyHistogramMillis\":{");
+            long[] histogram = endpoint.getLatencyHistogram();
+            for (int i = 0; i < histogram.length; i++) {
+                String bucket = i < bucketsMillis.length ? "le" + bucketsMillis[i] : "inf";
+                appendField(json, bucket, histogram[i]).append(i < histogram.length - 1 ? "," : "");
+            }
+            json.append("},");
+            appendField(json, "datastoreRpcs", endpoint.getDatastoreRpcs()).append(',');
+            appendField(json, "transactionRetries", endpoint.getTransactionRetries()).append(',');
+            appendField(json, "entitiesRead", endpoint.getEntitiesRead()).append(',');
+            appendField(json, "entitiesWritten", endpoint.getEntitiesWritten()).append(',');
+            appendField(json, "memcacheHits", endpoint.getMemcacheHits()).append(',');
+            appendField(json, "memcacheMisses", endpoint.getMemcacheMisses()).append(',');
+            appendField(json, "memcacheHitRatio",
+                    String.format(Locale.US, "%.4f", endpoint.getMemcacheHitRatio()));
+            json.append('}');
+            separator = ",";
+        }
+        json.append("]}");
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(json.toString());
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        EndpointMetrics.reset();
+        EndpointMetrics.resetTotals(apiMethodNames);
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+
+    private static StringBuilder appendField(StringBuilder json, String name, Object value) {
+        return json.append('"').append(name).append("\":").append(value);
+    }
+}
@@ -0,0 +1,71 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.service.ProfileMigration;
+import com.googlecode.objectify.cmd.Query;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * A servlet for moving the registrations and wishlists stored on the Profiles to Registration
+ * and WishlistEntry entities. It is safe to run it several times, migrated profiles are skipped.
+ *
+ * Each request migrates a chunk of profiles and enqueues the next chunk with its cursor.
+ */
+@SuppressWarnings("serial")
+public class MigrateProfilesServlet extends HttpServlet {
+
+    private static final Logger LOG = Logger.getLogger(MigrateProfilesServlet.class.getName());
+
+    private static final String MIGRATE_URL = "/admin/migrate_profiles";
+
+    /** How many profiles are migrated by a request. */
+    private static final int CHUNK_SIZE = 100;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Query<Profile> query = ofy().load().type(Profile.class)
+                .limit(CHUNK_SIZE).chunk(CHUNK_SIZE);
+        String cursor = request.getParameter("cursor");
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Profile> iterator = query.iterator();
+        List<Profile> profiles = new ArrayList<>(CHUNK_SIZE);
+        while (iterator.hasNext()) {
+            profiles.add(iterator.next());
+        }
+        if (profiles.size() == CHUNK_SIZE) {
+            QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(MIGRATE_URL)
+                    .param("cursor", iterator.getCursor().toWebSafeString()));
+        }
+        int migrated = ProfileMigration.migrate(profiles);
+        // The migrated profiles and their conferences are not needed anymore.
+        ofy().clear();
+        LOG.info("Migrated " + migrated + " of " + profiles.size() + " profiles.");
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        doGet(request, response);
+    }
+}
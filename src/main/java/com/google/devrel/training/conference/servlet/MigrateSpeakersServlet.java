@@ -0,0 +1,118 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.googlecode.objectify.Key;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * A servlet for moving the speakers embedded in the Sessions written before the Speaker entity
+ * existed to Speaker entities referenced by key. The old property is ignored when Objectify
+ * loads a Session, so it is read here with the low-level datastore API. It is safe to run it
+ * several times, the Sessions with a speakerKey are skipped.
+ *
+ * Each request migrates a batch of sessions and enqueues the next batch with its cursor.
+ */
+@SuppressWarnings("serial")
+public class MigrateSpeakersServlet extends HttpServlet {
+
+    private static final Logger LOG = Logger.getLogger(MigrateSpeakersServlet.class.getName());
+
+    private static final String MIGRATE_URL = "/admin/migrate_speakers";
+
+    /** How many sessions are migrated by a request. */
+    private static final int BATCH_SIZE = 500;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+        FetchOptions options = FetchOptions.Builder.withLimit(BATCH_SIZE);
+        String cursor = request.getParameter("cursor");
+        if (cursor != null) {
+            options.startCursor(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultList<Entity> entities = datastore.prepare(new Query("Session"))
+                .asQueryResultList(options);
+        if (entities.size() == BATCH_SIZE) {
+            QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(MIGRATE_URL)
+                    .param("cursor", entities.getCursor().toWebSafeString()));
+        }
+        Map<Key<Session>, Speaker> speakers = new HashMap<>();
+        for (Entity entity : entities) {
+            Speaker speaker = entity.hasProperty("speakerKey") ? null : legacySpeaker(entity);
+            if (speaker != null) {
+                speakers.put(Key.<Session>create(entity.getKey()), speaker);
+            }
+        }
+        List<Object> migrated = new ArrayList<>();
+        for (Map.Entry<Key<Session>, Session> session
+                : ofy().load().keys(speakers.keySet()).entrySet()) {
+            Speaker speaker = speakers.get(session.getKey());
+            session.getValue().migrateSpeaker(speaker);
+            migrated.add(session.getValue());
+            if (!speaker.isEmpty()) {
+                migrated.add(speaker);
+            }
+        }
+        if (!migrated.isEmpty()) {
+            ofy().save().entities(migrated).now();
+        }
+        // The migrated sessions are not needed anymore.
+        ofy().clear();
+        LOG.info("Migrated the speakers of " + speakers.size() + " of " + entities.size()
+                + " sessions.");
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        doGet(request, response);
+    }
+
+    /**
+     * Reads the speaker embedded in a Session, stored either as an embedded entity or as the
+     * dotted properties of its fields.
+     * @return the Speaker, or null if the Session has none.
+     */
+    private static Speaker legacySpeaker(Entity entity) {
+        Object embedded = entity.getProperty("speaker");
+        if (embedded instanceof EmbeddedEntity) {
+            EmbeddedEntity speaker = (EmbeddedEntity) embedded;
+            return new Speaker((String) speaker.getProperty("firstName"),
+                    (String) speaker.getProperty("lastName"));
+        }
+        if (entity.hasProperty("speaker.firstName") || entity.hasProperty("speaker.lastName")) {
+            return new Speaker((String) entity.getProperty("speaker.firstName"),
+                    (String) entity.getProperty("speaker.lastName"));
+        }
+        return null;
+    }
+}
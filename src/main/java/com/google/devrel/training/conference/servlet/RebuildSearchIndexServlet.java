@@ -0,0 +1,56 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.service.SearchIndexService;
+import com.googlecode.objectify.Key;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * A servlet for indexing the Conferences and Sessions created before the search index existed.
+ * Only the keys are read here, the documents are indexed by tasks of the index-queue. It is
+ * safe to run it several times, the postings are rewritten.
+ */
+@SuppressWarnings("serial")
+public class RebuildSearchIndexServlet extends HttpServlet {
+
+    private static final Logger LOG = Logger.getLogger(RebuildSearchIndexServlet.class.getName());
+
+    /** How many keys are enqueued at once. */
+    private static final int BATCH_SIZE = 1000;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        int total = 0;
+        List<Key<?>> documentKeys = new ArrayList<>(BATCH_SIZE);
+        for (Class<?> kind : new Class<?>[] {Conference.class, Session.class}) {
+            for (Key<?> documentKey : ofy().load().type(kind).keys()) {
+                documentKeys.add(documentKey);
+                if (documentKeys.size() >= BATCH_SIZE) {
+                    SearchIndexService.enqueue(documentKeys);
+                    total += documentKeys.size();
+                    documentKeys.clear();
+                }
+            }
+        }
+        SearchIndexService.enqueue(documentKeys);
+        total += documentKeys.size();
+        LOG.info("Enqueued the indexing of " + total + " documents.");
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.devrel.training.conference.servlet;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceSummary;
+import com.google.devrel.training.conference.service.ConferenceQueryCache;
+import com.google.devrel.training.conference.service.SeatCounterService;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.cmd.Query;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+/**
+ * A servlet for reconciling Conference.seatsAvailable with the sum of its SeatShards.
+ * The denormalized value keeps the seatsAvailable queries (announcements, conference filters)
+ * working while registrations only write the shards.
+ *
+ * Each request reconciles a chunk of conferences and enqueues the next chunk with its cursor,
+ * so a run is spread over tasks instead of reading the whole kind in the cron request.
+ */
+@SuppressWarnings("serial")
+public class ReconcileSeatsServlet extends HttpServlet {
+
+    private static final Logger LOG = Logger.getLogger(ReconcileSeatsServlet.class.getName());
+
+    private static final String RECONCILE_URL = "/tasks/reconcile_seats";
+
+    /** How many conferences are reconciled by a request. */
+    private static final int CHUNK_SIZE = 200;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Query<Conference> query = ofy().load().type(Conference.class)
+                .limit(CHUNK_SIZE).chunk(CHUNK_SIZE);
+        String cursor = request.getParameter("cursor");
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Conference> iterator = query.iterator();
+        int count = 0;
+        int reconciled = 0;
+        while (iterator.hasNext()) {
+            Conference conference = iterator.next();
+            count++;
+            // Conferences stored before the seats were sharded get their shards now.
+            SeatCounterService.ensureShards(conference);
+            final int seatsAvailable = SeatCounterService.sumSeatsAvailable(
+                    SeatCounterService.loadShards(conference));
+            if (seatsAvailable == conference.getSeatsAvailable()) {
+                continue;
+            }
+            // Reload in a transaction so concurrent updates to the Conference are not overwritten.
+            final Key<Conference> conferenceKey = Key.create(conference.getWebsafeKey());
+            ofy().transact(new VoidWork() {
+                @Override
+                public void vrun() {
+                    Conference fresh = ofy().load().key(conferenceKey).now();
+                    fresh.reconcileSeatsAvailable(seatsAvailable);
+                    ofy().save().entities(fresh, new ConferenceSummary(fresh)).now();
+                }
+            });
+            reconciled++;
+        }
+        if (count == CHUNK_SIZE) {
+            QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(RECONCILE_URL)
+                    .param("cursor", iterator.getCursor().toWebSafeString()));
+        }
+        // The reconciled conferences and their shards are not needed anymore.
+        ofy().clear();
+        LOG.info("Reconciled seatsAvailable of " + reconciled + " of " + count + " conferences.");
+        if (reconciled > 0) {
+            ConferenceQueryCache.invalidate();
+        }
+
+        // Set the response status to 204 which means
+        // the request was successful but there's no data to send back
+        response.setStatus(204);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        doGet(request, response);
+    }
+}
@@ -1,18 +1,12 @@
 package com.google.devrel.training.conference.servlet;
 
-import com.google.appengine.api.utils.SystemProperty;
+import com.google.devrel.training.conference.service.EmailService;
 
 import java.io.IOException;
-import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Transport;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -20,6 +14,8 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * A servlet for sending a notification e-mail.
+ * The notifications are now batched by EmailService, this only drains the confirmation tasks
+ * enqueued before.
  */
 public class SendConfirmationEmailServlet extends HttpServlet {
 
@@ -31,19 +27,9 @@ public class SendConfirmationEmailServlet extends HttpServlet {
             throws ServletException, IOException {
         String email = request.getParameter("email");
         String conferenceInfo = request.getParameter("conferenceInfo");
-        Properties props = new Properties();
-        Session session = Session.getDefaultInstance(props, null);
         String body = "Hi, you have created a following conference.\n" + conferenceInfo;
         try {
-            Message message = new MimeMessage(session);
-            InternetAddress from = new InternetAddress(
-                    String.format("noreply@%s.appspotmail.com",
-                            SystemProperty.applicationId.get()), "Conference Central");
-            message.setFrom(from);
-            message.addRecipient(Message.RecipientType.TO, new InternetAddress(email, ""));
-            message.setSubject("You created a new Conference!");
-            message.setText(body);
-            Transport.send(message);
+            EmailService.send(email, "You created a new Conference!", body);
         } catch (MessagingException e) {
             LOG.log(Level.WARNING, String.format("Failed to send an mail to %s", email), e);
             throw new RuntimeException(e);
@@ -3,15 +3,15 @@ package com.google.devrel.training.conference.spi;
 import com.google.api.server.spi.config.Api;
 import com.google.api.server.spi.config.ApiMethod;
 import com.google.api.server.spi.config.ApiMethod.HttpMethod;
+import com.google.api.server.spi.config.Nullable;
+import com.google.api.server.spi.response.BadRequestException;
+import com.google.api.server.spi.response.CollectionResponse;
 import com.google.api.server.spi.response.ConflictException;
 import com.google.api.server.spi.response.ForbiddenException;
 import com.google.api.server.spi.response.NotFoundException;
 import com.google.api.server.spi.response.UnauthorizedException;
-import com.google.appengine.api.memcache.MemcacheService;
-import com.google.appengine.api.memcache.MemcacheServiceFactory;
-import com.google.appengine.api.taskqueue.Queue;
-import com.google.appengine.api.taskqueue.QueueFactory;
-import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.users.User;
 import com.google.devrel.training.conference.Constants;
 import com.google.devrel.training.conference.domain.*;
@@ -20,18 +20,44 @@ import com.google.devrel.training.conference.form.ConferenceQueryForm;
 import com.google.devrel.training.conference.form.ProfileForm;
 import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
 import com.google.devrel.training.conference.form.SessionForm;
+import com.google.devrel.training.conference.form.SessionsForm;
+import com.google.devrel.training.conference.service.AnnouncementCache;
+import com.google.devrel.training.conference.service.ConditionalRequests;
+import com.google.devrel.training.conference.service.ConferenceQueryCache;
+import com.google.devrel.training.conference.service.ConferenceResponseAssembler;
+import com.google.devrel.training.conference.service.EmailService;
+import com.google.devrel.training.conference.service.FeaturedSpeakerService;
+import com.google.devrel.training.conference.service.NotModifiedException;
+import com.google.devrel.training.conference.service.ProfileMigration;
+import com.google.devrel.training.conference.service.RegistrationEventService;
+import com.google.devrel.training.conference.service.SearchIndexService;
+import com.google.devrel.training.conference.service.SeatCounterService;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.Result;
 import com.googlecode.objectify.Work;
 import com.googlecode.objectify.cmd.Query;
+import com.googlecode.objectify.cmd.QueryKeys;
 
 import javax.inject.Named;
+import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import static com.google.devrel.training.conference.service.OfyService.factory;
+import static com.google.devrel.training.conference.service.OfyService.keysAsync;
+import static com.google.devrel.training.conference.service.OfyService.loadAsync;
 import static com.google.devrel.training.conference.service.OfyService.ofy;
 
 /**
@@ -46,6 +72,17 @@ public class ConferenceApi {
 
     private static final Logger LOG = Logger.getLogger(ConferenceApi.class.getName());
 
+    /** How many shards a registration tries before giving up. */
+    private static final int MAX_SHARD_ATTEMPTS = SeatCounterService.DEFAULT_SHARD_COUNT;
+
+    private static final String ALREADY_REGISTERED = "Already registered";
+
+    /** How many sessions createSessions takes, each one puts a Session and a SessionName. */
+    private static final int MAX_SESSIONS_PER_BATCH = 200;
+
+    /** Reason used when the picked SeatShard can't take the change anymore. */
+    private static final String SHARD_EXHAUSTED = "Shard exhausted";
+
     /**
      * Get the display name from the user's email. For example, if the email is
      * lemoncake@example.com, then the display name becomes "lemoncake."
@@ -151,6 +188,25 @@ public class ConferenceApi {
         return profile;
     }
 
+    /**
+     * Starts loading the user's Profile, so it overlaps with the other reads of the endpoint.
+     * @param user The user to get the Id
+     * @return the pending Profile, see migrateProfile.
+     */
+    private static Result<Profile> loadProfileAsync(User user) {
+        return loadAsync(Key.create(Profile.class, user.getUserId()));
+    }
+
+    /**
+     * Moves the registrations and the wishlist still stored on the user's Profile to
+     * Registration and WishlistEntry entities. Called outside of transactions, before reading them.
+     * @param profile The pending Profile of the user.
+     * @return true if the Profile was migrated, so reads of its children must be run again.
+     */
+    private static boolean migrateProfile(Result<Profile> profile) {
+        return profile.now() != null && ProfileMigration.migrate(profile.now());
+    }
+
     /**
      * Creates a new Conference object and stores it to the datastore.
      *
@@ -191,17 +247,21 @@ public class ConferenceApi {
                 // Fetch user's Profile.
                 Profile profile = getProfileFromUser(user);
                 Conference conference = new Conference(conferenceId, userId, conferenceForm);
-                // Save Conference and Profile.
-                ofy().save().entities(conference, profile).now();
-                // Add to the queue the Transaction and Task to execute
-                final Queue queue = QueueFactory.getQueue("email-queue");
-                queue.add(ofy().getTransaction(),
-                        TaskOptions.Builder.withUrl("/tasks/send_confirmation_email")
-                                .param("email", profile.getMainEmail())
-                                .param("conferenceInfo", conference.toString()));
+                // Split the seats over SeatShards, so registrations don't contend on the Conference.
+                List<SeatShard> seatShards = SeatCounterService.createShards(conference);
+                // Save Conference, its listing summary, Profile and the seat shards.
+                ofy().save().entities(conference, new ConferenceSummary(conference), profile).now();
+                ofy().save().entities(seatShards).now();
+                // Enqueue the confirmation with the Transaction, it is sent in a batch
+                EmailService.enqueue(profile.getMainEmail(), "You created a new Conference!",
+                        "Hi, you have created a following conference.\n" + conference.toString());
+                // Index the conference for the searches once it is committed.
+                SearchIndexService.enqueue(Collections.singletonList(conferenceKey));
                 return conference;
             }
         });
+        // The new conference may show up in any of the cached query pages.
+        ConferenceQueryCache.invalidate();
 
         return conference;
     }
@@ -212,38 +272,207 @@ public class ConferenceApi {
             path = "queryConferences_nofilters",
             httpMethod = HttpMethod.POST
     )
-    public List<Conference> queryConferences_nofilters() {
-        // Find all entities of type Conference
-        Query<Conference> query = ofy().load().type(Conference.class).order("name");
-
-        return query.list();
+    public CollectionResponse<Conference> queryConferences_nofilters(
+            @Nullable @Named("pageSize") final Integer pageSize,
+            @Nullable @Named("cursor") final String cursor) throws BadRequestException {
+        // Find all entities of type Conference, one page at a time
+        ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm()
+                .page(pageSize == null ? 0 : pageSize, cursor);
+        return fetchConferencePage(conferenceQueryForm);
     }
 
     /**
-     * Queries against the datastore with the given filters and returns the result.
+     * Queries against the datastore with the given filters and returns a page of the result.
      *
      * Normally this kind of method is supposed to get invoked by a GET HTTP method,
      * but we do it with POST, in order to receive conferenceQueryForm Object via the POST body.
      *
-     * @param conferenceQueryForm A form object representing the query.
-     * @return A List of Conferences that match the query.
+     * @param conferenceQueryForm A form object representing the query and the page to fetch.
+     * @return A page of Conferences that match the query, with the cursor of the next page.
+     * @throws BadRequestException when the cursor is malformed or from another query.
      */
     @ApiMethod(
             name = "queryConferences",
             path = "queryConferences",
             httpMethod = HttpMethod.POST
     )
-    public List<Conference> queryConferences(ConferenceQueryForm conferenceQueryForm) {
-        Iterable<Conference> conferenceIterable = conferenceQueryForm.getQuery();
-        List<Conference> result = new ArrayList<>(0);
-        List<Key<Profile>> organizersKeyList = new ArrayList<>(0);
-        for (Conference conference : conferenceIterable) {
-            organizersKeyList.add(Key.create(Profile.class, conference.getOrganizerUserId()));
-            result.add(conference);
-        }
-        // To avoid separate datastore gets for each Conference, pre-fetch the Profiles.
-        ofy().load().keys(organizersKeyList);
-        return result;
+    public CollectionResponse<Conference> queryConferences(ConferenceQueryForm conferenceQueryForm)
+            throws BadRequestException {
+        return fetchConferencePage(conferenceQueryForm);
+    }
+
+    /**
+     * Queries like queryConferences, but returns only what a listing card shows.
+     *
+     * The query is run keys-only and the ConferenceSummaries of the page are read with one batch
+     * get, so the description, the topics and the organizer are neither loaded nor sent.
+     *
+     * @param conferenceQueryForm A form object representing the query and the page to fetch.
+     * @return A page of ConferenceSummaries that match the query, with the cursor of the next page.
+     * @throws BadRequestException when the cursor is malformed or from another query.
+     */
+    @ApiMethod(
+            name = "queryConferenceSummaries",
+            path = "queryConferenceSummaries",
+            httpMethod = HttpMethod.POST
+    )
+    public CollectionResponse<ConferenceSummary> queryConferenceSummaries(
+            ConferenceQueryForm conferenceQueryForm) throws BadRequestException {
+        try {
+            return fetchSummaryPage(conferenceQueryForm);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static CollectionResponse<ConferenceSummary> fetchSummaryPage(
+            ConferenceQueryForm conferenceQueryForm) {
+        // The pages of keys are shared with queryConferences.
+        ConferenceQueryCache.Lookup lookup = ConferenceQueryCache.lookup(conferenceQueryForm);
+        List<Key<Conference>> conferenceKeys;
+        String nextPageToken;
+        if (lookup.getPage() != null) {
+            conferenceKeys = lookup.getPage().getConferenceKeys();
+            nextPageToken = lookup.getPage().getNextPageToken();
+        } else if (conferenceQueryForm.hasPostFilters()) {
+            // The filters applied in memory need the entities.
+            List<Conference> conferences = new ArrayList<>(conferenceQueryForm.getPageSize());
+            nextPageToken = collectPage(conferenceQueryForm, conferences);
+            conferenceKeys = new ArrayList<>(conferences.size());
+            for (Conference conference : conferences) {
+                conferenceKeys.add(Key.<Conference>create(conference.getWebsafeKey()));
+            }
+            lookup.storeKeys(conferenceKeys, nextPageToken);
+        } else {
+            QueryResultIterator<Key<Conference>> iterator =
+                    conferenceQueryForm.getQuery().keys().iterator();
+            conferenceKeys = new ArrayList<>(conferenceQueryForm.getPageSize());
+            while (iterator.hasNext()) {
+                conferenceKeys.add(iterator.next());
+            }
+            // A short page means the query is exhausted.
+            nextPageToken = conferenceKeys.size() < conferenceQueryForm.getPageSize()
+                    ? null : conferenceQueryForm.nextPageToken(iterator.getCursor());
+            lookup.storeKeys(conferenceKeys, nextPageToken);
+        }
+        return CollectionResponse.<ConferenceSummary>builder()
+                .setItems(ConferenceResponseAssembler.loadSummaries(conferenceKeys))
+                .setNextPageToken(nextPageToken)
+                .build();
+    }
+
+    /**
+     * Searches the names, descriptions and topics of the conferences and the names and
+     * highlights of their sessions, see SearchIndexService.
+     *
+     * @param query The words to search, a conference matches if it has any of them.
+     * @param pageSize The maximum number of conferences to return.
+     * @param cursor The cursor returned with the previous page, or null.
+     * @return A page of Conferences, the best matches first, with the cursor of the next page.
+     * @throws BadRequestException when the cursor is malformed.
+     */
+    @ApiMethod(
+            name = "searchConferences",
+            path = "searchConferences",
+            httpMethod = HttpMethod.GET
+    )
+    public CollectionResponse<Conference> searchConferences(
+            @Named("query") final String query,
+            @Nullable @Named("pageSize") final Integer pageSize,
+            @Nullable @Named("cursor") final String cursor) throws BadRequestException {
+        List<Key<Conference>> ranking = SearchIndexService.rank(query);
+        int size = new ConferenceQueryForm().page(pageSize == null ? 0 : pageSize, null)
+                .getPageSize();
+        // The ranking is cached, so the cursor is the offset of the page in it.
+        int offset;
+        try {
+            offset = cursor == null || cursor.isEmpty() ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+        offset = Math.max(0, Math.min(offset, ranking.size()));
+        int end = Math.min(offset + size, ranking.size());
+        Map<Key<Conference>, Conference> loaded =
+                ofy().load().keys(ranking.subList(offset, end));
+        List<Conference> result = new ArrayList<>(end - offset);
+        for (Key<Conference> conferenceKey : ranking.subList(offset, end)) {
+            Conference conference = loaded.get(conferenceKey);
+            if (conference != null) {
+                result.add(conference);
+            }
+        }
+        ConferenceResponseAssembler.withOrganizerDisplayNames(result);
+        return CollectionResponse.<Conference>builder()
+                .setItems(result)
+                .setNextPageToken(end < ranking.size() ? String.valueOf(end) : null)
+                .build();
+    }
+
+    /**
+     * Runs the query of the form and collects a single page of the result.
+     *
+     * @param conferenceQueryForm A form object representing the query and the page to fetch.
+     * @return A page of Conferences, nextPageToken is null when there are no more results.
+     * @throws BadRequestException when the cursor is malformed or from another query.
+     */
+    private static CollectionResponse<Conference> fetchConferencePage(
+            ConferenceQueryForm conferenceQueryForm) throws BadRequestException {
+        try {
+            return collectConferencePage(conferenceQueryForm);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static CollectionResponse<Conference> collectConferencePage(
+            ConferenceQueryForm conferenceQueryForm) {
+        // Hot searches are served from the query cache, without running the query.
+        ConferenceQueryCache.Lookup lookup = ConferenceQueryCache.lookup(conferenceQueryForm);
+        List<Conference> result;
+        String nextPageToken;
+        if (lookup.getPage() != null) {
+            result = lookup.getPage().loadConferences();
+            nextPageToken = lookup.getPage().getNextPageToken();
+        } else {
+            result = new ArrayList<>(conferenceQueryForm.getPageSize());
+            nextPageToken = collectPage(conferenceQueryForm, result);
+            lookup.store(result, nextPageToken);
+        }
+        // To avoid separate datastore gets for each Conference, resolve the organizers in batch.
+        ConferenceResponseAssembler.withOrganizerDisplayNames(result);
+        return CollectionResponse.<Conference>builder()
+                .setItems(result)
+                .setNextPageToken(nextPageToken)
+                .build();
+    }
+
+    /**
+     * Runs the query of the form and collects the conferences of a page that pass the filters
+     * applied in memory.
+     *
+     * The query streams at most getScanLimit conferences, so a page stops when it is full or when
+     * the scan budget runs out, possibly short or empty. Either way the next page continues from
+     * the cursor of the last conference read.
+     *
+     * @param conferenceQueryForm A form object representing the query and the page to fetch.
+     * @param result Where the conferences of the page are added.
+     * @return the cursor of the next page, null when the query is exhausted.
+     */
+    private static String collectPage(ConferenceQueryForm conferenceQueryForm,
+                                      List<Conference> result) {
+        int pageSize = conferenceQueryForm.getPageSize();
+        QueryResultIterator<Conference> iterator = conferenceQueryForm.getQuery().iterator();
+        int scanned = 0;
+        while (result.size() < pageSize && iterator.hasNext()) {
+            Conference conference = iterator.next();
+            scanned++;
+            if (conferenceQueryForm.matches(conference)) {
+                result.add(conference);
+            }
+        }
+        // Reading less than the limit means the query is exhausted.
+        return result.size() < pageSize && scanned < conferenceQueryForm.getScanLimit()
+                ? null : conferenceQueryForm.nextPageToken(iterator.getCursor());
     }
 
 /*
@@ -299,9 +528,10 @@ public class ConferenceApi {
         }
         String userId = user.getUserId();
         Key<Profile> userKey = Key.create(Profile.class, userId);
-        return ofy().load().type(Conference.class)
+        List<Conference> conferences = ofy().load().type(Conference.class)
                 .ancestor(userKey)
                 .order("name").list();
+        return ConferenceResponseAssembler.withOrganizerDisplayNames(conferences);
     }
 
     /**
@@ -337,9 +567,14 @@ public class ConferenceApi {
     /**
      * Returns a Conference object with the given conferenceId.
      *
+     * The response changes with the Conference, its seats and its organizer's display name, a
+     * client having it already gets a 304. Only the ETag is a validator, the seats and the
+     * Profile have no date.
      * @param websafeConferenceKey The String representation of the Conference Key.
+     * @param request The HTTP request, for its conditional headers. May be null.
      * @return a Conference object with the given conferenceId.
      * @throws NotFoundException when there is no Conference with the given conferenceId.
+     * @throws NotModifiedException when the client has the Conference already.
      */
     @ApiMethod(
             name = "getConference",
@@ -347,13 +582,21 @@ public class ConferenceApi {
             httpMethod = HttpMethod.GET
     )
     public Conference getConference(
-            @Named("websafeConferenceKey") final String websafeConferenceKey)
-            throws NotFoundException {
+            @Named("websafeConferenceKey") final String websafeConferenceKey,
+            final HttpServletRequest request)
+            throws NotFoundException, NotModifiedException {
         Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
         Conference conference = ofy().load().key(conferenceKey).now();
         if (conference == null) {
             throw new NotFoundException("No Conference found with key: " + websafeConferenceKey);
         }
+        // The stored seatsAvailable is only reconciled periodically, serve the live value
+        // from the memcached sum of the shards.
+        conference.reconcileSeatsAvailable(SeatCounterService.getSeatsAvailable(conference));
+        conference.setOrganizer(ofy().load().key(conference.getProfileKey()).now());
+        ConditionalRequests.check(request, ConditionalRequests.etag(Arrays.asList(
+                websafeConferenceKey, conference.getLastModified(),
+                conference.getSeatsAvailable(), conference.getOrganizerDisplayName())), null);
         return conference;
     }
 
@@ -382,68 +625,88 @@ public class ConferenceApi {
         // Get the userId
         final String userId = user.getUserId();
 
-        WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
-            @Override
-            public WrappedBoolean run() {
-                try {
-
-                    // Get the conference key
-                    // Will throw ForbiddenException if the key cannot be created
-                    Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
-
-                    // Get the Conference entity from the datastore
-                    Conference conference = ofy().load().key(conferenceKey).now();
+        // The Profile is fetched while the Conference is loaded.
+        Result<Profile> profile = loadProfileAsync(user);
+        final Conference conference = loadConference(websafeConferenceKey);
+        SeatCounterService.ensureShards(conference);
+        migrateProfile(profile);
+        final Key<Registration> registrationKey =
+                Registration.createKey(userId, websafeConferenceKey);
+
+        // Pick a random shard with seats left, so concurrent registrations spread over the shards.
+        // If the shard got exhausted meanwhile, try again with another one.
+        Set<Key<SeatShard>> exhaustedShards = new HashSet<>();
+        for (int attempt = 0; attempt < MAX_SHARD_ATTEMPTS; attempt++) {
+            final Key<SeatShard> shardKey =
+                    SeatCounterService.pickShardWithSeats(conference, exhaustedShards);
+            if (shardKey == null) {
+                break;
+            }
+            WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
+                @Override
+                public WrappedBoolean run() {
+                    try {
+                        // The Registration and the picked shard are read with one batch get.
+                        // Only the picked shard is read and written, not the Conference.
+                        Map<Key<Object>, Object> loaded =
+                                ofy().load().values(registrationKey, shardKey);
 
-                    // 404 when there is no Conference with the given conferenceId.
-                    if (conference == null) {
-                        return new WrappedBoolean (false,
-                                "No Conference found with key: "
-                                        + websafeConferenceKey);
-                    }
+                        // Has the user already registered to attend this conference?
+                        if (loaded.get(registrationKey) != null) {
+                            return new WrappedBoolean(false, ALREADY_REGISTERED);
+                        }
 
-                    // Get the user's Profile entity
-                    Profile profile = getProfileFromUser(user);
+                        SeatShard shard = (SeatShard) loaded.get(shardKey);
+                        if (shard == null || shard.getSeatsAvailable() <= 0) {
+                            return new WrappedBoolean(false, SHARD_EXHAUSTED);
+                        }
 
-                    // Has the user already registered to attend this conference?
-                    if (profile.getConferenceKeysToAttend().contains(
-                            websafeConferenceKey)) {
-                        return new WrappedBoolean (false, "Already registered");
-                    } else if (conference.getSeatsAvailable() <= 0) {
-                        return new WrappedBoolean (false, "No seats available");
-                    } else {
                         // All looks good, go ahead and book the seat
-                        profile.addToConferenceKeysToAttend(websafeConferenceKey);
-                        conference.bookSeats(1);
+                        Registration registration = new Registration(userId, websafeConferenceKey);
+                        shard.bookSeats(1);
 
-                        // Save the Conference and Profile entities
-                        ofy().save().entities(profile, conference).now();
+                        // Save the SeatShard and the small Registration entity
+                        ofy().save().entities(registration, shard).now();
+                        // The notifications and the announcement follow in a batch
+                        RegistrationEventService.registered(userId, websafeConferenceKey);
                         // We are booked!
                         return new WrappedBoolean(true, "Registration successful");
                     }
-
-                }
-                catch (Exception e) {
-                    return new WrappedBoolean(false, "Unknown exception");
-
+                    catch (Exception e) {
+                        return new WrappedBoolean(false, "Unknown exception");
+                    }
                 }
-            }
-        });
-        // if result is false
-        if (!result.getResult()) {
-            if (result.getReason().contains("No Conference found with key")) {
-                throw new NotFoundException (result.getReason());
-            }
-            else if (result.getReason() == "Already registered") {
+            });
+            if (result.getResult()) {
+                SeatCounterService.adjustCachedSeatsAvailable(conference, -1);
+                return result;
+            } else if (result.getReason().equals(SHARD_EXHAUSTED)) {
+                exhaustedShards.add(shardKey);
+            } else if (result.getReason().equals(ALREADY_REGISTERED)) {
                 throw new ConflictException("You have already registered");
-            }
-            else if (result.getReason() == "No seats available") {
-                throw new ConflictException("There are no seats available");
-            }
-            else {
+            } else {
                 throw new ForbiddenException("Unknown exception");
             }
         }
-        return result;
+        throw new ConflictException("There are no seats available");
+    }
+
+    /**
+     * Loads the Conference with the given websafe key.
+     *
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return the Conference.
+     * @throws NotFoundException when there is no Conference with the given key.
+     */
+    private static Conference loadConference(final String websafeConferenceKey)
+            throws NotFoundException {
+        Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+        Conference conference = ofy().load().key(conferenceKey).now();
+        // 404 when there is no Conference with the given conferenceId.
+        if (conference == null) {
+            throw new NotFoundException("No Conference found with key: " + websafeConferenceKey);
+        }
+        return conference;
     }
 
 
@@ -471,45 +734,66 @@ public class ConferenceApi {
             throw new UnauthorizedException("Authorization required");
         }
 
-        WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
-            @Override
-            public WrappedBoolean run() {
-                Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
-                Conference conference = ofy().load().key(conferenceKey).now();
-                // 404 when there is no Conference with the given conferenceId.
-                if (conference == null) {
-                    return new  WrappedBoolean(false,
-                            "No Conference found with key: " + websafeConferenceKey);
-                }
-
-                // Un-registering from the Conference.
-                Profile profile = getProfileFromUser(user);
-                if (profile.getConferenceKeysToAttend().contains(websafeConferenceKey)) {
-                    profile.unregisterFromConference(websafeConferenceKey);
+        // The Profile is fetched while the Conference is loaded.
+        Result<Profile> profile = loadProfileAsync(user);
+        final Conference conference = loadConference(websafeConferenceKey);
+        SeatCounterService.ensureShards(conference);
+        migrateProfile(profile);
+        final Key<Profile> profileKey = Key.create(Profile.class, user.getUserId());
+        final Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+        final Key<Registration> registrationKey =
+                Registration.createKey(user.getUserId(), websafeConferenceKey);
+
+        // Give the seat back to a random shard that has room for it.
+        Set<Key<SeatShard>> fullShards = new HashSet<>();
+        for (int attempt = 0; attempt < MAX_SHARD_ATTEMPTS; attempt++) {
+            final Key<SeatShard> shardKey =
+                    SeatCounterService.pickShardWithRoom(conference, fullShards);
+            if (shardKey == null) {
+                break;
+            }
+            WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
+                @Override
+                public WrappedBoolean run() {
+                    // The wishlist query runs while the Registration and the shard are read.
+                    Result<List<Key<WishlistEntry>>> wishlistKeys = keysAsync(
+                            ofy().load().type(WishlistEntry.class)
+                                    .ancestor(profileKey)
+                                    .filter("conferenceKey", conferenceKey)
+                                    .keys());
+                    Map<Key<Object>, Object> loaded =
+                            ofy().load().values(registrationKey, shardKey);
+
+                    // Un-registering from the Conference.
+                    if (loaded.get(registrationKey) == null) {
+                        return new WrappedBoolean(false, "You are not registered for this conference");
+                    }
+                    SeatShard shard = (SeatShard) loaded.get(shardKey);
+                    if (shard == null || shard.getSeatsAvailable() >= shard.getCapacity()) {
+                        return new WrappedBoolean(false, SHARD_EXHAUSTED);
+                    }
 
-                    //Remove all conference's sessionId from the wishlist for this user
-                    List<Long> sessionsLst =  conference.getSessionKeys();
-                    profile.removeSessionsFromWishList(sessionsLst );
+                    //Remove all conference's sessions from the wishlist for this user
+                    ofy().delete().keys(wishlistKeys.now()).now();
+                    ofy().delete().key(registrationKey).now();
 
-                    conference.giveBackSeats(1);
-                    ofy().save().entities(profile, conference).now();
+                    shard.giveBackSeats(1);
+                    ofy().save().entity(shard).now();
+                    // The notifications and the announcement follow in a batch
+                    RegistrationEventService.unregistered(user.getUserId(), websafeConferenceKey);
                     return new WrappedBoolean(true);
-                } else {
-                    return new WrappedBoolean(false, "You are not registered for this conference");
                 }
-            }
-        });
-        // if result is false
-        if (!result.getResult()) {
-            if (result.getReason().contains("No Conference found with key")) {
-                throw new NotFoundException (result.getReason());
-            }
-            else {
+            });
+            if (result.getResult()) {
+                SeatCounterService.adjustCachedSeatsAvailable(conference, 1);
+                return new WrappedBoolean(result.getResult());
+            } else if (result.getReason().equals(SHARD_EXHAUSTED)) {
+                fullShards.add(shardKey);
+            } else {
                 throw new ForbiddenException(result.getReason());
             }
         }
-        // NotFoundException is actually thrown here.
-        return new WrappedBoolean(result.getResult());
+        throw new ForbiddenException("The number of seats will exceeds the capacity.");
     }
 
     /**
@@ -530,21 +814,114 @@ public class ConferenceApi {
         if (user == null) {
             throw new UnauthorizedException("Authorization required");
         }
-        Profile profile = ofy().load().key(Key.create(Profile.class, user.getUserId())).now();
-        if (profile == null) {
-            throw new NotFoundException("Profile doesn't exist.");
+        // A keys-only ancestor query on the user's Registrations, then a batch get.
+        // The query runs while the Profile is fetched.
+        Result<Profile> profile = loadProfileAsync(user);
+        QueryKeys<Registration> registrationQuery = ofy().load().type(Registration.class)
+                .ancestor(Key.create(Profile.class, user.getUserId()))
+                .keys();
+        Result<List<Key<Registration>>> registrationKeys = keysAsync(registrationQuery);
+        if (migrateProfile(profile)) {
+            registrationKeys = keysAsync(registrationQuery);
         }
-        List<String> keyStringsToAttend = profile.getConferenceKeysToAttend();
-        List<Key<Conference>> keysToAttend = new ArrayList<>();
-        for (String keyString : keyStringsToAttend) {
-            keysToAttend.add(Key.<Conference>create(keyString));
+        List<Key<Conference>> keysToAttend = new ArrayList<>(registrationKeys.now().size());
+        for (Key<Registration> registrationKey : registrationKeys.now()) {
+            keysToAttend.add(Registration.getConferenceKey(registrationKey));
         }
-        return ofy().load().keys(keysToAttend).values();
+        return ConferenceResponseAssembler.withOrganizerDisplayNames(
+                ofy().load().keys(keysToAttend).values());
     }
 
 
     /**
-     * Gets the announcements aout of Memecache and sent it to the frontend
+     * Tells whether the user is registered to attend the specified Conference.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return Boolean true when the user is registered, otherwise false.
+     * @throws UnauthorizedException when the User object is null.
+     */
+    @ApiMethod(
+            name = "isRegisteredForConference",
+            path = "conference/{websafeConferenceKey}/registration",
+            httpMethod = HttpMethod.GET
+    )
+    public WrappedBoolean isRegisteredForConference(final User user,
+                                                    @Named("websafeConferenceKey")
+                                                    final String websafeConferenceKey)
+            throws UnauthorizedException {
+        // If not signed in, throw a 401 error.
+        if (user == null) {
+            throw new UnauthorizedException("Authorization required");
+        }
+        // The Profile and the Registration are fetched concurrently.
+        Key<Registration> registrationKey =
+                Registration.createKey(user.getUserId(), websafeConferenceKey);
+        Result<Profile> profile = loadProfileAsync(user);
+        Result<Registration> registration = loadAsync(registrationKey);
+        if (migrateProfile(profile)) {
+            registration = loadAsync(registrationKey);
+        }
+        return new WrappedBoolean(registration.now() != null);
+    }
+
+    /**
+     * Returns the Profiles of the users attending the specified Conference, one page at a time.
+     * Open only to the organizer of the conference.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @param pageSize The maximum number of attendees to return.
+     * @param cursor The cursor returned with the previous page, or null.
+     * @return A page of the attendees' Profiles, with the cursor of the next page.
+     * @throws UnauthorizedException when the User object is null.
+     * @throws NotFoundException when there is no Conference with the given key.
+     * @throws ForbiddenException when the user is not the organizer.
+     * @throws BadRequestException when the cursor is malformed.
+     */
+    @ApiMethod(
+            name = "getConferenceAttendees",
+            path = "conference/{websafeConferenceKey}/attendees",
+            httpMethod = HttpMethod.GET
+    )
+    public CollectionResponse<Profile> getConferenceAttendees(final User user,
+            @Named("websafeConferenceKey") final String websafeConferenceKey,
+            @Nullable @Named("pageSize") final Integer pageSize,
+            @Nullable @Named("cursor") final String cursor)
+            throws UnauthorizedException, NotFoundException, ForbiddenException,
+            BadRequestException {
+        // If not signed in, throw a 401 error.
+        if (user == null) {
+            throw new UnauthorizedException("Authorization required");
+        }
+        Conference conference = loadConference(websafeConferenceKey);
+        if (!conference.getOrganizerUserId().equals(user.getUserId())) {
+            throw new ForbiddenException("Only the organizer can list the attendees.");
+        }
+        int size = new ConferenceQueryForm().page(pageSize == null ? 0 : pageSize, null)
+                .getPageSize();
+        // The Registrations are children of the attendees' Profiles.
+        Query<Registration> query = ofy().load().type(Registration.class)
+                .filter("conferenceKey", Key.<Conference>create(websafeConferenceKey))
+                .limit(size);
+        if (cursor != null && !cursor.isEmpty()) {
+            query = query.startAt(parseCursor(cursor));
+        }
+        QueryResultIterator<Key<Registration>> iterator = query.keys().iterator();
+        List<Key<Profile>> attendeeKeys = new ArrayList<>(size);
+        while (iterator.hasNext()) {
+            attendeeKeys.add(iterator.next().<Profile>getParent());
+        }
+        return CollectionResponse.<Profile>builder()
+                .setItems(ofy().load().keys(attendeeKeys).values())
+                .setNextPageToken(attendeeKeys.size() < size
+                        ? null : iterator.getCursor().toWebSafeString())
+                .build();
+    }
+
+    /**
+     * Gets the announcements out of the instance cache, backed by memcache, and sends it to
+     * the frontend
      * @return The message to be announced
      */
     @ApiMethod(
@@ -553,14 +930,37 @@ public class ConferenceApi {
             httpMethod = HttpMethod.GET
     )
     public Announcement getAnnouncement(){
-        MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
-        Object message = memcacheService.get(Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+        String message = AnnouncementCache.get();
         if (message != null){
-            return new Announcement(message.toString());
+            return new Announcement(message);
         }
         return null;
     }
 
+    /**
+     * Gets the featured speakers of a conference out of memcache, the speakers giving more
+     * than one of its sessions.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return the featured speakers, the one with the most sessions first.
+     * @throws NotFoundException when the key is not a Conference key.
+     */
+    @ApiMethod(
+            name = "getFeaturedSpeaker",
+            path = "conference/{websafeConferenceKey}/featuredSpeaker",
+            httpMethod = HttpMethod.GET
+    )
+    public List<FeaturedSpeaker> getFeaturedSpeaker(
+            @Named("websafeConferenceKey") final String websafeConferenceKey)
+            throws NotFoundException {
+        Key<Conference> conferenceKey;
+        try {
+            conferenceKey = Key.create(websafeConferenceKey);
+        } catch (IllegalArgumentException e) {
+            throw new NotFoundException("No Conference found with key: " + websafeConferenceKey);
+        }
+        return FeaturedSpeakerService.get(conferenceKey);
+    }
+
     /**
      * This is an ugly workaround for null userId for Android clients.
      * @param user A User object injected by the cloud endpoints.
@@ -584,25 +984,40 @@ public class ConferenceApi {
 
     /// SESSION for the conference -----------------------------------
 
-    /** Given a conference, return all sessions
+    /** Given a conference, return all sessions. A client having them already gets a 304.
      * @param websafeConferenceKey
+     * @param request The HTTP request, for its conditional headers. May be null.
      * @return List The conference sessions found
      * @throws UnauthorizedException
      * @throws NotFoundException
+     * @throws NotModifiedException when the client has the sessions already.
      */
     @ApiMethod(
             name = "getConferenceSessions",
             path = "getConferenceSessions/{websafeConferenceKey}",
             httpMethod = HttpMethod.GET
     )
-    public List<Session> getConferenceSessions(@Named("websafeConferenceKey") final String websafeConferenceKey)
-            throws UnauthorizedException, NotFoundException {
+    public List<Session> getConferenceSessions(@Named("websafeConferenceKey") final String websafeConferenceKey,
+                                               final HttpServletRequest request)
+            throws UnauthorizedException, NotFoundException, NotModifiedException {
 
         Key<Conference> userKey = Key.create(websafeConferenceKey);
-        return ofy().load().type(Session.class)
+        // Keys only, the Sessions are then read with one batch get served by the caches.
+        List<Key<Session>> sessionKeys = ofy().load().type(Session.class)
                 .ancestor(userKey)
-                .list();
-
+                .keys().list();
+        List<Session> sessions = new ArrayList<>(ofy().load().keys(sessionKeys).values());
+
+        // The list changes when a Session is added or written.
+        List<Object> versions = new ArrayList<>(2 * sessions.size());
+        Date lastModified = null;
+        for (Session session : sessions) {
+            versions.add(session.getWebsafeKey());
+            versions.add(session.getLastModified());
+            lastModified = ConditionalRequests.latest(lastModified, session.getLastModified());
+        }
+        ConditionalRequests.check(request, ConditionalRequests.etag(versions), lastModified);
+        return sessions;
     }
 
     /** Given a conference, return all sessions of a specified type (eg lecture, keynote, workshop)
@@ -644,12 +1059,82 @@ public class ConferenceApi {
     public List<Session> getConferenceSessionsBySpeaker(final Speaker speaker)
             throws UnauthorizedException, NotFoundException {
 
-        Query<Session> query = ofy().load().type(Session.class)
-                .filter("speaker.firstName =", speaker.getFirstName())
-                .filter("speaker.lastName =", speaker.getLastName())
-                .order("name");
+        // The key of the speaker is known from the names, the sessions are a keys-only query
+        // and a batch get served by the Objectify caches.
+        List<Key<Session>> sessionKeys = ofy().load().type(Session.class)
+                .filter("speakerKey", speaker.getKey())
+                .keys().list();
+        List<Session> sessions = new ArrayList<>(ofy().load().keys(sessionKeys).values());
+        Collections.sort(sessions, new Comparator<Session>() {
+            @Override
+            public int compare(Session a, Session b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return sessions;
+    }
 
-        return query.list();
+    /**
+     * Lists the speakers by last name, one page at a time.
+     *
+     * @param pageSize The maximum number of speakers to return.
+     * @param cursor The cursor returned with the previous page, or null.
+     * @return A page of Speakers, with the cursor of the next page.
+     * @throws BadRequestException when the cursor is malformed.
+     */
+    @ApiMethod(
+            name = "getSpeakers",
+            path = "speakers",
+            httpMethod = HttpMethod.GET
+    )
+    public CollectionResponse<Speaker> getSpeakers(
+            @Nullable @Named("pageSize") final Integer pageSize,
+            @Nullable @Named("cursor") final String cursor) throws BadRequestException {
+        int size = new ConferenceQueryForm().page(pageSize == null ? 0 : pageSize, null)
+                .getPageSize();
+        Query<Speaker> query = ofy().load().type(Speaker.class).order("lastName").limit(size);
+        if (cursor != null && !cursor.isEmpty()) {
+            query = query.startAt(parseCursor(cursor));
+        }
+        QueryResultIterator<Speaker> iterator = query.iterator();
+        List<Speaker> speakers = new ArrayList<>(size);
+        while (iterator.hasNext()) {
+            speakers.add(iterator.next());
+        }
+        return CollectionResponse.<Speaker>builder()
+                .setItems(speakers)
+                .setNextPageToken(speakers.size() < size
+                        ? null : iterator.getCursor().toWebSafeString())
+                .build();
+    }
+
+    /**
+     * Parses the websafe cursor of a page.
+     * @throws BadRequestException when the cursor is malformed.
+     */
+    private static Cursor parseCursor(String cursor) throws BadRequestException {
+        try {
+            return Cursor.fromWebSafeString(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Writes the Speakers of some sessions. A Speaker is made of its key only, so writing one
+     * that exists changes nothing.
+     */
+    private static void saveSpeakers(List<SessionForm> sessionForms) {
+        Map<Key<Speaker>, Speaker> speakers = new LinkedHashMap<>();
+        for (SessionForm sessionForm : sessionForms) {
+            Speaker speaker = sessionForm == null ? null : sessionForm.getSpeaker();
+            if (speaker != null && !speaker.isEmpty()) {
+                speakers.put(speaker.getKey(), speaker);
+            }
+        }
+        if (!speakers.isEmpty()) {
+            ofy().save().entities(speakers.values()).now();
+        }
     }
 
 
@@ -679,6 +1164,9 @@ public class ConferenceApi {
         // Get the userId
         final String userId = user.getUserId();
 
+        // The Speaker is written first, so that the speakers of all the sessions are listed.
+        saveSpeakers(Collections.singletonList(sessionForm));
+
         WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
             @Override
             public WrappedBoolean run() {
@@ -688,8 +1176,12 @@ public class ConferenceApi {
                     // Will throw ForbiddenException if the key cannot be created
                     Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
 
-                    // Get the Conference entity from the datastore
-                    Conference conference = ofy().load().key(conferenceKey).now();
+                    // The Conference and the reservation of the name are read with one batch get
+                    Key<SessionName> sessionNameKey =
+                            SessionName.createKey(conferenceKey, sessionForm.getSessionName());
+                    Map<Key<Object>, Object> loaded =
+                            ofy().load().values(conferenceKey, sessionNameKey);
+                    Conference conference = (Conference) loaded.get(conferenceKey);
 
                     // 404 when there is no Conference with the given conferenceId.
                     if (conference == null) {
@@ -698,16 +1190,11 @@ public class ConferenceApi {
                         return new WrappedBoolean (false, "The user is not the organizer. It cannot add sessions.");
                     }
 
-                    // Get current sessions
-                    List<Session> sessions = getConferenceSessions(websafeConferenceKey);
-                    for(Session session: sessions){
-                        // Has the user already registered to attend this conference?
-                        if (session.getName().equals(sessionForm.getSessionName())) {
-                            return new WrappedBoolean (false, "Already registered");
-                        }
+                    // Is there already a session with this name?
+                    if (loaded.get(sessionNameKey) != null) {
+                        return new WrappedBoolean (false, "Already registered");
                     }
 
-
                     // Allocate a key for the session -- let App Engine allocate the ID
                     // Don't forget to include the parent Conference in the allocated ID
                     final Key<Session> sessionKey = factory().allocateId(conferenceKey, Session.class);
@@ -716,10 +1203,11 @@ public class ConferenceApi {
                     final long sessionId = sessionKey.getId();
                     Session session = new Session(sessionId, websafeConferenceKey, sessionForm);
 
-                    conference.addToSessionKeys(session.getId());
-
-                    // Save the Conference and Profile entities
-                    ofy().save().entities(session, conference).now();
+                    // Save the Session with its name, the Conference is not rewritten
+                    ofy().save().entities(session,
+                            new SessionName(sessionKey, session.getName())).now();
+                    SearchIndexService.enqueue(Collections.singletonList(sessionKey));
+                    FeaturedSpeakerService.enqueue(conferenceKey);
                     // Session is registered!
                     return new WrappedBoolean(true, "Registration successful");
 
@@ -747,6 +1235,123 @@ public class ConferenceApi {
     }
 
 
+    /**
+     * Creates the sessions of a whole agenda at once. Open only to the organizer of the conference.
+     *
+     * The ids are allocated in one range, and the sessions are written with their names in a
+     * single transaction, so either the whole agenda is created or none of it.
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param sessionsForm The sessions to create.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return the Sessions created, in the order of the form.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws NotFoundException when there is no Conference with the given key.
+     * @throws ConflictException when a session name is used twice or already taken.
+     * @throws ForbiddenException when the user is not the organizer, or a session is invalid.
+     */
+    @ApiMethod(
+            name = "createSessions",
+            path = "conference/{websafeConferenceKey}/registerSessions",
+            httpMethod = HttpMethod.POST
+    )
+    public List<Session> createSessions(final User user, final SessionsForm sessionsForm,
+                                        @Named("websafeConferenceKey") final String websafeConferenceKey)
+            throws UnauthorizedException, NotFoundException, ConflictException, ForbiddenException {
+
+        if (user == null) {
+            throw new UnauthorizedException("Authorization required");
+        }
+        final List<SessionForm> sessionForms = sessionsForm == null ? null : sessionsForm.getSessions();
+        if (sessionForms == null || sessionForms.isEmpty()) {
+            throw new ForbiddenException("No sessions to create");
+        }
+        if (sessionForms.size() > MAX_SESSIONS_PER_BATCH) {
+            throw new ForbiddenException(
+                    "At most " + MAX_SESSIONS_PER_BATCH + " sessions can be created at once");
+        }
+        final Key<Conference> conferenceKey;
+        try {
+            conferenceKey = Key.create(websafeConferenceKey);
+        } catch (IllegalArgumentException e) {
+            throw new NotFoundException("No Conference found with key: " + websafeConferenceKey);
+        }
+
+        // The names are checked against each other before any RPC.
+        final List<Key<?>> keysToLoad = new ArrayList<>(sessionForms.size() + 1);
+        keysToLoad.add(conferenceKey);
+        Set<String> names = new HashSet<>();
+        for (SessionForm sessionForm : sessionForms) {
+            if (sessionForm == null || sessionForm.getSessionName() == null) {
+                throw new ForbiddenException("The name is required");
+            }
+            if (!names.add(sessionForm.getSessionName())) {
+                throw new ConflictException(
+                        "Session name used twice: " + sessionForm.getSessionName());
+            }
+            keysToLoad.add(SessionName.createKey(conferenceKey, sessionForm.getSessionName()));
+        }
+
+        // One range of ids for the whole agenda.
+        final List<Object> entities = new ArrayList<>(2 * sessionForms.size());
+        final List<Session> sessions = new ArrayList<>(sessionForms.size());
+        final List<Key<Session>> createdKeys = new ArrayList<>(sessionForms.size());
+        Iterator<Key<Session>> sessionKeys =
+                factory().allocateIds(conferenceKey, Session.class, sessionForms.size()).iterator();
+        for (SessionForm sessionForm : sessionForms) {
+            Key<Session> sessionKey = sessionKeys.next();
+            Session session;
+            try {
+                session = new Session(sessionKey.getId(), websafeConferenceKey, sessionForm);
+            } catch (RuntimeException e) {
+                throw new ForbiddenException(
+                        "Invalid session " + sessionForm.getSessionName() + ": " + e);
+            }
+            sessions.add(session);
+            createdKeys.add(sessionKey);
+            entities.add(session);
+            entities.add(new SessionName(sessionKey, session.getName()));
+        }
+
+        // The Speakers are written first, so that the speakers of all the sessions are listed.
+        saveSpeakers(sessionForms);
+
+        WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
+            @Override
+            public WrappedBoolean run() {
+                // The Conference and the reservations of all the names with one batch get.
+                Map<Key<Object>, Object> loaded = ofy().load().values(keysToLoad);
+                Conference conference = (Conference) loaded.get(conferenceKey);
+                if (conference == null) {
+                    return new WrappedBoolean(false, "No Conference found with key: " + websafeConferenceKey);
+                } else if (!conference.getOrganizerUserId().equals(user.getUserId())) {
+                    return new WrappedBoolean(false, "The user is not the organizer. It cannot add sessions.");
+                }
+                for (Key<?> nameKey : keysToLoad.subList(1, keysToLoad.size())) {
+                    if (loaded.get(nameKey) != null) {
+                        return new WrappedBoolean(false, ALREADY_REGISTERED);
+                    }
+                }
+
+                // All the Sessions and their names with one batch put.
+                ofy().save().entities(entities).now();
+                SearchIndexService.enqueue(createdKeys);
+                FeaturedSpeakerService.enqueue(conferenceKey);
+                return new WrappedBoolean(true);
+            }
+        });
+
+        if (!result.getResult()) {
+            if (result.getReason().startsWith("No Conference found with key")) {
+                throw new NotFoundException(result.getReason());
+            } else if (result.getReason().equals(ALREADY_REGISTERED)) {
+                throw new ConflictException("A session with the same name already exists");
+            } else {
+                throw new ForbiddenException(result.getReason());
+            }
+        }
+        return sessions;
+    }
+
     /** adds the session to the user's list of sessions they are interested in attending */
     @ApiMethod(
             name = "addSessionToWishlist",
@@ -761,6 +1366,9 @@ public class ConferenceApi {
             throw new UnauthorizedException("Authorization required");
         }
 
+        migrateProfile(loadProfileAsync(user));
+        final String userId = user.getUserId();
+
         WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
             @Override
             public WrappedBoolean run() {
@@ -770,26 +1378,24 @@ public class ConferenceApi {
                     // Will throw ForbiddenException if the key cannot be created
                     Key<Session> sessionKey = Key.create(websafeSessionKey);
 
-                    // Get the Session entity from the datastore
-                    Session session = ofy().load().key(sessionKey ).now();
+                    // Get the Session and the WishlistEntry entities with one batch get
+                    Key<WishlistEntry> entryKey = WishlistEntry.createKey(userId, websafeSessionKey);
+                    Map<Key<Object>, Object> loaded = ofy().load().values(sessionKey, entryKey);
 
                     // 404 when there is no Conference with the given conferenceId.
-                    if (session == null) {
+                    if (loaded.get(sessionKey) == null) {
                         return new WrappedBoolean (false, "No Session found with key: " + websafeSessionKey);
                     }
 
-                    // Get the user's Profile entity
-                    Profile profile = getProfileFromUser(user);
-
-                    // Has the user already registered to attend this conference?
-                    if (profile.getSessionIDsToAttend().contains(session.getId())) {
+                    // Has the user already added this session to the wishlist?
+                    if (loaded.get(entryKey) != null) {
                         return new WrappedBoolean (false, "Already added");
                     } else {
                         // All looks good, go ahead and book the seat
-                        profile.addToSessionIDsToAttend(session.getId());
+                        WishlistEntry entry = new WishlistEntry(userId, websafeSessionKey);
 
-                        // Save the Conference and Profile entities
-                        ofy().save().entities(profile).now();
+                        // Save the small WishlistEntry entity
+                        ofy().save().entity(entry).now();
                         // We are booked!
                         return new WrappedBoolean(true, "Registration successful.");
                     }
@@ -823,25 +1429,27 @@ public class ConferenceApi {
             path = "session/wishlist/",
             httpMethod = HttpMethod.GET
     )
-    public List<Session> getSessionsInWishlist(final User user){
-
-        // Get the user's Profile entity
-        Profile profile = getProfileFromUser(user);
-
-        Iterable<Session> sessionIterable  = ofy().load().type(Session.class);
-        List<Session> result = new ArrayList<>(0);
-        List<Key<Session>> sessionKeyList = new ArrayList<>(0);
-        List<Long> sessionIds = profile.getSessionIDsToAttend();
-        for (Session session : sessionIterable) {
-            if(sessionIds.contains(session.getId())) {
-                sessionKeyList.add(Key.create(Session.class, session.getId()));
-                result.add(session);
-            }
+    public List<Session> getSessionsInWishlist(final User user) throws UnauthorizedException {
+        if (user == null) {
+            throw new UnauthorizedException("Authorization required");
         }
-        // To avoid separate datastore gets for each Conference, pre-fetch the Profiles.
-        ofy().load().keys(sessionKeyList);
-        return result;
 
+        // A keys-only ancestor query and a batch get, proportional only to the wishlist size.
+        // The query runs while the Profile is fetched.
+        Result<Profile> profile = loadProfileAsync(user);
+        QueryKeys<WishlistEntry> entryQuery = ofy().load().type(WishlistEntry.class)
+                .ancestor(Key.create(Profile.class, user.getUserId()))
+                .keys();
+        Result<List<Key<WishlistEntry>>> entryKeys = keysAsync(entryQuery);
+        // Wishlists stored on the Profile are moved to WishlistEntries on first use.
+        if (migrateProfile(profile)) {
+            entryKeys = keysAsync(entryQuery);
+        }
+        List<Key<Session>> sessionKeyList = new ArrayList<>(entryKeys.now().size());
+        for (Key<WishlistEntry> entryKey : entryKeys.now()) {
+            sessionKeyList.add(WishlistEntry.getSessionKey(entryKey));
+        }
+        return new ArrayList<>(ofy().load().keys(sessionKeyList).values());
     }
 
     /** Removes the session from the user’s list of sessions they are interested in attending */
@@ -858,15 +1466,13 @@ public class ConferenceApi {
         if(websafeSessionKey == null){
             return new WrappedBoolean(false, "Bad websafeSessionKey:" + websafeSessionKey);
         }
-        Profile profile = getProfileFromUser(user);
+        migrateProfile(loadProfileAsync(user));
         Key<Session> sessionKey = Key.create(websafeSessionKey);
+        Key<WishlistEntry> entryKey = WishlistEntry.createKey(user.getUserId(), websafeSessionKey);
 
-        List<Long> sessionLst = new ArrayList<>();
-        sessionLst.add(sessionKey.getId());
-
-        boolean isRemoved = profile.removeSessionsFromWishList(sessionLst);
+        boolean isRemoved = ofy().load().key(entryKey).now() != null;
         if(isRemoved){
-            ofy().save().entity(profile);
+            ofy().delete().key(entryKey).now();
         }else {
             return new WrappedBoolean(false, "Not ID "+sessionKey.getId()+" was found");
         }
@@ -287,6 +287,25 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
      */
     $scope.conferences = [];
 
+    /**
+     * Holds the cursor returned by queryConferences for fetching the next page, if any.
+     * @type {string}
+     */
+    $scope.nextPageToken = null;
+
+    /**
+     * Holds the filters sent with the query that returned nextPageToken, the cursor is only
+     * valid for them.
+     * @type {Array}
+     */
+    $scope.pageFilters = [];
+
+    /**
+     * The number of conferences fetched from the backend per request.
+     * @type {number}
+     */
+    $scope.fetchSize = 20;
+
     /**
      * Holds the state if offcanvas is enabled.
      *
@@ -408,6 +427,7 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
      */
     $scope.queryConferences = function () {
         $scope.submitted = false;
+        $scope.nextPageToken = null;
         if ($scope.selectedTab == 'ALL') {
             $scope.queryConferencesAll();
         } else if ($scope.selectedTab == 'YOU_HAVE_CREATED') {
@@ -419,19 +439,27 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
 
     /**
      * Invokes the conference.queryConferences API.
+     *
+     * @param cursor the cursor returned with the previous page, the first page is fetched when omitted.
      */
-    $scope.queryConferencesAll = function () {
+    $scope.queryConferencesAll = function (cursor) {
         var sendFilters = {
-            filters: []
+            filters: [],
+            pageSize: $scope.fetchSize
         }
-        for (var i = 0; i < $scope.filters.length; i++) {
-            var filter = $scope.filters[i];
-            if (filter.field && filter.operator && filter.value) {
-                sendFilters.filters.push({
-                    field: filter.field.enumValue,
-                    operator: filter.operator.enumValue,
-                    value: filter.value
-                });
+        if (cursor) {
+            sendFilters.cursor = cursor;
+            sendFilters.filters = $scope.pageFilters;
+        } else {
+            for (var i = 0; i < $scope.filters.length; i++) {
+                var filter = $scope.filters[i];
+                if (filter.field && filter.operator && filter.value) {
+                    sendFilters.filters.push({
+                        field: filter.field.enumValue,
+                        operator: filter.operator.enumValue,
+                        value: filter.value
+                    });
+                }
             }
         }
         $scope.loading = true;
@@ -452,16 +480,29 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                     $scope.alertStatus = 'success';
                     $log.info($scope.messages);
 
-                    $scope.conferences = [];
+                    if (!cursor) {
+                        $scope.conferences = [];
+                    }
                     angular.forEach(resp.items, function (conference) {
                         $scope.conferences.push(conference);
                     });
+                    $scope.nextPageToken = resp.nextPageToken || null;
+                    $scope.pageFilters = sendFilters.filters;
                 }
                 $scope.submitted = true;
             });
         });
     }
 
+    /**
+     * Appends the next page of the current query to the conferences.
+     */
+    $scope.loadMoreConferences = function () {
+        if ($scope.nextPageToken) {
+            $scope.queryConferencesAll($scope.nextPageToken);
+        }
+    };
+
     /**
      * Invokes the conference.getConferencesCreated method.
      */
@@ -575,21 +616,18 @@ conferenceApp.controllers.controller('ConferenceDetailCtrl', function ($scope, $
 
         $scope.loading = true;
         // If the user is attending the conference, updates the status message and available function.
-        gapi.client.conference.getProfile().execute(function (resp) {
+        gapi.client.conference.isRegisteredForConference({
+            websafeConferenceKey: $routeParams.websafeConferenceKey
+        }).execute(function (resp) {
             $scope.$apply(function () {
                 $scope.loading = false;
                 if (resp.error) {
-                    // Failed to get a user profile.
-                } else {
-                    var profile = resp.result;
-                    for (var i = 0; i < profile.conferenceKeysToAttend.length; i++) {
-                        if ($routeParams.websafeConferenceKey == profile.conferenceKeysToAttend[i]) {
-                            // The user is attending the conference.
-                            $scope.alertStatus = 'info';
-                            $scope.messages = 'You are attending this conference';
-                            $scope.isUserAttending = true;
-                        }
-                    }
+                    // Failed to get the registration.
+                } else if (resp.result && resp.result.result) {
+                    // The user is attending the conference.
+                    $scope.alertStatus = 'info';
+                    $scope.messages = 'You are attending this conference';
+                    $scope.isUserAttending = true;
                 }
             });
         });
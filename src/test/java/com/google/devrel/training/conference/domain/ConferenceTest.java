@@ -102,37 +102,13 @@ public class ConferenceTest {
     }
 
     @Test
-    public void testBookSeats() throws Exception {
+    public void testSetOrganizer() throws Exception {
         Conference conference = new Conference(ID, ORGANIZER_USER_ID, conferenceForm);
-        conference.bookSeats(1);
-        assertEquals(CAP - 1, conference.getSeatsAvailable());
-    }
-
-    @Test(expected = IllegalArgumentException.class)
-    public void testBookSeatsFailure() throws Exception {
-        Conference conference = new Conference(ID, ORGANIZER_USER_ID, conferenceForm);
-        conference.bookSeats(500);
-        assertEquals(0, conference.getSeatsAvailable());
-        // this will fail
-        conference.bookSeats(1);
-    }
-
-
-    @Test
-    public void testReturnSeats() throws Exception {
-        Conference conference = new Conference(ID, ORGANIZER_USER_ID, conferenceForm);
-        conference.bookSeats(1);
-        assertEquals(CAP - 1, conference.getSeatsAvailable());
-        conference.giveBackSeats(1);
-        assertEquals(CAP, conference.getSeatsAvailable());
-    }
-
-
-
-    @Test(expected = IllegalArgumentException.class)
-    public void testReturnSeatsFailure() throws Exception {
-        Conference conference = new Conference(ID, ORGANIZER_USER_ID, conferenceForm);
-        conference.giveBackSeats(1);
+        conference.setOrganizer(new Profile(ORGANIZER_USER_ID, "Student", "", null));
+        assertEquals("Student", conference.getOrganizerDisplayName());
+        // Without a Profile, the userId is used.
+        conference.setOrganizer(null);
+        assertEquals(ORGANIZER_USER_ID, conference.getOrganizerDisplayName());
     }
 
 }
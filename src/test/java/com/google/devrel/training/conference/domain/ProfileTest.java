@@ -2,6 +2,7 @@ package com.google.devrel.training.conference.domain;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
 import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
 import com.googlecode.objectify.Key;
 import org.junit.After;
@@ -73,4 +74,13 @@ public class ProfileTest {
         assertEquals(conferenceKeys, profile.getConferenceKeysToAttend());
     }
 
+    @Test
+    public void testClearMigratedKeys() throws Exception {
+        Key<Conference> conferenceKey = Key.create(Conference.class, 123L);
+        profile.addToConferenceKeysToAttend(conferenceKey.getString());
+        profile.clearMigratedKeys();
+        assertEquals(ImmutableList.of(), profile.getConferenceKeysToAttend());
+        assertEquals(ImmutableList.of(), profile.getSessionKeysToAttend());
+    }
+
 }
@@ -0,0 +1,33 @@
+package com.google.devrel.training.conference.domain;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the RegistrationDigest entity.
+ */
+public class RegistrationDigestTest {
+
+    @Test
+    public void testAdd() throws Exception {
+        RegistrationDigest digest = new RegistrationDigest("conference");
+        digest.add(true, "Ada");
+        digest.add(false, "Bob");
+        assertEquals(1, digest.getRegistered());
+        assertEquals(1, digest.getUnregistered());
+        assertEquals(Arrays.asList("+ Ada", "- Bob"), digest.getChanges());
+    }
+
+    @Test
+    public void testChangesAreCapped() throws Exception {
+        RegistrationDigest digest = new RegistrationDigest("conference");
+        for (int i = 0; i <= RegistrationDigest.MAX_CHANGES; i++) {
+            digest.add(true, "Attendee " + i);
+        }
+        assertEquals(RegistrationDigest.MAX_CHANGES + 1, digest.getRegistered());
+        assertEquals(RegistrationDigest.MAX_CHANGES, digest.getChanges().size());
+    }
+}
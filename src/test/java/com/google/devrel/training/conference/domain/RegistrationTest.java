@@ -0,0 +1,72 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googlecode.objectify.Key;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests for the Registration and WishlistEntry entities.
+ */
+public class RegistrationTest {
+
+    private static final String USER_ID = "123456789";
+
+    private Key<Conference> conferenceKey;
+
+    private Key<Session> sessionKey;
+
+    /**
+     * The helper here is intentionally use 0 for the percentage, since we test a global query.
+     */
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0));
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        conferenceKey = Key.create(Key.create(Profile.class, "organizer"), Conference.class, 123L);
+        sessionKey = Key.create(conferenceKey, Session.class, 456L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testRegistrationKey() throws Exception {
+        Registration registration = new Registration(USER_ID, conferenceKey.getString());
+        Key<Registration> registrationKey = Registration.createKey(USER_ID, conferenceKey.getString());
+        assertEquals(registrationKey.getName(), registration.getWebsafeConferenceKey());
+        assertEquals(Key.create(Profile.class, USER_ID), registrationKey.getParent());
+        assertEquals(conferenceKey, Registration.getConferenceKey(registrationKey));
+    }
+
+    @Test
+    public void testWishlistEntryKey() throws Exception {
+        WishlistEntry entry = new WishlistEntry(USER_ID, sessionKey.getString());
+        Key<WishlistEntry> entryKey = WishlistEntry.createKey(USER_ID, sessionKey.getString());
+        assertEquals(entryKey.getName(), entry.getWebsafeSessionKey());
+        assertEquals(conferenceKey, entry.getConferenceKey());
+        assertEquals(sessionKey, WishlistEntry.getSessionKey(entryKey));
+    }
+
+    @Test
+    public void testAttendeesQuery() throws Exception {
+        ofy().save().entity(new Registration(USER_ID, conferenceKey.getString())).now();
+        Key<Registration> registrationKey = ofy().load().type(Registration.class)
+                .filter("conferenceKey", conferenceKey)
+                .keys().first().now();
+        assertNotNull(registrationKey);
+        assertEquals(Key.create(Profile.class, USER_ID), registrationKey.getParent());
+    }
+}
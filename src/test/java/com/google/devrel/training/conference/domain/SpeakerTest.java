@@ -0,0 +1,34 @@
+package com.google.devrel.training.conference.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for Speaker POJO.
+ */
+public class SpeakerTest {
+
+    @Test
+    public void testNormalizedNames() throws Exception {
+        Speaker speaker = new Speaker("  Ada\t ", "Lovelace  King");
+        assertEquals("ada", speaker.getFirstName());
+        assertEquals("lovelace king", speaker.getLastName());
+        assertEquals(new Speaker("ADA", "lovelace king").getKey(), speaker.getKey());
+    }
+
+    @Test
+    public void testFromKey() throws Exception {
+        Speaker speaker = Speaker.fromKey(new Speaker("Ada", "Lovelace").getKey());
+        assertEquals("ada", speaker.getFirstName());
+        assertEquals("lovelace", speaker.getLastName());
+    }
+
+    @Test
+    public void testIsEmpty() throws Exception {
+        assertTrue(new Speaker(null, " ").isEmpty());
+        assertFalse(new Speaker(null, "Lovelace").isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.devrel.training.conference.form;
+
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceStatistics;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Operator;
+import com.google.devrel.training.conference.form.ConferenceQueryPlanner.Plan;
+import com.google.devrel.training.conference.form.ConferenceQueryPlanner.Strategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Tests for the conference query planner.
+ */
+public class ConferenceQueryPlannerTest {
+
+    private static final String USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+    private ConferenceStatistics statistics;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        // Most conferences are in the default city, few are about Cloud.
+        statistics = new ConferenceStatistics(new Date());
+        for (int i = 0; i < 100; i++) {
+            ConferenceForm conferenceForm = new ConferenceForm("Conference " + i, null,
+                    Collections.singletonList(i < 5 ? "Cloud" : "Web"),
+                    i < 90 ? "Default City" : "Tokyo", null, null, 100 * (i % 10));
+            statistics.add(new Conference(1000L + i, USER_ID, conferenceForm));
+        }
+        statistics.trim();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        helper.tearDown();
+    }
+
+    @Test
+    public void testLowSelectivityFilterInMemory() throws Exception {
+        // No index covers the three fields, the default city is checked in memory.
+        Filter city = new Filter(Field.CITY, Operator.EQ, "Default City");
+        Filter topic = new Filter(Field.TOPIC, Operator.EQ, "Cloud");
+        Filter maxAttendees = new Filter(Field.MAX_ATTENDEES, Operator.EQ, "100");
+        Plan plan = new ConferenceQueryPlanner(
+                Arrays.asList(city, maxAttendees, topic), 20, statistics).plan();
+        assertEquals(Strategy.IN_MEMORY_FILTER, plan.getStrategy());
+        assertEquals(Arrays.asList(maxAttendees, topic), plan.getPushedFilters());
+        assertEquals(Collections.singletonList(city), plan.getPostFilters());
+    }
+
+    @Test
+    public void testSelectiveFiltersInDatastore() throws Exception {
+        Filter city = new Filter(Field.CITY, Operator.EQ, "Tokyo");
+        Filter topic = new Filter(Field.TOPIC, Operator.EQ, "Cloud");
+        Plan plan = new ConferenceQueryPlanner(Arrays.asList(city, topic), 20, statistics).plan();
+        assertEquals(Strategy.COMPOSITE_INDEX, plan.getStrategy());
+        assertTrue(plan.getPostFilters().isEmpty());
+    }
+
+    @Test
+    public void testMergeJoinWithoutStatistics() throws Exception {
+        Filter cloud = new Filter(Field.TOPIC, Operator.EQ, "Cloud");
+        Filter web = new Filter(Field.TOPIC, Operator.EQ, "Web");
+        Plan plan = new ConferenceQueryPlanner(Arrays.asList(cloud, web), 20, null).plan();
+        assertEquals(Strategy.MERGE_JOIN, plan.getStrategy());
+        assertEquals(3L, plan.getMask());
+    }
+
+    @Test
+    public void testPinnedPlan() throws Exception {
+        Filter month = new Filter(Field.MONTH, Operator.NE, "6");
+        Filter maxAttendees = new Filter(Field.MAX_ATTENDEES, Operator.LTEQ, "1000");
+        ConferenceQueryPlanner planner =
+                new ConferenceQueryPlanner(Arrays.asList(maxAttendees, month), 20, null);
+        Plan plan = planner.plan();
+        assertEquals(Field.MAX_ATTENDEES, plan.getInequalityField());
+        assertEquals(Collections.singletonList(month), plan.getPostFilters());
+        assertEquals(plan.getPushedFilters(), planner.plan(plan.getMask()).getPushedFilters());
+        // The datastore can't run inequalities on two fields.
+        assertNull(planner.plan(3L));
+    }
+}
@@ -0,0 +1,336 @@
+package com.google.devrel.training.conference.loadtest;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.api.server.spi.response.ConflictException;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceSummary;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionName;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Operator;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.google.devrel.training.conference.service.SeatCounterService;
+import com.google.devrel.training.conference.spi.ConferenceApi;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the ConferenceApi endpoints against the local datastore stub.
+ *
+ * It seeds conferences, sessions, profiles and wishlists, then drives the endpoints from a pool
+ * of threads and prints the p50/p99 latency, the datastore RPCs per call and the contention
+ * retries of each endpoint. It is excluded from the default build, run it with:
+ *
+ *     mvn -P loadtest test
+ *
+ * The sizes can be changed with system properties, e.g. -Dloadtest.conferences=5000.
+ */
+public class ConferenceApiLoadTest {
+
+    private static final int CONFERENCES = Integer.getInteger("loadtest.conferences", 2000);
+
+    private static final int SESSIONS_PER_CONFERENCE =
+            Integer.getInteger("loadtest.sessionsPerConference", 5);
+
+    private static final int PROFILES = Integer.getInteger("loadtest.profiles", 2000);
+
+    private static final int WISHLIST_SIZE = Integer.getInteger("loadtest.wishlistSize", 10);
+
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 16);
+
+    private static final int CALLS_PER_ENDPOINT = Integer.getInteger("loadtest.calls", 1000);
+
+    /** Seats of the conferences hit by the registration storm, well below the number of users. */
+    private static final int HOT_CONFERENCE_CAP = 100;
+
+    private static final int HOT_CONFERENCES = 5;
+
+    private static final int CAP = 500;
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String ORGANIZER_USER_ID = "organizer";
+
+    private static final String[] CITIES = {"London", "Chicago", "San Francisco", "Tokyo", "Paris"};
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig()
+                            .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+                            .setDisableAutoTaskExecution(true));
+
+    private final Random random = new Random(42);
+
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+
+    private final List<String> conferenceKeys = new ArrayList<>();
+
+    private final List<String> hotConferenceKeys = new ArrayList<>();
+
+    private final List<String> sessionKeys = new ArrayList<>();
+
+    private final List<User> users = new ArrayList<>();
+
+    private ConferenceApi conferenceApi;
+
+    private ApiProxy.Environment environment;
+
+    private RpcCountingDelegate rpcCountingDelegate;
+
+    private ExecutorService executor;
+
+    /** A call to an endpoint, made on a worker thread. */
+    private interface EndpointCall {
+        void call() throws Exception;
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        helper.setUp();
+        environment = ApiProxy.getCurrentEnvironment();
+        rpcCountingDelegate = new RpcCountingDelegate(ApiProxy.getDelegate());
+        ApiProxy.setDelegate(rpcCountingDelegate);
+        conferenceApi = new ConferenceApi();
+        executor = Executors.newFixedThreadPool(THREADS);
+        seed();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        // The helper expects to find its own delegate.
+        ApiProxy.setDelegate(rpcCountingDelegate.getDelegate());
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    private void seed() {
+        Date startDate = new Date(1458864000000L);
+        Date endDate = new Date(1458950400000L);
+        List<Object> batch = new ArrayList<>();
+        batch.add(new Profile(ORGANIZER_USER_ID, "Organizer", "organizer@example.com",
+                TeeShirtSize.NOT_SPECIFIED));
+        for (int i = 0; i < CONFERENCES; i++) {
+            boolean hot = i < HOT_CONFERENCES;
+            ConferenceForm conferenceForm = new ConferenceForm("Conference " + i,
+                    "Load test conference " + i, ImmutableList.of("Topic " + i % 10),
+                    CITIES[i % CITIES.length], startDate, endDate, hot ? HOT_CONFERENCE_CAP : CAP);
+            Conference conference = new Conference(i + 1, ORGANIZER_USER_ID, conferenceForm);
+            batch.add(conference);
+            batch.add(new ConferenceSummary(conference));
+            batch.addAll(SeatCounterService.createShards(conference));
+            (hot ? hotConferenceKeys : conferenceKeys).add(conference.getWebsafeKey());
+            for (int j = 0; j < SESSIONS_PER_CONFERENCE; j++) {
+                SessionForm sessionForm = new SessionForm("Session " + j, "Highlights " + j,
+                        new Speaker("Speaker", String.valueOf(j)), SessionForm.SessionType.LECTURE,
+                        startDate, endDate);
+                Session session = new Session(j + 1, conference.getWebsafeKey(), sessionForm);
+                batch.add(session);
+                batch.add(new SessionName(Key.<Session>create(session.getWebsafeKey()),
+                        session.getName()));
+                sessionKeys.add(session.getWebsafeKey());
+            }
+            batch = flushIfFull(batch);
+        }
+        for (int i = 0; i < PROFILES; i++) {
+            String userId = "user" + i;
+            String email = userId + "@example.com";
+            users.add(new User(email, "example.com", userId));
+            batch.add(new Profile(userId, userId, email, TeeShirtSize.NOT_SPECIFIED));
+            for (int j = 0; j < WISHLIST_SIZE && !sessionKeys.isEmpty(); j++) {
+                batch.add(new WishlistEntry(userId, randomElement(sessionKeys)));
+            }
+            batch = flushIfFull(batch);
+        }
+        ofy().save().entities(batch).now();
+        ofy().clear();
+    }
+
+    private static List<Object> flushIfFull(List<Object> batch) {
+        if (batch.size() < BATCH_SIZE) {
+            return batch;
+        }
+        ofy().save().entities(batch).now();
+        ofy().clear();
+        return new ArrayList<>();
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        registrationStorm();
+        queryMix();
+        wishlistReads();
+
+        System.out.println("ConferenceApi load test: " + CONFERENCES + " conferences, "
+                + CONFERENCES * SESSIONS_PER_CONFERENCE + " sessions, " + PROFILES
+                + " profiles, " + THREADS + " threads");
+        for (EndpointStats endpointStats : stats.values()) {
+            System.out.println(endpointStats);
+            assertEquals(endpointStats.getEndpoint() + " had failures",
+                    0, endpointStats.getFailures());
+        }
+    }
+
+    /** Every user tries to register to every hot conference, which have far fewer seats. */
+    private void registrationStorm() throws Exception {
+        List<EndpointCall> calls = new ArrayList<>();
+        final EndpointStats registrations = stats("registerForConference");
+        for (final User user : users) {
+            for (final String websafeConferenceKey : hotConferenceKeys) {
+                calls.add(new EndpointCall() {
+                    @Override
+                    public void call() throws Exception {
+                        try {
+                            conferenceApi.registerForConference(user, websafeConferenceKey);
+                        } catch (ConflictException e) {
+                            // Sold out.
+                            registrations.incrementRejections();
+                        }
+                    }
+                });
+            }
+        }
+        run(registrations, calls);
+
+        // The storm must neither overbook nor lose seats.
+        for (String websafeConferenceKey : hotConferenceKeys) {
+            Conference conference = conferenceApi.getConference(websafeConferenceKey, null);
+            int registered = ofy().load().type(Registration.class)
+                    .filter("conferenceKey", Key.create(websafeConferenceKey))
+                    .keys().list().size();
+            assertEquals(Math.min(HOT_CONFERENCE_CAP, users.size()), registered);
+            assertEquals(HOT_CONFERENCE_CAP - registered,
+                    SeatCounterService.sumSeatsAvailable(SeatCounterService.loadShards(conference)));
+        }
+    }
+
+    /** Paged listing, filtered queries and single conference reads. */
+    private void queryMix() throws Exception {
+        List<EndpointCall> listCalls = new ArrayList<>();
+        List<EndpointCall> queryCalls = new ArrayList<>();
+        List<EndpointCall> getCalls = new ArrayList<>();
+        for (int i = 0; i < CALLS_PER_ENDPOINT; i++) {
+            listCalls.add(new EndpointCall() {
+                @Override
+                public void call() throws Exception {
+                    String cursor = conferenceApi.queryConferences_nofilters(null, null)
+                            .getNextPageToken();
+                    conferenceApi.queryConferences_nofilters(null, cursor);
+                }
+            });
+            final String city = CITIES[i % CITIES.length];
+            queryCalls.add(new EndpointCall() {
+                @Override
+                public void call() throws Exception {
+                    conferenceApi.queryConferences(new ConferenceQueryForm()
+                            .filter(new Filter(Field.CITY, Operator.EQ, city))
+                            .filter(new Filter(Field.MAX_ATTENDEES, Operator.GT, "10")));
+                }
+            });
+            final String websafeConferenceKey = randomElement(conferenceKeys);
+            getCalls.add(new EndpointCall() {
+                @Override
+                public void call() throws Exception {
+                    conferenceApi.getConference(websafeConferenceKey, null);
+                }
+            });
+        }
+        run(stats("queryConferences_nofilters"), listCalls);
+        run(stats("queryConferences"), queryCalls);
+        run(stats("getConference"), getCalls);
+    }
+
+    private void wishlistReads() throws Exception {
+        List<EndpointCall> calls = new ArrayList<>();
+        for (int i = 0; i < CALLS_PER_ENDPOINT; i++) {
+            final User user = randomElement(users);
+            calls.add(new EndpointCall() {
+                @Override
+                public void call() throws Exception {
+                    conferenceApi.getSessionsInWishlist(user);
+                }
+            });
+        }
+        run(stats("getSessionsInWishlist"), calls);
+    }
+
+    private EndpointStats stats(String endpoint) {
+        EndpointStats endpointStats = stats.get(endpoint);
+        if (endpointStats == null) {
+            endpointStats = new EndpointStats(endpoint);
+            stats.put(endpoint, endpointStats);
+        }
+        return endpointStats;
+    }
+
+    /** Runs the calls on the worker threads, each one as a separate request. */
+    private void run(final EndpointStats endpointStats, List<EndpointCall> calls)
+            throws Exception {
+        List<Future<Void>> futures = new ArrayList<>(calls.size());
+        for (final EndpointCall call : calls) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    ApiProxy.setEnvironmentForCurrentThread(environment);
+                    rpcCountingDelegate.setCurrentEndpoint(endpointStats);
+                    // Like the ObjectifyFilter does, start each request with an empty session cache.
+                    ofy().clear();
+                    long start = System.nanoTime();
+                    try {
+                        call.call();
+                    } catch (Exception e) {
+                        endpointStats.incrementFailures();
+                    } finally {
+                        endpointStats.recordLatency(System.nanoTime() - start);
+                        rpcCountingDelegate.setCurrentEndpoint(null);
+                        ApiProxy.clearEnvironmentForCurrentThread();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get(10, TimeUnit.MINUTES);
+        }
+        ofy().clear();
+    }
+
+    private <T> T randomElement(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+}
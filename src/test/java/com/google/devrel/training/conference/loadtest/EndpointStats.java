@@ -0,0 +1,104 @@
+package com.google.devrel.training.conference.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies and datastore activity recorded for one endpoint during a load test.
+ */
+class EndpointStats {
+
+    private final String endpoint;
+
+    private final List<Long> latenciesNanos = new ArrayList<>();
+
+    private final AtomicLong datastoreRpcs = new AtomicLong();
+
+    private final AtomicLong contentionRetries = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    synchronized void recordLatency(long nanos) {
+        latenciesNanos.add(nanos);
+    }
+
+    synchronized int getCalls() {
+        return latenciesNanos.size();
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the calls completed.
+     * @param fraction the percentile as a fraction, e.g. 0.99.
+     * @return the latency in nanoseconds, 0 when no call was recorded.
+     */
+    synchronized long percentileNanos(double fraction) {
+        if (latenciesNanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(latenciesNanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    void incrementDatastoreRpcs() {
+        datastoreRpcs.incrementAndGet();
+    }
+
+    long getDatastoreRpcs() {
+        return datastoreRpcs.get();
+    }
+
+    void incrementContentionRetries() {
+        contentionRetries.incrementAndGet();
+    }
+
+    long getContentionRetries() {
+        return contentionRetries.get();
+    }
+
+    /** Counts a call refused by the endpoint for a business reason, e.g. a sold out conference. */
+    void incrementRejections() {
+        rejections.incrementAndGet();
+    }
+
+    long getRejections() {
+        return rejections.get();
+    }
+
+    void incrementFailures() {
+        failures.incrementAndGet();
+    }
+
+    long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        int calls = getCalls();
+        return String.format("%-28s calls=%6d p50=%8.2fms p99=%8.2fms rpcs/call=%6.2f"
+                        + " contentionRetries=%5d rejections=%5d failures=%5d",
+                endpoint, calls,
+                toMillis(percentileNanos(0.50)), toMillis(percentileNanos(0.99)),
+                calls == 0 ? 0.0 : (double) getDatastoreRpcs() / calls,
+                getContentionRetries(), getRejections(), getFailures());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
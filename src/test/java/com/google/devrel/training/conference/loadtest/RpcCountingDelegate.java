@@ -0,0 +1,177 @@
+package com.google.devrel.training.conference.loadtest;
+
+import com.google.apphosting.api.ApiProxy;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An ApiProxy delegate that attributes the datastore RPCs made on a thread to the endpoint
+ * being measured on that thread, and counts the commits that failed on contention.
+ * Objectify retries those transactions, so each one is a contention retry.
+ */
+class RpcCountingDelegate implements ApiProxy.Delegate<ApiProxy.Environment> {
+
+    private static final String DATASTORE_PACKAGE = "datastore_v3";
+
+    private static final String COMMIT_METHOD = "Commit";
+
+    /** The datastore_v3 error code of a commit that lost against a concurrent transaction. */
+    private static final int CONCURRENT_TRANSACTION = 2;
+
+    private final ApiProxy.Delegate<ApiProxy.Environment> delegate;
+
+    private final ThreadLocal<EndpointStats> currentEndpoint = new ThreadLocal<>();
+
+    RpcCountingDelegate(ApiProxy.Delegate<ApiProxy.Environment> delegate) {
+        this.delegate = delegate;
+    }
+
+    ApiProxy.Delegate<ApiProxy.Environment> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Attributes the RPCs made on the current thread to the given endpoint.
+     * @param stats the endpoint being measured, or null to stop counting.
+     */
+    void setCurrentEndpoint(EndpointStats stats) {
+        if (stats == null) {
+            currentEndpoint.remove();
+        } else {
+            currentEndpoint.set(stats);
+        }
+    }
+
+    @Override
+    public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+                               String methodName, byte[] request) {
+        EndpointStats stats = countCall(packageName);
+        try {
+            return delegate.makeSyncCall(environment, packageName, methodName, request);
+        } catch (RuntimeException e) {
+            countContention(stats, methodName, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName,
+                                        String methodName, byte[] request,
+                                        ApiProxy.ApiConfig apiConfig) {
+        EndpointStats stats = countCall(packageName);
+        Future<byte[]> future = delegate.makeAsyncCall(
+                environment, packageName, methodName, request, apiConfig);
+        if (stats == null || !COMMIT_METHOD.equals(methodName)) {
+            return future;
+        }
+        return new CommitFuture(future, stats);
+    }
+
+    @Override
+    public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+        delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(ApiProxy.Environment environment) {
+        delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+        return delegate.getRequestThreads(environment);
+    }
+
+    private EndpointStats countCall(String packageName) {
+        EndpointStats stats = currentEndpoint.get();
+        if (stats != null && DATASTORE_PACKAGE.equals(packageName)) {
+            stats.incrementDatastoreRpcs();
+            return stats;
+        }
+        return null;
+    }
+
+    private static void countContention(EndpointStats stats, String methodName, Throwable t) {
+        if (stats != null && COMMIT_METHOD.equals(methodName) && isContention(t)) {
+            stats.incrementContentionRetries();
+        }
+    }
+
+    private static boolean isContention(Throwable t) {
+        if (t instanceof ConcurrentModificationException) {
+            return true;
+        }
+        return t instanceof ApiProxy.ApplicationException
+                && ((ApiProxy.ApplicationException) t).getApplicationError()
+                == CONCURRENT_TRANSACTION;
+    }
+
+    /** Counts the contention of a commit when its result is read, at most once. */
+    private static class CommitFuture implements Future<byte[]> {
+
+        private final Future<byte[]> future;
+
+        private final EndpointStats stats;
+
+        private boolean counted;
+
+        CommitFuture(Future<byte[]> future, EndpointStats stats) {
+            this.future = future;
+            this.stats = stats;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public byte[] get() throws InterruptedException, ExecutionException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                onFailure(e.getCause());
+                throw e;
+            } catch (RuntimeException e) {
+                onFailure(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return future.get(timeout, unit);
+            } catch (ExecutionException e) {
+                onFailure(e.getCause());
+                throw e;
+            } catch (RuntimeException e) {
+                onFailure(e);
+                throw e;
+            }
+        }
+
+        private synchronized void onFailure(Throwable t) {
+            if (!counted) {
+                counted = true;
+                countContention(stats, COMMIT_METHOD, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.Constants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the instance cache of the announcement.
+ */
+public class AnnouncementCacheTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig(),
+                    new LocalMemcacheServiceTestConfig());
+
+    private MemcacheService memcacheService;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        AnnouncementCache.clear();
+        memcacheService = MemcacheServiceFactory.getMemcacheService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        AnnouncementCache.clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testEvictedAnnouncementIsRepublished() throws Exception {
+        assertNull(AnnouncementCache.get());
+        // No announcement is stamped too, so the next requests don't read the datastore.
+        assertNotNull(memcacheService.get(Constants.MEMCACHE_ANNOUNCEMENTS_KEY));
+    }
+
+    @Test
+    public void testPublishedAnnouncementIsServedFromTheInstance() throws Exception {
+        AnnouncementCache.publish("Last chance");
+        memcacheService.delete(Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+        assertEquals("Last chance", AnnouncementCache.get());
+    }
+
+    @Test
+    public void testOlderAnnouncementDoesNotReplaceNewerOne() throws Exception {
+        memcacheService.put(Constants.MEMCACHE_ANNOUNCEMENTS_KEY,
+                new AnnouncementCache.Stamped("Newer", Long.MAX_VALUE));
+        AnnouncementCache.publish("Older");
+        AnnouncementCache.Stamped stamped = (AnnouncementCache.Stamped)
+                memcacheService.get(Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+        assertEquals("Newer", stamped.getAnnouncement());
+    }
+
+    @Test
+    public void testPlainStringIsIgnored() throws Exception {
+        // As stored by the versions before the announcement was stamped.
+        memcacheService.put("RECENT_ANNOUNCEMENTS", "Old announcement");
+        memcacheService.put(Constants.MEMCACHE_ANNOUNCEMENTS_KEY, "Old announcement");
+        assertNull(AnnouncementCache.get());
+
+        AnnouncementCache.clear();
+        memcacheService.put(Constants.MEMCACHE_ANNOUNCEMENTS_KEY, "Old announcement");
+        AnnouncementCache.publish("Last chance");
+        AnnouncementCache.Stamped stamped = (AnnouncementCache.Stamped)
+                memcacheService.get(Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+        assertEquals("Last chance", stamped.getAnnouncement());
+    }
+}
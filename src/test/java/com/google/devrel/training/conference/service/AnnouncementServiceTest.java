@@ -0,0 +1,99 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.NearlySoldOutConferences;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for the announcement of the nearly sold out conferences.
+ */
+public class AnnouncementServiceTest {
+
+    private static final String ORGANIZER_USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+                    new LocalMemcacheServiceTestConfig());
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        AnnouncementCache.clear();
+        helper.tearDown();
+    }
+
+    private Conference saveConference(long id, int cap, int seatsBooked) {
+        ConferenceForm conferenceForm = new ConferenceForm("GCP Live " + id, null, null, null,
+                null, null, cap);
+        Conference conference = new Conference(id, ORGANIZER_USER_ID, conferenceForm);
+        List<SeatShard> shards = SeatCounterService.createShards(conference);
+        shards.get(0).bookSeats(seatsBooked);
+        // As the seats reconciliation cron would.
+        conference.reconcileSeatsAvailable(cap - seatsBooked);
+        ofy().save().entity(conference).now();
+        ofy().save().entities(shards).now();
+        return conference;
+    }
+
+    private String announcement() {
+        AnnouncementCache.Stamped stamped = (AnnouncementCache.Stamped)
+                MemcacheServiceFactory.getMemcacheService().get(
+                        Constants.MEMCACHE_ANNOUNCEMENTS_KEY);
+        return stamped == null ? null : stamped.getAnnouncement();
+    }
+
+    @Test
+    public void testSeatsChanged() throws Exception {
+        Conference conference = saveConference(1001L, 20, 16);
+
+        AnnouncementService.seatsChanged(conference, 5);
+        assertNull(announcement());
+
+        AnnouncementService.seatsChanged(conference, 4);
+        assertTrue(announcement().endsWith("GCP Live 1001"));
+        assertTrue(ofy().load().key(NearlySoldOutConferences.createKey()).now()
+                .contains(conference.getWebsafeKey()));
+
+        // Sold out, the announcement is dropped rather than left stale.
+        AnnouncementService.seatsChanged(conference, 0);
+        assertNull(announcement());
+        assertTrue(ofy().load().key(NearlySoldOutConferences.createKey()).now().isEmpty());
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        Conference conference = saveConference(1002L, 20, 17);
+        Conference announced = saveConference(1003L, 20, 0);
+        NearlySoldOutConferences set = new NearlySoldOutConferences();
+        set.add(announced.getWebsafeKey(), announced.getName());
+        ofy().save().entity(set).now();
+
+        // The lost change of the first conference is caught, the second one is dropped.
+        assertEquals(1, AnnouncementService.reconcile());
+        NearlySoldOutConferences reconciled =
+                ofy().load().key(NearlySoldOutConferences.createKey()).now();
+        assertTrue(reconciled.contains(conference.getWebsafeKey()));
+        assertFalse(reconciled.contains(announced.getWebsafeKey()));
+        assertTrue(announcement().endsWith("GCP Live 1002"));
+    }
+}
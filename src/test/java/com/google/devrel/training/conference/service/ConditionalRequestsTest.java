@@ -0,0 +1,50 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Tests for the conditional GET of the API methods.
+ */
+public class ConditionalRequestsTest {
+
+    private static final Date LAST_MODIFIED = new Date(1400000000123L);
+
+    private static final String LAST_MODIFIED_HTTP = "Tue, 13 May 2014 16:53:20 GMT";
+
+    @Test
+    public void testIfNoneMatch() throws Exception {
+        String etag = ConditionalRequests.etag(Arrays.asList("conference", 3));
+        assertTrue(ConditionalRequests.isNotModified(etag, null, etag, LAST_MODIFIED));
+        // Compared weakly, and within a list.
+        assertTrue(ConditionalRequests.isNotModified("\"other\", " + etag.substring(2), null,
+                etag, LAST_MODIFIED));
+        assertTrue(ConditionalRequests.isNotModified("*", null, etag, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(
+                ConditionalRequests.etag(Arrays.asList("conference", 2)), null, etag,
+                LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIfNoneMatchWinsOverIfModifiedSince() throws Exception {
+        assertFalse(ConditionalRequests.isNotModified("\"other\"", LAST_MODIFIED_HTTP,
+                "\"etag\"", LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIfModifiedSince() throws Exception {
+        // The milliseconds of the last modification are not seen by the client.
+        assertTrue(ConditionalRequests.isNotModified(null, LAST_MODIFIED_HTTP, "\"etag\"",
+                LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, LAST_MODIFIED_HTTP, "\"etag\"",
+                new Date(LAST_MODIFIED.getTime() + 1000)));
+        assertFalse(ConditionalRequests.isNotModified(null, "yesterday", "\"etag\"",
+                LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, LAST_MODIFIED_HTTP, "\"etag\"",
+                null));
+    }
+}
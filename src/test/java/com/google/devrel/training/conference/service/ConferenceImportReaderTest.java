@@ -0,0 +1,84 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.form.ConferenceForm;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Date;
+
+/**
+ * Tests for ConferenceImportReader.
+ */
+public class ConferenceImportReaderTest {
+
+    private static ConferenceImportReader reader(String upload,
+                                                 ConferenceImportReader.Format format) {
+        return new ConferenceImportReader(new StringReader(upload), format);
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        ConferenceImportReader rows = reader(
+                "name,city,topics,startDate,endDate,maxAttendees\r\n"
+                        + "GCP Live,\"San Francisco, CA\",Cloud;Platform,2014-03-25,2014-03-26,500\r\n"
+                        + "\n"
+                        + "\"Say \"\"hi\"\"\",Tokyo,,,,\n",
+                ConferenceImportReader.Format.CSV);
+
+        assertTrue(rows.next());
+        ConferenceForm form = rows.getForm();
+        assertNull(rows.getError());
+        assertEquals("GCP Live", form.getName());
+        assertEquals("San Francisco, CA", form.getCity());
+        assertEquals(ImmutableList.of("Cloud", "Platform"), form.getTopics());
+        assertEquals(new Date(1395705600000L), form.getStartDate());
+        assertEquals(500, form.getMaxAttendees());
+
+        assertTrue(rows.next());
+        assertEquals("Say \"hi\"", rows.getForm().getName());
+        assertNull(rows.getForm().getTopics());
+        assertEquals(2, rows.getRow());
+        assertFalse(rows.next());
+    }
+
+    @Test
+    public void testInvalidRowsAreReported() throws Exception {
+        ConferenceImportReader rows = reader(
+                "{\"city\":\"Tokyo\"}\n"
+                        + "{\"name\":\"I/O\",\"startDate\":\"2014-06-26\",\"endDate\":\"2014-06-25\"}\n"
+                        + "not json\n"
+                        + "{\"name\":\"I/O\",\"maxAttendees\":1000}\n",
+                ConferenceImportReader.Format.NDJSON);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(rows.next());
+            assertNull(rows.getForm());
+            assertTrue(rows.getError(), rows.getError().startsWith("Row " + i + ":"));
+        }
+        assertTrue(rows.next());
+        assertEquals(1000, rows.getForm().getMaxAttendees());
+        assertFalse(rows.next());
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        ConferenceForm form = new ConferenceForm("Name \"quoted\"\n", "Description",
+                ImmutableList.of("Cloud", "Été"), "Paris", new Date(1395705600123L),
+                new Date(1395792000000L), 10);
+        ConferenceImportReader rows = reader(ConferenceImportReader.toJson(form),
+                ConferenceImportReader.Format.NDJSON);
+
+        assertTrue(rows.next());
+        ConferenceForm read = rows.getForm();
+        assertEquals("Name \"quoted\"", read.getName());
+        assertEquals(form.getDescription(), read.getDescription());
+        assertEquals(form.getTopics(), read.getTopics());
+        assertEquals(form.getCity(), read.getCity());
+        assertEquals(form.getStartDate(), read.getStartDate());
+        assertEquals(form.getEndDate(), read.getEndDate());
+        assertEquals(form.getMaxAttendees(), read.getMaxAttendees());
+    }
+}
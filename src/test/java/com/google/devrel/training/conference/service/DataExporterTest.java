@@ -0,0 +1,88 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Tests for the NDJSON export.
+ */
+public class DataExporterTest {
+
+    private static final String USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0));
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        Conference conference = new Conference(1001L, USER_ID, new ConferenceForm(
+                "GCP \"Live\"", null, null, "Tokyo", null, null, 500));
+        ofy().save().entities(conference,
+                new Profile(USER_ID, "Your Name", "example@gmail.com", TeeShirtSize.M),
+                new Registration(USER_ID, conference.getWebsafeKey())).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        StringWriter out = new StringWriter();
+        String checkpoint = DataExporter.export(
+                DataExporter.parseKinds(null), null, out, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        assertNull(checkpoint);
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"kind\":\"conference\""));
+        assertTrue(lines[0], lines[0].contains("\"name\":\"GCP \\\"Live\\\"\""));
+        assertTrue(lines[1], lines[1].contains("\"mainEmail\":\"example@gmail.com\""));
+        assertTrue(lines[2], lines[2].startsWith("{\"kind\":\"registration\""));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        List<DataExporter.Kind> kinds = DataExporter.parseKinds("profile,conference");
+        StringWriter out = new StringWriter();
+        // Past the deadline, nothing is exported.
+        String checkpoint = DataExporter.export(kinds, null, out, 0L, Long.MAX_VALUE);
+        assertEquals("profile", checkpoint);
+        assertEquals("", out.toString());
+
+        checkpoint = DataExporter.export(kinds, checkpoint, out, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertNull(checkpoint);
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"kind\":\"profile\""));
+        assertTrue(lines[1], lines[1].startsWith("{\"kind\":\"conference\""));
+    }
+
+    @Test
+    public void testStopAtByteBudget() throws Exception {
+        List<DataExporter.Kind> kinds = DataExporter.parseKinds("profile,conference");
+        StringWriter out = new StringWriter();
+        // The first chunk goes past the budget, the next kind is left to the checkpoint.
+        String checkpoint = DataExporter.export(kinds, null, out, Long.MAX_VALUE, 1L);
+        assertEquals("conference", checkpoint);
+        assertEquals(1, out.toString().split("\n").length);
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the batched e-mail notifications.
+ */
+public class EmailServiceTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig(),
+                    new LocalTaskQueueTestConfig()
+                            .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+                            .setDisableAutoTaskExecution(true));
+
+    private RecordingMailTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        transport = new RecordingMailTransport();
+        EmailService.setTransport(transport);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        EmailService.setTransport(new JavaMailTransport());
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testSendPendingGroupsByRecipient() throws Exception {
+        EmailService.enqueue("organizer@example.com", "First", "Body 1");
+        EmailService.enqueue("other@example.com", "Second", "Body 2");
+        EmailService.enqueue("organizer@example.com", "Third", "Body 3");
+
+        assertEquals(3, EmailService.sendPending());
+        List<String[]> sent = transport.getSent();
+        assertEquals(2, sent.size());
+        assertEquals("organizer@example.com", sent.get(0)[0]);
+        assertTrue(sent.get(0)[2].contains("Body 1"));
+        assertTrue(sent.get(0)[2].contains("Body 3"));
+        assertEquals("Second", sent.get(1)[1]);
+
+        // The notifications sent were deleted.
+        assertEquals(0, EmailService.sendPending());
+    }
+
+    @Test
+    public void testSubjectAndBody() throws Exception {
+        EmailService.Notification first =
+                new EmailService.Notification("a@example.com", "First", "Body 1");
+        EmailService.Notification second =
+                new EmailService.Notification("a@example.com", "Second", "Body 2");
+        assertEquals("First", EmailService.subject(Arrays.asList(first)));
+        assertEquals("Body 1", EmailService.body(Arrays.asList(first)));
+        assertEquals("You have 2 notifications from Conference Central",
+                EmailService.subject(Arrays.asList(first, second)));
+        assertEquals("First\n\nBody 1\n\nSecond\n\nBody 2\n\n",
+                EmailService.body(Arrays.asList(first, second)));
+    }
+}
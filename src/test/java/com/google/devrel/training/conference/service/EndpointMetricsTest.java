@@ -0,0 +1,95 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the per-endpoint metrics.
+ */
+public class EndpointMetricsTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        EndpointMetrics.reset();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testRecordCalls() throws Exception {
+        EndpointMetrics.begin("getConference");
+        EndpointMetrics.current().recordDatastoreRpc();
+        EndpointMetrics.current().recordEntitiesRead(2);
+        EndpointMetrics.current().recordMemcacheGet(3, 1);
+        EndpointMetrics.end(TimeUnit.MILLISECONDS.toNanos(7), false);
+        EndpointMetrics.begin("getConference");
+        EndpointMetrics.end(TimeUnit.SECONDS.toNanos(10), true);
+        assertNull(EndpointMetrics.current());
+
+        List<EndpointMetrics.Endpoint> endpoints = EndpointMetrics.getEndpoints();
+        assertEquals(1, endpoints.size());
+        EndpointMetrics.Endpoint endpoint = endpoints.get(0);
+        assertEquals("getConference", endpoint.getName());
+        assertEquals(2, endpoint.getCalls());
+        assertEquals(1, endpoint.getFailures());
+        assertEquals(1, endpoint.getDatastoreRpcs());
+        assertEquals(2, endpoint.getEntitiesRead());
+        assertEquals(0.75, endpoint.getMemcacheHitRatio(), 0.0001);
+        // 7ms goes to the le10 bucket, 10s to the open one.
+        long[] histogram = endpoint.getLatencyHistogram();
+        assertEquals(EndpointMetrics.getLatencyBucketsMillis().length + 1, histogram.length);
+        assertEquals(1, histogram[1]);
+        assertEquals(1, histogram[histogram.length - 1]);
+    }
+
+    @Test
+    public void testEndpointsSortedByName() throws Exception {
+        EndpointMetrics.begin("queryConferences");
+        EndpointMetrics.end(0, false);
+        EndpointMetrics.begin("getProfile");
+        EndpointMetrics.end(0, false);
+        List<EndpointMetrics.Endpoint> endpoints = EndpointMetrics.getEndpoints();
+        assertEquals("getProfile", endpoints.get(0).getName());
+        assertEquals("queryConferences", endpoints.get(1).getName());
+        assertEquals(0.0, endpoints.get(0).getMemcacheHitRatio(), 0.0);
+    }
+
+    @Test
+    public void testFlushAddsTheNewCallsToTheTotals() throws Exception {
+        List<String> names = Arrays.asList("getConference", "getProfile");
+        EndpointMetrics.begin("getConference");
+        EndpointMetrics.end(TimeUnit.MILLISECONDS.toNanos(7), false);
+        EndpointMetrics.flush();
+        // Only the calls since the last flush are added.
+        EndpointMetrics.begin("getConference");
+        EndpointMetrics.end(TimeUnit.MILLISECONDS.toNanos(7), true);
+        EndpointMetrics.flush();
+        EndpointMetrics.flush();
+
+        List<EndpointMetrics.Endpoint> totals = EndpointMetrics.getTotals(names);
+        assertEquals(1, totals.size());
+        assertEquals("getConference", totals.get(0).getName());
+        assertEquals(2, totals.get(0).getCalls());
+        assertEquals(1, totals.get(0).getFailures());
+        assertEquals(2, totals.get(0).getLatencyHistogram()[1]);
+
+        EndpointMetrics.resetTotals(names);
+        assertTrue(EndpointMetrics.getTotals(names).isEmpty());
+    }
+}
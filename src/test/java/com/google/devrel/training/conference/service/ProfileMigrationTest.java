@@ -0,0 +1,78 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.googlecode.objectify.Key;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the migration of the registrations stored on the Profiles.
+ */
+public class ProfileMigrationTest {
+
+    private static final String USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalMemcacheServiceTestConfig());
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testMigrate() throws Exception {
+        String websafeConferenceKey = Key.create(Conference.class, 1L).getString();
+        Profile profile = new Profile(USER_ID, "Name", "user@example.com",
+                TeeShirtSize.NOT_SPECIFIED);
+        profile.addToConferenceKeysToAttend(websafeConferenceKey);
+        ofy().save().entity(profile).now();
+
+        assertTrue(ProfileMigration.migrate(profile));
+        assertNotNull(ofy().load().key(
+                Registration.createKey(USER_ID, websafeConferenceKey)).now());
+        Profile migrated = ofy().load().key(Key.create(Profile.class, USER_ID)).now();
+        assertTrue(migrated.getConferenceKeysToAttend().isEmpty());
+        // Migrating again does nothing.
+        assertFalse(ProfileMigration.migrate(migrated));
+    }
+
+    @Test
+    public void testMigrateStaleProfile() throws Exception {
+        String websafeConferenceKey = Key.create(Conference.class, 1L).getString();
+        Profile profile = new Profile(USER_ID, "Name", "user@example.com",
+                TeeShirtSize.NOT_SPECIFIED);
+        profile.addToConferenceKeysToAttend(websafeConferenceKey);
+        ofy().save().entity(profile).now();
+        Profile stale = new Profile(USER_ID, "Name", "user@example.com",
+                TeeShirtSize.NOT_SPECIFIED);
+        stale.addToConferenceKeysToAttend(websafeConferenceKey);
+
+        // Another request migrates the profile, then the user unregisters.
+        assertTrue(ProfileMigration.migrate(profile));
+        ofy().delete().key(Registration.createKey(USER_ID, websafeConferenceKey)).now();
+
+        // The Profile read before doesn't bring the registration back.
+        assertFalse(ProfileMigration.migrate(stale));
+        assertNull(ofy().load().key(
+                Registration.createKey(USER_ID, websafeConferenceKey)).now());
+    }
+}
@@ -0,0 +1,24 @@
+package com.google.devrel.training.conference.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MailTransport keeping the e-mails in memory, for the tests.
+ */
+public class RecordingMailTransport implements MailTransport {
+
+    private final List<String[]> sent = new ArrayList<>();
+
+    @Override
+    public void send(String recipient, String subject, String body) {
+        sent.add(new String[] {recipient, subject, body});
+    }
+
+    /**
+     * @return the e-mails sent, each one as its recipient, subject and body.
+     */
+    public List<String[]> getSent() {
+        return sent;
+    }
+}
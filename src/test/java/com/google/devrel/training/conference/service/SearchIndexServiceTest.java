@@ -0,0 +1,80 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.googlecode.objectify.Key;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the full-text search of the conferences.
+ */
+public class SearchIndexServiceTest {
+
+    private static final String USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+                    new LocalMemcacheServiceTestConfig());
+
+    private Key<Conference> cloudKey;
+
+    private Key<Conference> webKey;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        Conference cloud = new Conference(1001L, USER_ID, new ConferenceForm(
+                "GCP Live", "New announcements for Google Cloud Platform", null, "Tokyo",
+                null, null, 500));
+        Conference web = new Conference(1002L, USER_ID, new ConferenceForm(
+                "Web Summit", "Browsers and the web", null, "Lisbon", null, null, 500));
+        cloudKey = Key.create(cloud.getWebsafeKey());
+        webKey = Key.create(web.getWebsafeKey());
+        Session session = new Session(1L, web.getWebsafeKey(), new SessionForm(
+                "Serverless", "Running web apps on cloud functions", null, null,
+                new Date(0), new Date(3600000)));
+        ofy().save().entities(cloud, web, session).now();
+        SearchIndexService.index(Arrays.<Key<Object>>asList(
+                Key.<Object>create(cloud.getWebsafeKey()),
+                Key.<Object>create(web.getWebsafeKey()),
+                Key.<Object>create(session.getWebsafeKey())));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testRank() throws Exception {
+        // The description of a conference weighs more than the highlights of a session.
+        List<Key<Conference>> ranking = SearchIndexService.rank("cloud");
+        assertEquals(Arrays.asList(cloudKey, webKey), ranking);
+    }
+
+    @Test
+    public void testRankStemmed() throws Exception {
+        assertEquals(Arrays.asList(webKey), SearchIndexService.rank("Browser"));
+    }
+
+    @Test
+    public void testRankNoTerms() throws Exception {
+        assertTrue(SearchIndexService.rank("the and of").isEmpty());
+    }
+}
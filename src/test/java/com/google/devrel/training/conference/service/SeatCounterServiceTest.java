@@ -0,0 +1,106 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.googlecode.objectify.Key;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for the sharded seat counter.
+ */
+public class SeatCounterServiceTest {
+
+    private static final String ORGANIZER_USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalMemcacheServiceTestConfig());
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    private Conference newConference(long id, int cap) {
+        ConferenceForm conferenceForm = new ConferenceForm("GCP Live", null, null, null, null,
+                null, cap);
+        return new Conference(id, ORGANIZER_USER_ID, conferenceForm);
+    }
+
+    @Test
+    public void testCreateShards() throws Exception {
+        Conference conference = newConference(1001L, 503);
+        List<SeatShard> shards = SeatCounterService.createShards(conference);
+        assertEquals(SeatCounterService.DEFAULT_SHARD_COUNT, shards.size());
+        assertEquals(SeatCounterService.DEFAULT_SHARD_COUNT, conference.getSeatShardCount());
+        assertEquals(503, SeatCounterService.sumSeatsAvailable(shards));
+        // The remainder goes to the first shards.
+        assertEquals(51, shards.get(0).getCapacity());
+        assertEquals(50, shards.get(9).getCapacity());
+    }
+
+    @Test
+    public void testCreateShardsSmallConference() throws Exception {
+        Conference conference = newConference(1002L, 3);
+        List<SeatShard> shards = SeatCounterService.createShards(conference);
+        assertEquals(3, shards.size());
+        for (SeatShard shard : shards) {
+            assertEquals(1, shard.getSeatsAvailable());
+        }
+    }
+
+    @Test
+    public void testGetSeatsAvailableAndPickShard() throws Exception {
+        Conference conference = newConference(1003L, 2);
+        List<SeatShard> shards = SeatCounterService.createShards(conference);
+        shards.get(0).bookSeats(1);
+        ofy().save().entity(conference).now();
+        ofy().save().entities(shards).now();
+
+        assertEquals(1, SeatCounterService.getSeatsAvailable(conference));
+        Set<Key<SeatShard>> excluded = new HashSet<>();
+        assertEquals(SeatShard.createKey(conference.getWebsafeKey(), 1),
+                SeatCounterService.pickShardWithSeats(conference, excluded));
+        excluded.add(SeatShard.createKey(conference.getWebsafeKey(), 1));
+        assertNull(SeatCounterService.pickShardWithSeats(conference, excluded));
+
+        // The cached sum follows committed changes.
+        SeatCounterService.adjustCachedSeatsAvailable(conference, -1);
+        assertEquals(0, SeatCounterService.getSeatsAvailable(conference));
+    }
+
+    @Test
+    public void testCachedSeatsOutOfRangeAreSummedAgain() throws Exception {
+        Conference conference = newConference(1004L, 2);
+        List<SeatShard> shards = SeatCounterService.createShards(conference);
+        ofy().save().entity(conference).now();
+        ofy().save().entities(shards).now();
+
+        // As left by an increment racing with the put of the sum.
+        MemcacheServiceFactory.getMemcacheService().put(
+                Constants.MEMCACHE_SEATS_AVAILABLE_PREFIX + conference.getWebsafeKey(), 3L);
+        assertEquals(2, SeatCounterService.getSeatsAvailable(conference));
+    }
+}
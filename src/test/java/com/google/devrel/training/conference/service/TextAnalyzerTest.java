@@ -0,0 +1,39 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Tests for the analysis of the indexed and searched texts.
+ */
+public class TextAnalyzerTest {
+
+    @Test
+    public void testTerms() throws Exception {
+        assertEquals(Arrays.asList("new", "announcement", "google", "cloud", "platform"),
+                TextAnalyzer.terms("New announcements for Google Cloud-Platform!"));
+    }
+
+    @Test
+    public void testStem() throws Exception {
+        assertEquals(TextAnalyzer.stem("conference"), TextAnalyzer.stem("conferences"));
+        assertEquals(TextAnalyzer.stem("technology"), TextAnalyzer.stem("technologies"));
+        assertEquals("run", TextAnalyzer.stem("running"));
+        assertEquals("create", TextAnalyzer.stem("created"));
+        assertEquals("class", TextAnalyzer.stem("classes"));
+        assertEquals("speed", TextAnalyzer.stem("speed"));
+    }
+
+    @Test
+    public void testTermFrequencies() throws Exception {
+        Map<String, Integer> frequencies =
+                TextAnalyzer.termFrequencies("Cloud talks", null, "More cloud");
+        assertEquals(Integer.valueOf(2), frequencies.get("cloud"));
+        assertEquals(Integer.valueOf(1), frequencies.get("talk"));
+        assertEquals(3, frequencies.size());
+    }
+}
@@ -3,18 +3,23 @@ package com.google.devrel.training.conference.spi;
 import static com.google.devrel.training.conference.service.OfyService.ofy;
 import static org.junit.Assert.*;
 
+import com.google.api.server.spi.response.CollectionResponse;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.common.collect.ImmutableList;
 import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceSummary;
 import com.google.devrel.training.conference.form.ConferenceForm;
 import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.service.ConferenceQueryCache;
+import com.googlecode.objectify.Key;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -119,7 +124,8 @@ public class ConferenceApiGlobalQueryTest {
     public void testEmptyQuery() throws Exception {
         // Empty query.
         ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm();
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(3, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
@@ -129,6 +135,71 @@ public class ConferenceApiGlobalQueryTest {
         assertEquals(conference2, conferences.get(2));
     }
 
+    @Test
+    public void testPagedQuery() throws Exception {
+        // Fetch the conferences two at a time, following the cursor.
+        CollectionResponse<Conference> firstPage = conferenceApi.queryConferences(
+                new ConferenceQueryForm().page(2, null));
+        List<Conference> conferences = new ArrayList<>(firstPage.getItems());
+        assertEquals(2, conferences.size());
+        assertEquals(conference1, conferences.get(0));
+        assertEquals(conference3, conferences.get(1));
+        assertNotNull(firstPage.getNextPageToken());
+
+        CollectionResponse<Conference> secondPage = conferenceApi.queryConferences(
+                new ConferenceQueryForm().page(2, firstPage.getNextPageToken()));
+        conferences = new ArrayList<>(secondPage.getItems());
+        assertEquals(1, conferences.size());
+        assertEquals(conference2, conferences.get(0));
+        assertNull(secondPage.getNextPageToken());
+    }
+
+    @Test
+    public void testCachedQuery() throws Exception {
+        ConferenceQueryForm.Filter city = new ConferenceQueryForm.Filter(
+                ConferenceQueryForm.Field.CITY, ConferenceQueryForm.Operator.EQ, "Tokyo");
+        ConferenceQueryForm.Filter month = new ConferenceQueryForm.Filter(
+                ConferenceQueryForm.Field.MONTH, ConferenceQueryForm.Operator.EQ, "9");
+        assertEquals(1, conferenceApi.queryConferences(
+                new ConferenceQueryForm().filter(city).filter(month)).getItems().size());
+
+        // Saved without going through the API, so the cache is not invalidated.
+        ConferenceForm conferenceForm = new ConferenceForm(
+                "GCP Next", DESCRIPTION3, TOPICS3, CITY3, startDate3, endDate3, CAP3);
+        ofy().save().entity(new Conference(1004L, USER_ID, conferenceForm)).now();
+
+        // The same filters in another order hit the cached page.
+        assertEquals(1, conferenceApi.queryConferences(
+                new ConferenceQueryForm().filter(month).filter(city)).getItems().size());
+
+        ConferenceQueryCache.invalidate();
+        assertEquals(2, conferenceApi.queryConferences(
+                new ConferenceQueryForm().filter(month).filter(city)).getItems().size());
+    }
+
+    @Test
+    public void testSummaryQuery() throws Exception {
+        ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm()
+                .filter(new ConferenceQueryForm.Filter(
+                        ConferenceQueryForm.Field.MAX_ATTENDEES,
+                        ConferenceQueryForm.Operator.GT,
+                        "700"
+                ));
+        List<ConferenceSummary> summaries = new ArrayList<>(
+                conferenceApi.queryConferenceSummaries(conferenceQueryForm).getItems());
+        assertEquals(2, summaries.size());
+        assertEquals(conference2.getWebsafeKey(), summaries.get(0).getWebsafeKey());
+        assertEquals(NAME2, summaries.get(0).getName());
+        assertEquals(CITY2, summaries.get(0).getCity());
+        assertEquals(startDate2, summaries.get(0).getStartDate());
+        assertEquals(CAP2, summaries.get(0).getSeatsAvailable());
+        assertEquals(conference3.getWebsafeKey(), summaries.get(1).getWebsafeKey());
+
+        // The conferences were saved without summaries, they are created on the first read.
+        assertNotNull(ofy().load().key(ConferenceSummary.createKey(
+                Key.<Conference>create(conference3.getWebsafeKey()))).now());
+    }
+
     @Test
     public void testCityQuery() throws Exception {
         // A query only specifies the city.
@@ -138,7 +209,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.EQ,
                         "Tokyo"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(1, conferences.size());
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
     }
@@ -152,7 +224,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.EQ,
                         "Japan"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(1, conferences.size());
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
     }
@@ -176,7 +249,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.EQ,
                         "6"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(1, conferences.size());
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
     }
@@ -190,7 +264,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.GT,
                         "999"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
@@ -207,7 +282,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.LT,
                         "1001"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
@@ -224,7 +300,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.GTEQ,
                         "1000"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
@@ -241,7 +318,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.LTEQ,
                         "1000"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
@@ -258,7 +336,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.NE,
                         "1000"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
@@ -266,7 +345,7 @@ public class ConferenceApiGlobalQueryTest {
         assertEquals(conference3, conferences.get(1));
     }
 
-    @Test(expected = IllegalArgumentException.class)
+    @Test
     public void testMultipleInequalityFilter() throws Exception {
         // A query specifies the maxAttendees <= 1000 and month != 6.
         ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm()
@@ -280,6 +359,12 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.NE,
                         "6"
                 ));
+        // The month filter is applied in memory.
+        assertTrue(conferenceQueryForm.hasPostFilters());
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm).getItems());
+        assertEquals(1, conferences.size());
+        assertEquals(conference1, conferences.get(0));
     }
 
 }
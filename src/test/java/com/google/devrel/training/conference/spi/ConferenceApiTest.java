@@ -3,15 +3,26 @@ package com.google.devrel.training.conference.spi;
 import static com.google.devrel.training.conference.service.OfyService.ofy;
 import static org.junit.Assert.*;
 
+import com.google.api.server.spi.response.BadRequestException;
+import com.google.api.server.spi.response.CollectionResponse;
+import com.google.api.server.spi.response.ConflictException;
 import com.google.api.server.spi.response.UnauthorizedException;
 import com.google.appengine.api.users.User;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
-// import com.google.devrel.training.conference.domain.Conference;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.FeaturedSpeaker;
 import com.google.devrel.training.conference.domain.Profile;
-// import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionName;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.google.devrel.training.conference.form.ConferenceForm;
 import com.google.devrel.training.conference.form.ProfileForm;
 import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.google.devrel.training.conference.form.SessionsForm;
 import com.googlecode.objectify.Key;
 
 import org.junit.After;
@@ -21,6 +32,7 @@ import org.junit.Test;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -53,7 +65,10 @@ public class ConferenceApiTest {
 
     private final LocalServiceTestHelper helper =
             new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
-                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100));
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalTaskQueueTestConfig()
+                            .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+                            .setDisableAutoTaskExecution(true));
 
     @Before
     public void setUp() throws Exception {
@@ -73,6 +88,16 @@ public class ConferenceApiTest {
         conferenceApi.getProfile(null);
     }
 
+    @Test(expected = BadRequestException.class)
+    public void testQueryConferencesWithMalformedCursor() throws Exception {
+        conferenceApi.queryConferences_nofilters(null, "not a cursor");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testSearchConferencesWithMalformedCursor() throws Exception {
+        conferenceApi.searchConferences("android", null, "not a cursor");
+    }
+
     @Test
     public void testGetProfileFirstTime() throws Exception {
         Profile profile = ofy().load().key(Key.create(Profile.class, user.getUserId())).now();
@@ -237,7 +262,7 @@ public class ConferenceApiTest {
         ConferenceForm conferenceForm = new ConferenceForm(
                 NAME, DESCRIPTION, topics, CITY, startDate, endDate, CAP);
         Conference conference = conferenceApi.createConference(user, conferenceForm);
-        conference = conferenceApi.getConference(conference.getWebsafeKey());
+        conference = conferenceApi.getConference(conference.getWebsafeKey(), null);
         // Check the return value.
         assertEquals(NAME, conference.getName());
         assertEquals(DESCRIPTION, conference.getDescription());
@@ -270,7 +295,7 @@ public class ConferenceApiTest {
         // Registration
         Boolean result = conferenceApi.registerForConference(
                 user, conference.getWebsafeKey()).getResult();
-        conference = conferenceApi.getConference(conference.getWebsafeKey());
+        conference = conferenceApi.getConference(conference.getWebsafeKey(), null);
         Profile profile = ofy().load().key(Key.create(Profile.class, user.getUserId())).now();
         assertTrue("registerForConference should succeed.", result);
         assertEquals(CAP - 1, conference.getSeatsAvailable());
@@ -280,7 +305,7 @@ public class ConferenceApiTest {
         // Unregister
         result = conferenceApi.unregisterFromConference(
                 user, conference.getWebsafeKey()).getResult();
-        conference = conferenceApi.getConference(conference.getWebsafeKey());
+        conference = conferenceApi.getConference(conference.getWebsafeKey(), null);
         profile = ofy().load().key(Key.create(Profile.class, user.getUserId())).now();
         assertTrue("unregisterFromConference should succeed.", result);
         assertEquals(CAP, conference.getSeatsAvailable());
@@ -288,4 +313,149 @@ public class ConferenceApiTest {
                 profile.getConferenceKeysToAttend().contains(conference.getWebsafeKey()));
     }
     */
+
+    @Test
+    public void testGetConferenceAttendeesByPage() throws Exception {
+        DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        ConferenceForm conferenceForm = new ConferenceForm(NAME, DESCRIPTION,
+                new ArrayList<String>(), CITY, dateFormat.parse("03/25/2014"),
+                dateFormat.parse("03/26/2014"), CAP);
+        Conference conference = new Conference(1001L, USER_ID, conferenceForm);
+        ofy().save().entity(conference).now();
+        for (int i = 0; i < 3; i++) {
+            String userId = "attendee" + i;
+            ofy().save().entities(
+                    new Profile(userId, userId, userId + "@example.com", TEE_SHIRT_SIZE),
+                    new Registration(userId, conference.getWebsafeKey())).now();
+        }
+
+        CollectionResponse<Profile> page =
+                conferenceApi.getConferenceAttendees(user, conference.getWebsafeKey(), 2, null);
+        assertEquals(2, page.getItems().size());
+        assertNotNull(page.getNextPageToken());
+        page = conferenceApi.getConferenceAttendees(
+                user, conference.getWebsafeKey(), 2, page.getNextPageToken());
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextPageToken());
+    }
+
+    @Test
+    public void testCreateSessionWithDuplicateName() throws Exception {
+        DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        Date startDate = dateFormat.parse("03/25/2014");
+        Date endDate = dateFormat.parse("03/26/2014");
+        ConferenceForm conferenceForm = new ConferenceForm(
+                NAME, DESCRIPTION, new ArrayList<String>(), CITY, startDate, endDate, CAP);
+        Conference conference = new Conference(1001L, USER_ID, conferenceForm);
+        ofy().save().entity(conference).now();
+        SessionForm sessionForm = new SessionForm("Keynote", "Highlights",
+                new Speaker("First", "Last"), SessionForm.SessionType.KEYNOTE, startDate, endDate);
+
+        conferenceApi.createSession(user, sessionForm, conference.getWebsafeKey());
+        try {
+            conferenceApi.createSession(user, sessionForm, conference.getWebsafeKey());
+            fail("A second session with the same name should be rejected.");
+        } catch (ConflictException e) {
+            // Expected.
+        }
+        Key<Conference> conferenceKey = Key.create(conference.getWebsafeKey());
+        assertEquals(1, ofy().load().type(Session.class).ancestor(conferenceKey).count());
+        assertNotNull(ofy().load().key(SessionName.createKey(conferenceKey, "Keynote")).now());
+    }
+
+    @Test
+    public void testCreateSessions() throws Exception {
+        DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        Date startDate = dateFormat.parse("03/25/2014");
+        Date endDate = dateFormat.parse("03/26/2014");
+        ConferenceForm conferenceForm = new ConferenceForm(
+                NAME, DESCRIPTION, new ArrayList<String>(), CITY, startDate, endDate, CAP);
+        Conference conference = new Conference(1001L, USER_ID, conferenceForm);
+        ofy().save().entity(conference).now();
+        List<SessionForm> sessionForms = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sessionForms.add(new SessionForm("Session " + i, "Highlights",
+                    new Speaker("First", "Last"), SessionForm.SessionType.LECTURE,
+                    startDate, endDate));
+        }
+
+        List<Session> sessions = conferenceApi.createSessions(
+                user, new SessionsForm(sessionForms), conference.getWebsafeKey());
+        assertEquals(3, sessions.size());
+        assertEquals("Session 0", sessions.get(0).getName());
+        Key<Conference> conferenceKey = Key.create(conference.getWebsafeKey());
+        assertEquals(3, ofy().load().type(Session.class).ancestor(conferenceKey).count());
+
+        // A name already taken rejects the whole agenda.
+        sessionForms.add(new SessionForm("Session 3", "Highlights",
+                new Speaker("First", "Last"), SessionForm.SessionType.LECTURE,
+                startDate, endDate));
+        try {
+            conferenceApi.createSessions(
+                    user, new SessionsForm(sessionForms), conference.getWebsafeKey());
+            fail("Sessions with taken names should be rejected.");
+        } catch (ConflictException e) {
+            // Expected.
+        }
+        assertEquals(3, ofy().load().type(Session.class).ancestor(conferenceKey).count());
+    }
+
+    @Test
+    public void testGetConferenceSessionsBySpeaker() throws Exception {
+        DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        Date startDate = dateFormat.parse("03/25/2014");
+        Date endDate = dateFormat.parse("03/26/2014");
+        ConferenceForm conferenceForm = new ConferenceForm(
+                NAME, DESCRIPTION, new ArrayList<String>(), CITY, startDate, endDate, CAP);
+        Conference conference = new Conference(1001L, USER_ID, conferenceForm);
+        ofy().save().entity(conference).now();
+        List<SessionForm> sessionForms = new ArrayList<>();
+        sessionForms.add(new SessionForm("B Session", "Highlights",
+                new Speaker("First", "Last"), SessionForm.SessionType.LECTURE,
+                startDate, endDate));
+        sessionForms.add(new SessionForm("A Session", "Highlights",
+                new Speaker(" first ", "LAST"), SessionForm.SessionType.LECTURE,
+                startDate, endDate));
+        sessionForms.add(new SessionForm("C Session", "Highlights",
+                new Speaker("Other", "Speaker"), SessionForm.SessionType.LECTURE,
+                startDate, endDate));
+        conferenceApi.createSessions(
+                user, new SessionsForm(sessionForms), conference.getWebsafeKey());
+
+        List<Session> sessions =
+                conferenceApi.getConferenceSessionsBySpeaker(new Speaker("First", "Last"));
+        assertEquals(2, sessions.size());
+        assertEquals("A Session", sessions.get(0).getName());
+        assertEquals("B Session", sessions.get(1).getName());
+        assertEquals(2, conferenceApi.getSpeakers(null, null).getItems().size());
+    }
+
+    @Test
+    public void testGetFeaturedSpeaker() throws Exception {
+        DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        Date startDate = dateFormat.parse("03/25/2014");
+        Date endDate = dateFormat.parse("03/26/2014");
+        ConferenceForm conferenceForm = new ConferenceForm(
+                NAME, DESCRIPTION, new ArrayList<String>(), CITY, startDate, endDate, CAP);
+        Conference conference = new Conference(1001L, USER_ID, conferenceForm);
+        ofy().save().entity(conference).now();
+        List<SessionForm> sessionForms = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            sessionForms.add(new SessionForm("Session " + i, "Highlights",
+                    new Speaker("First", "Last"), SessionForm.SessionType.LECTURE,
+                    startDate, endDate));
+        }
+        sessionForms.add(new SessionForm("Session 2", "Highlights",
+                new Speaker("Other", "Speaker"), SessionForm.SessionType.LECTURE,
+                startDate, endDate));
+        conferenceApi.createSessions(
+                user, new SessionsForm(sessionForms), conference.getWebsafeKey());
+
+        List<FeaturedSpeaker> featuredSpeakers =
+                conferenceApi.getFeaturedSpeaker(conference.getWebsafeKey());
+        assertEquals(1, featuredSpeakers.size());
+        assertEquals("last", featuredSpeakers.get(0).getLastName());
+        assertEquals(Arrays.asList("Session 0", "Session 1"),
+                featuredSpeakers.get(0).getSessionNames());
+    }
 }